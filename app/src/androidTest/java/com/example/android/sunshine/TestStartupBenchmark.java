@@ -0,0 +1,172 @@
+package com.example.android.sunshine;
+
+import android.app.Instrumentation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures the time from launching MainActivity until the forecast list is populated, both when
+ * MainActivity has to wait for the database and when it can render from the forecast snapshot.
+ * <p>
+ * Results are written to logcat under the tag "StartupBenchmark". The measurement starts when
+ * the launch Intent is sent, so it includes Activity creation and layout but not process
+ * creation; run with "am start -W" for full cold-start numbers.
+ * <p>
+ * It also measures scheduling the sync job, which used to happen on the main thread during
+ * MainActivity.onCreate on every launch.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestStartupBenchmark {
+
+    private static final String TAG = "StartupBenchmark";
+
+    /* Number of launches to average over for each configuration */
+    private static final int LAUNCHES = 5;
+
+    /* How long to wait for the list to populate before giving up */
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static final int DAYS_TO_INSERT = 14;
+
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private ContentValues[] mWeatherValues;
+
+    @Before
+    public void setUp() {
+        mWeatherValues = createWeatherValues();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+    }
+
+    @Test
+    public void benchmarkTimeToFirstPopulatedFrame() throws Exception {
+        long fromDatabase = 0;
+        long fromSnapshot = 0;
+
+        for (int i = 0; i < LAUNCHES; i++) {
+            ForecastSnapshot.delete(mContext);
+            fromDatabase += measureLaunch();
+
+            ForecastSnapshot.write(mContext, mWeatherValues);
+            fromSnapshot += measureLaunch();
+        }
+
+        Log.i(TAG, "Average time to first populated frame from the database: "
+                + (fromDatabase / LAUNCHES) + " ms");
+        Log.i(TAG, "Average time to first populated frame from the snapshot: "
+                + (fromSnapshot / LAUNCHES) + " ms");
+    }
+
+    /**
+     * Measures what scheduling the sync job costs when it has to be scheduled, against the cost
+     * of finding that the job already scheduled is unchanged, which is what almost every launch
+     * now pays. Either way, this runs on a background thread after the first frame. Fails if
+     * skipping isn't cheaper than scheduling, since then remembering the schedule gains nothing.
+     */
+    @Test
+    public void benchmarkSyncScheduling() {
+        long schedulingNanos = 0;
+        long unchangedNanos = 0;
+
+        for (int i = 0; i < LAUNCHES; i++) {
+            SunshineSyncUtils.clearScheduleFingerprint(mContext);
+
+            long start = System.nanoTime();
+            SunshineSyncUtils.scheduleSyncIfChanged(mContext);
+            schedulingNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            boolean scheduled = SunshineSyncUtils.scheduleSyncIfChanged(mContext);
+            unchangedNanos += System.nanoTime() - start;
+
+            assertFalse("An unchanged schedule should not be scheduled again", scheduled);
+        }
+
+        Log.i(TAG, "Average time to schedule the sync job: "
+                + (schedulingNanos / LAUNCHES / 1000) + " us");
+        Log.i(TAG, "Average time to skip an unchanged sync job: "
+                + (unchangedNanos / LAUNCHES / 1000) + " us");
+        assertTrue("Skipping an unchanged sync job took " + unchangedNanos
+                        + " ns, no less than scheduling it, " + schedulingNanos + " ns",
+                unchangedNanos < schedulingNanos);
+    }
+
+    /**
+     * Launches MainActivity and waits until its RecyclerView is visible and has children.
+     *
+     * @return The time, in milliseconds, it took for the list to be populated
+     */
+    private long measureLaunch() throws InterruptedException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        long start = SystemClock.elapsedRealtime();
+        final MainActivity activity = mActivityRule.launchActivity(null);
+        final RecyclerView recyclerView =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+
+        final boolean[] populated = new boolean[1];
+        long elapsed = 0;
+        while (!populated[0] && elapsed < TIMEOUT_MILLIS) {
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    populated[0] = recyclerView.getVisibility() == View.VISIBLE
+                            && recyclerView.getChildCount() > 0;
+                }
+            });
+            if (!populated[0]) Thread.sleep(2);
+            elapsed = SystemClock.elapsedRealtime() - start;
+        }
+
+        activity.finish();
+        mActivityRule.finishActivity();
+
+        assertTrue("The forecast list was never populated", populated[0]);
+        return elapsed;
+    }
+
+    private static ContentValues[] createWeatherValues() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        ContentValues[] weatherValues = new ContentValues[DAYS_TO_INSERT];
+
+        for (int i = 0; i < DAYS_TO_INSERT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_DATE, today + i * SunshineDateUtils.DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 50.0);
+            values.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, 3.0);
+            values.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+            weatherValues[i] = values;
+        }
+
+        return weatherValues;
+    }
+}
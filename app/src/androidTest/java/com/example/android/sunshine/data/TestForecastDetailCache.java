@@ -0,0 +1,51 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Tests that the ForecastDetailCache is emptied when the weather table changes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastDetailCache {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        ForecastDetailCache.clear();
+    }
+
+    @Test
+    public void testChangeEmptiesCache() throws Exception {
+        ContentValues[] weatherValues = TestUtilities.createBulkInsertTestWeatherValues();
+        ForecastBatch days = ForecastBatch.fromContentValues(weatherValues);
+
+        ForecastDetailCache.put(mContext, days);
+        assertSame(days, ForecastDetailCache.get());
+
+        mContext.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+        PollingCheck.check("The cache should be emptied when the weather table changes", 5000,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return ForecastDetailCache.get() == null;
+                    }
+                });
+    }
+}
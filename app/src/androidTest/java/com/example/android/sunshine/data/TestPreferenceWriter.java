@@ -0,0 +1,67 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests that PreferenceWriter only writes the changes that change something.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestPreferenceWriter {
+
+    private static final String PREFERENCES_NAME = "test_preference_writer";
+
+    private SharedPreferences mPreferences;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mPreferences.edit().clear().commit();
+    }
+
+    @Test
+    public void testUnchangedValuesAreNotWritten() {
+        PreferenceWriter writer = new PreferenceWriter(mPreferences);
+        SunshinePreferences.putLocationDetails(writer, 37.4192, -122.0574);
+        assertTrue("New coordinates should be staged", writer.hasChanges());
+        assertTrue(writer.apply());
+
+        assertEquals(Double.doubleToRawLongBits(37.4192),
+                mPreferences.getLong(SunshinePreferences.PREF_COORD_LAT, 0));
+        assertEquals(Double.doubleToRawLongBits(-122.0574),
+                mPreferences.getLong(SunshinePreferences.PREF_COORD_LONG, 0));
+
+        SunshinePreferences.putLocationDetails(writer, 37.4192, -122.0574);
+        assertFalse("The same coordinates shouldn't be staged again", writer.hasChanges());
+        assertFalse(writer.apply());
+    }
+
+    @Test
+    public void testChangesAreWrittenTogether() {
+        PreferenceWriter writer = new PreferenceWriter(mPreferences);
+        writer.putLong("a", 1);
+        writer.putLong("b", 2);
+        writer.putLong("a", 3);
+        assertTrue(writer.apply());
+
+        assertEquals(3, mPreferences.getLong("a", 0));
+        assertEquals(2, mPreferences.getLong("b", 0));
+
+        writer.remove("a");
+        writer.remove("missing");
+        assertTrue(writer.apply());
+        assertFalse(mPreferences.contains("a"));
+        assertTrue(mPreferences.contains("b"));
+    }
+}
@@ -101,5 +101,23 @@ public class TestUriMatcher {
         assertEquals(weatherWithDateUriCodeDoesNotMatch,
                 expectedWeatherWithDateCode,
                 actualWeatherWithDateCode);
+
+        /* Query parameters don't take part in matching, so every page matches the same code */
+        String weatherPageUriCodeDoesNotMatch =
+                "Error: The CODE_WEATHER_PAGE URI was matched incorrectly.";
+        assertEquals(weatherPageUriCodeDoesNotMatch,
+                WeatherProvider.CODE_WEATHER_PAGE,
+                testMatcher.match(WeatherContract.WeatherEntry.buildPageUri(Long.MIN_VALUE, 10)));
+        assertEquals(weatherPageUriCodeDoesNotMatch,
+                WeatherProvider.CODE_WEATHER_PAGE,
+                testMatcher.match(WeatherContract.WeatherEntry
+                        .buildPageUri(TestUtilities.DATE_NORMALIZED, 10)));
+
+        assertEquals("Error: The CODE_ROLLUP_WEEK URI was matched incorrectly.",
+                WeatherProvider.CODE_ROLLUP_WEEK,
+                testMatcher.match(WeatherContract.RollupEntry.WEEK_URI));
+        assertEquals("Error: The CODE_ROLLUP_MONTH URI was matched incorrectly.",
+                WeatherProvider.CODE_ROLLUP_MONTH,
+                testMatcher.match(WeatherContract.RollupEntry.MONTH_URI));
     }
 }
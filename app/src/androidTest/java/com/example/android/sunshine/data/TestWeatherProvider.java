@@ -24,6 +24,9 @@ import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
@@ -31,6 +34,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
 import static junit.framework.Assert.assertEquals;
@@ -423,6 +435,243 @@ public class TestWeatherProvider {
         shouldBeEmptyCursor.close();
     }
 
+    /**
+     * This test makes sure that changing a single day notifies the observers of that day, and
+     * only them, and that re-inserting a day with exactly the values already stored doesn't
+     * write anything.
+     */
+    @Test
+    public void testBulkInsertNotifiesChangedDay() {
+        ContentValues[] bulkInsertTestContentValues = createBulkInsertTestWeatherValues();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                bulkInsertTestContentValues);
+
+        ContentValues changedDay = new ContentValues(bulkInsertTestContentValues[0]);
+        long changedDate = changedDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        changedDay.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 99);
+
+        long unchangedDate = bulkInsertTestContentValues[1]
+                .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.buildDayNotificationUriWithDate(changedDate),
+                false,
+                dayObserver);
+        TestUtilities.TestContentObserver unchangedDayObserver =
+                TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.buildDayNotificationUriWithDate(unchangedDate),
+                false,
+                unchangedDayObserver);
+
+        /* Notified after every changed day, so once it is, any day notification has been sent */
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(WeatherContract.WeatherEntry.CONTENT_URI,
+                false,
+                weatherObserver);
+
+        /* The second row is identical to what is stored, so only the first one is written */
+        int insertCount = contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                new ContentValues[]{changedDay, bulkInsertTestContentValues[1]});
+
+        dayObserver.waitForNotificationOrFail();
+        weatherObserver.waitForNotificationOrFail();
+        unchangedDayObserver.assertNoNotification(
+                "A day that didn't change should not be notified", 200);
+        contentResolver.unregisterContentObserver(dayObserver);
+        contentResolver.unregisterContentObserver(unchangedDayObserver);
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        assertEquals("Unchanged rows should still be counted as inserted", 2, insertCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithDate(changedDate),
+                null,
+                null,
+                null,
+                null);
+        TestUtilities.validateThenCloseCursor("testBulkInsertNotifiesChangedDay",
+                cursor,
+                changedDay);
+    }
+
+    /**
+     * This test writes rows through METHOD_PUT_FORECAST_BATCH and pages them back out through
+     * METHOD_GET_FORECAST_BATCH, making sure every value survives the round trip.
+     */
+    @Test
+    public void testForecastBatchRoundTrip() {
+        ForecastBatch expected =
+                ForecastBatch.fromContentValues(createBulkInsertTestWeatherValues());
+        int count = expected.count;
+
+        Bundle putExtras = new Bundle();
+        putExtras.putByteArray(WeatherContract.EXTRA_BATCH, ForecastBatchCodec.encode(expected));
+        Bundle putResult = mContext.getContentResolver().call(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_PUT_FORECAST_BATCH,
+                null,
+                putExtras);
+        assertEquals(count, putResult.getInt(WeatherContract.EXTRA_ROW_COUNT));
+
+        /* Read the rows back three at a time to exercise paging */
+        int rowsRead = 0;
+        long afterDate = Long.MIN_VALUE;
+        while (true) {
+            Bundle getExtras = new Bundle();
+            getExtras.putLong(WeatherContract.EXTRA_AFTER_DATE, afterDate);
+            getExtras.putInt(WeatherContract.EXTRA_LIMIT, 3);
+            Bundle getResult = mContext.getContentResolver().call(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_GET_FORECAST_BATCH,
+                    null,
+                    getExtras);
+
+            ForecastBatchCodec batch = ForecastBatchCodec.decode(
+                    getResult.getByteArray(WeatherContract.EXTRA_BATCH));
+            if (batch.getCount() == 0) break;
+
+            for (int i = 0; i < batch.getCount(); i++, rowsRead++) {
+                assertEquals(expected.dates[rowsRead], batch.getDate(i));
+                assertEquals(expected.weatherIds[rowsRead], batch.getWeatherId(i));
+                assertEquals(expected.minTemps[rowsRead], batch.getMinTemp(i));
+                assertEquals(expected.maxTemps[rowsRead], batch.getMaxTemp(i));
+                assertEquals(expected.humidity[rowsRead], batch.getHumidity(i));
+                assertEquals(expected.pressure[rowsRead], batch.getPressure(i));
+                assertEquals(expected.windSpeed[rowsRead], batch.getWindSpeed(i));
+                assertEquals(expected.degrees[rowsRead], batch.getDegrees(i));
+            }
+            afterDate = batch.getDate(batch.getCount() - 1);
+        }
+
+        assertEquals(count, rowsRead);
+    }
+
+    /**
+     * This test makes sure a batch whose row count would overflow its expected length is
+     * rejected, rather than read past the end of its bytes.
+     */
+    @Test
+    public void testForecastBatchWithOverflowingCountIsRejected() {
+        byte[] batch = ForecastBatchCodec.encode(new ForecastBatch(0));
+
+        /* 2^30 rows of 60 bytes is 15 * 2^32 bytes, which overflows an int to exactly 0 */
+        ByteBuffer.wrap(batch).order(ByteOrder.LITTLE_ENDIAN).putInt(8, 1 << 30);
+
+        try {
+            ForecastBatchCodec.decode(batch);
+            fail("A batch with more rows than its bytes hold should be rejected");
+        } catch (IllegalArgumentException expected) {
+            /* Expected */
+        }
+    }
+
+    /**
+     * This test exports the weather table through the archive URI, clears the table, imports the
+     * exported archive and makes sure every row came back.
+     */
+    @Test
+    public void testArchiveExportImportRoundTrip() throws IOException {
+        ContentValues[] bulkInsertTestContentValues = createBulkInsertTestWeatherValues();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                bulkInsertTestContentValues);
+
+        /* Export */
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        InputStream in = contentResolver.openInputStream(WeatherContract.WeatherEntry.ARCHIVE_URI);
+        assertNotNull("Unable to open the weather archive for reading", in);
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                archive.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        deleteAllRecordsFromWeatherTable();
+
+        /* The import runs in the background and notifies CONTENT_URI once it has committed */
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(WeatherContract.WeatherEntry.CONTENT_URI,
+                true,
+                weatherObserver);
+
+        OutputStream out =
+                contentResolver.openOutputStream(WeatherContract.WeatherEntry.ARCHIVE_URI);
+        assertNotNull("Unable to open the weather archive for writing", out);
+        try {
+            out.write(archive.toByteArray());
+        } finally {
+            out.close();
+        }
+
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        assertEquals("Every exported row should have been imported",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testArchiveExportImportRoundTrip. Error validating WeatherEntry " + i,
+                    cursor,
+                    bulkInsertTestContentValues[i]);
+        }
+        cursor.close();
+    }
+
+    /**
+     * This test writes something that isn't an archive to the archive URI, and makes sure the
+     * writer is told that the import failed rather than having its writes silently dropped.
+     */
+    @Test
+    public void testArchiveImportFailureReachesWriter() throws IOException {
+        /* Reliable pipes, which carry the error back to the writer, need KitKat */
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return;
+
+        ParcelFileDescriptor descriptor = mContext.getContentResolver()
+                .openFileDescriptor(WeatherContract.WeatherEntry.ARCHIVE_URI, "w");
+        assertNotNull("Unable to open the weather archive for writing", descriptor);
+
+        /*
+         * Not GZIP, so the import fails on the first bytes it reads. Writing far more than the
+         * pipe can buffer makes sure we are still writing when it does.
+         */
+        byte[] garbage = new byte[4096];
+        Arrays.fill(garbage, (byte) 'x');
+        OutputStream out = new FileOutputStream(descriptor.getFileDescriptor());
+        try {
+            for (int i = 0; i < 1024; i++) {
+                out.write(garbage);
+            }
+            fail("Writing should fail once the import has failed");
+        } catch (IOException expected) {
+            /* Expected */
+        }
+
+        try {
+            descriptor.checkError();
+            fail("checkError should report that the import failed");
+        } catch (IOException expected) {
+            /* Expected */
+        } finally {
+            descriptor.close();
+        }
+    }
+
     /**
      * This method will clear all rows from the weather table in our database.
      * <p>
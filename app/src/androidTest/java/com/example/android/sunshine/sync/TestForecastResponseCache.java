@@ -0,0 +1,114 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URL;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Tests storing, expiring and evicting responses in the ForecastResponseCache.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastResponseCache {
+
+    private static final String WEATHER_JSON = "{\"cod\":200,\"list\":[]}";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        ForecastResponseCache.clear(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        ForecastResponseCache.clear(mContext);
+    }
+
+    @Test
+    public void testPutThenGet() throws Exception {
+        URL url = new URL("https://example.com/weather?q=94043");
+        long fetchedAt = System.currentTimeMillis();
+
+        ForecastResponseCache.put(mContext, url, WEATHER_JSON, fetchedAt);
+        ForecastResponseCache cached = ForecastResponseCache.get(mContext, url);
+
+        assertNotNull("The response should have been cached", cached);
+        assertEquals(WEATHER_JSON, cached.body);
+        assertEquals(fetchedAt, cached.fetchedAtMillis);
+        assertNull("Other URLs should not see this response",
+                ForecastResponseCache.get(mContext, new URL("https://example.com/weather?q=1")));
+    }
+
+    @Test
+    public void testFreshnessWindows() throws Exception {
+        URL url = new URL("https://example.com/weather?q=94043");
+        long fetchedAt = 1000000;
+        ForecastResponseCache.put(mContext, url, WEATHER_JSON, fetchedAt);
+        ForecastResponseCache cached = ForecastResponseCache.get(mContext, url);
+        assertNotNull(cached);
+
+        long revalidateFrom = fetchedAt + ForecastResponseCache.MAX_AGE_MILLIS;
+        long errorOnlyFrom = revalidateFrom + ForecastResponseCache.STALE_WHILE_REVALIDATE_MILLIS;
+        long expiredFrom = errorOnlyFrom + ForecastResponseCache.STALE_IF_ERROR_MILLIS;
+
+        assertEquals(ForecastResponseCache.FRESH, cached.getFreshness(fetchedAt));
+        assertEquals(ForecastResponseCache.FRESH, cached.getFreshness(revalidateFrom - 1));
+        assertEquals(ForecastResponseCache.STALE_REVALIDATE, cached.getFreshness(revalidateFrom));
+        assertEquals(ForecastResponseCache.STALE_IF_ERROR, cached.getFreshness(errorOnlyFrom));
+        assertEquals(ForecastResponseCache.EXPIRED, cached.getFreshness(expiredFrom));
+    }
+
+    @Test
+    public void testCorruptLengthIsDiscarded() throws Exception {
+        URL url = new URL("https://example.com/weather?q=94043");
+        ForecastResponseCache.put(mContext, url, WEATHER_JSON, System.currentTimeMillis());
+
+        File[] entries = new File(mContext.getCacheDir(), "forecast_responses").listFiles();
+        assertNotNull(entries);
+        assertEquals(1, entries.length);
+
+        /* The body's length follows the magic, version, fetch time and URL */
+        RandomAccessFile entry = new RandomAccessFile(entries[0], "rw");
+        try {
+            entry.seek(4 + 4 + 8 + 2 + url.toString().length());
+            entry.writeInt(Integer.MAX_VALUE);
+        } finally {
+            entry.close();
+        }
+
+        assertNull("An entry asking for more than the cache holds should be discarded",
+                ForecastResponseCache.get(mContext, url));
+        assertFalse("The corrupt entry should have been deleted", entries[0].exists());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        int urls = 12;
+        for (int i = 0; i < urls; i++) {
+            ForecastResponseCache.put(mContext, new URL("https://example.com/weather?q=" + i),
+                    WEATHER_JSON, System.currentTimeMillis());
+            /* File timestamps may only have one second of resolution */
+            Thread.sleep(1100);
+        }
+
+        assertNull("The oldest entry should have been evicted",
+                ForecastResponseCache.get(mContext, new URL("https://example.com/weather?q=0")));
+        assertNotNull("The newest entry should still be cached",
+                ForecastResponseCache.get(mContext,
+                        new URL("https://example.com/weather?q=" + (urls - 1))));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Tests the throttling, change detection and quiet hours of NotificationPolicy.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestNotificationPolicy {
+
+    private static final String PREFERENCES_NAME = "test_notification_policy";
+
+    private static final int CLEAR = 800;
+    private static final int FEW_CLOUDS = 801;
+    private static final int LIGHT_RAIN = 500;
+
+    private SharedPreferences mPreferences;
+
+    /* Noon today, local time, so that every test stays clear of midnight */
+    private long mNoon;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mPreferences.edit().clear().commit();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 12);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        mNoon = calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void testFirstNotificationThenThrottled() {
+        NotificationPolicy policy = new NotificationPolicy(mPreferences, 0, 0);
+        ForecastBatch forecast = forecastForToday(mNoon, CLEAR, 20, 10);
+
+        assertEquals(NotificationPolicy.SKIP_DISABLED, policy.decide(mNoon, false, forecast));
+        assertEquals(NotificationPolicy.NOTIFY, policy.decide(mNoon, true, forecast));
+        policy.recordNotified(mNoon, forecast);
+
+        long oneHourLater = mNoon + TimeUnit.HOURS.toMillis(1);
+        assertEquals(NotificationPolicy.SKIP_THROTTLED,
+                policy.decide(oneHourLater, true,
+                        forecastForToday(oneHourLater, LIGHT_RAIN, 20, 10)));
+
+        long oneDayLater = mNoon + NotificationPolicy.THROTTLE_MILLIS;
+        assertEquals(NotificationPolicy.NOTIFY,
+                policy.decide(oneDayLater, true, forecastForToday(oneDayLater, CLEAR, 20, 10)));
+    }
+
+    @Test
+    public void testOnlyMeaningfulChangesNotifyAgain() {
+        NotificationPolicy policy = new NotificationPolicy(mPreferences, 0, 0);
+        policy.recordNotified(mNoon, forecastForToday(mNoon, FEW_CLOUDS, 20, 10));
+
+        long later = mNoon + NotificationPolicy.MIN_CHANGE_INTERVAL_MILLIS;
+
+        /* Broken rather than few clouds, and a degree warmer, is the same weather */
+        assertEquals(NotificationPolicy.SKIP_UNCHANGED,
+                policy.decide(later, true, forecastForToday(later, 803, 21, 10)));
+        assertEquals(NotificationPolicy.NOTIFY,
+                policy.decide(later, true, forecastForToday(later, CLEAR, 20, 10)));
+        assertEquals(NotificationPolicy.NOTIFY,
+                policy.decide(later, true, forecastForToday(later, FEW_CLOUDS, 20, 6)));
+    }
+
+    @Test
+    public void testQuietHours() {
+        /* Quiet from 11:00 to 13:00, so that noon falls inside */
+        NotificationPolicy policy = new NotificationPolicy(mPreferences, 11 * 60, 13 * 60);
+        assertEquals(NotificationPolicy.SKIP_QUIET_HOURS,
+                policy.decide(mNoon, true, forecastForToday(mNoon, CLEAR, 20, 10)));
+
+        /* Quiet from 13:00 to 11:00 the next day, which spans midnight and misses noon */
+        policy = new NotificationPolicy(mPreferences, 13 * 60, 11 * 60);
+        assertEquals(NotificationPolicy.NOTIFY,
+                policy.decide(mNoon, true, forecastForToday(mNoon, CLEAR, 20, 10)));
+    }
+
+    @Test
+    public void testForecastWithoutToday() {
+        NotificationPolicy policy = new NotificationPolicy(mPreferences, 0, 0);
+        ForecastBatch forecast = new ForecastBatch(1);
+        forecast.add(normalizedDate(mNoon) + TimeUnit.DAYS.toMillis(1), CLEAR, 10, 20,
+                50, 1000, 2, 90);
+        assertEquals(NotificationPolicy.SKIP_NO_TODAY, policy.decide(mNoon, true, forecast));
+    }
+
+    private static ForecastBatch forecastForToday(long nowMillis, int weatherId,
+                                                  double maxTemp, double minTemp) {
+        ForecastBatch forecast = new ForecastBatch(1);
+        forecast.add(normalizedDate(nowMillis), weatherId, minTemp, maxTemp, 50, 1000, 2, 90);
+        return forecast;
+    }
+
+    /* The normalized UTC date of the local day a time falls on */
+    private static long normalizedDate(long millis) {
+        long localMillis = millis + TimeZone.getDefault().getOffset(millis);
+        return TimeUnit.DAYS.toMillis(TimeUnit.MILLISECONDS.toDays(localMillis));
+    }
+}
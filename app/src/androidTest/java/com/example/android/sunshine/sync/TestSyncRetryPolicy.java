@@ -0,0 +1,234 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.HttpStatusException;
+import com.example.android.sunshine.utilities.SunshineHttpClient;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests SyncRetryPolicy and CircuitBreaker against a {@link FaultyWeatherServer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncRetryPolicy {
+
+    private static final String TEST_BREAKER_PREFERENCES = "test_sync_circuit_breaker";
+
+    private static final String WEATHER_JSON = "{\"cod\":200}";
+
+    /* Keeps retries fast enough for a test, while still exercising the backoff */
+    private static final long TEST_BASE_DELAY_MILLIS = 10;
+    private static final long TEST_MAX_DELAY_MILLIS = 40;
+
+    private static final long OPEN_MILLIS = 60000;
+    private static final long MAX_OPEN_MILLIS = 4 * OPEN_MILLIS;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private FaultyWeatherServer mServer;
+    private SharedPreferences mBreakerPreferences;
+    private SyncRetryPolicy mPolicy;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new FaultyWeatherServer();
+
+        mBreakerPreferences = mContext.getSharedPreferences(
+                TEST_BREAKER_PREFERENCES, Context.MODE_PRIVATE);
+        mBreakerPreferences.edit().clear().commit();
+
+        mPolicy = new SyncRetryPolicy(new Random(42))
+                .setRule(SyncRetryPolicy.ERROR_SERVER, 3,
+                        TEST_BASE_DELAY_MILLIS, TEST_MAX_DELAY_MILLIS)
+                .setRule(SyncRetryPolicy.ERROR_CONNECTION, 3,
+                        TEST_BASE_DELAY_MILLIS, TEST_MAX_DELAY_MILLIS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        SunshineHttpClient.setTimeouts(SunshineHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                SunshineHttpClient.DEFAULT_READ_TIMEOUT_MILLIS);
+        mServer.shutdown();
+        mBreakerPreferences.edit().clear().commit();
+    }
+
+    private CircuitBreaker createBreaker(int failureThreshold) {
+        return new CircuitBreaker(mBreakerPreferences, failureThreshold,
+                OPEN_MILLIS, MAX_OPEN_MILLIS);
+    }
+
+    @Test
+    public void testServerErrorsAreRetriedUntilSuccess() throws Exception {
+        mServer.respond(503, "").respond(500, "").respond(200, WEATHER_JSON);
+        CircuitBreaker breaker = createBreaker(10);
+
+        String response = mPolicy.fetchWithRetries(mServer.getUrl(), breaker);
+
+        assertEquals(WEATHER_JSON, response);
+        assertEquals("Each server error should have been retried", 3, mServer.getRequestCount());
+        assertEquals("A success should close the breaker",
+                CircuitBreaker.STATE_CLOSED, breaker.getState(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testDroppedConnectionIsRetried() throws Exception {
+        mServer.dropConnection().respond(200, WEATHER_JSON);
+
+        String response = mPolicy.fetchWithRetries(mServer.getUrl(), createBreaker(10));
+
+        assertEquals(WEATHER_JSON, response);
+    }
+
+    @Test
+    public void testTimeoutIsRetried() throws Exception {
+        mServer.stall().respond(200, WEATHER_JSON);
+        SunshineHttpClient.setTimeouts(1000, 500);
+        mPolicy.setRule(SyncRetryPolicy.ERROR_TIMEOUT, 2,
+                TEST_BASE_DELAY_MILLIS, TEST_MAX_DELAY_MILLIS);
+
+        String response = mPolicy.fetchWithRetries(mServer.getUrl(), createBreaker(10));
+
+        assertEquals(WEATHER_JSON, response);
+        assertEquals("The stalled request should have timed out and been retried",
+                2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws Exception {
+        mServer.respond(404, "");
+        CircuitBreaker breaker = createBreaker(1);
+
+        try {
+            mPolicy.fetchWithRetries(mServer.getUrl(), breaker);
+            fail("A 404 should have been thrown");
+        } catch (HttpStatusException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+
+        assertEquals("A 404 should not be retried", 1, mServer.getRequestCount());
+        assertTrue("A 404 should not count against the server",
+                breaker.allowRequest(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testBreakerStopsRequestsToFailingServer() throws Exception {
+        mServer.respond(503, "");
+        CircuitBreaker breaker = createBreaker(3);
+
+        try {
+            mPolicy.fetchWithRetries(mServer.getUrl(), breaker);
+            fail("The server never succeeds, so the fetch should have failed");
+        } catch (HttpStatusException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(3, mServer.getRequestCount());
+
+        try {
+            mPolicy.fetchWithRetries(mServer.getUrl(), breaker);
+            fail("The breaker should be open");
+        } catch (CircuitOpenException e) {
+            assertEquals(SyncRetryPolicy.ERROR_CIRCUIT_OPEN, SyncRetryPolicy.classify(e));
+            assertFalse("A sync refused by the breaker should wait for the next periodic sync",
+                    mPolicy.isRetryable(SyncRetryPolicy.ERROR_CIRCUIT_OPEN));
+        }
+        assertEquals("An open breaker should not contact the server",
+                3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void testBreakerHalfOpensAndBacksOff() {
+        CircuitBreaker breaker = createBreaker(2);
+        long start = 1000000;
+
+        breaker.recordFailure(start);
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState(start));
+        breaker.recordFailure(start);
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState(start + OPEN_MILLIS - 1));
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, breaker.getState(start + OPEN_MILLIS));
+
+        /* Only one trial request is let through, until its result is recorded */
+        long trial = start + OPEN_MILLIS;
+        assertTrue(breaker.allowRequest(trial));
+        assertFalse("A second caller should wait for the trial", breaker.allowRequest(trial));
+
+        /* A failed trial reopens the breaker for twice as long */
+        breaker.recordFailure(trial);
+        assertFalse(breaker.allowRequest(trial + 2 * OPEN_MILLIS - 1));
+        long nextTrial = trial + 2 * OPEN_MILLIS;
+        assertTrue(breaker.allowRequest(nextTrial));
+        assertFalse(breaker.allowRequest(nextTrial + 1));
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState(nextTrial));
+        assertTrue("A closed breaker should allow every request", breaker.allowRequest(nextTrial));
+        assertTrue(breaker.allowRequest(nextTrial));
+    }
+
+    @Test
+    public void testLostTrialIsGivenUpOn() {
+        CircuitBreaker breaker = createBreaker(1);
+        long start = 1000000;
+        breaker.recordFailure(start);
+
+        /* The trial never reports back, as if the process had been killed while making it */
+        long trial = start + OPEN_MILLIS;
+        assertTrue(breaker.allowRequest(trial));
+        long timeout = trial + CircuitBreaker.TRIAL_TIMEOUT_MILLIS;
+        assertFalse(breaker.allowRequest(timeout - 1));
+        assertEquals(1, breaker.getRetryAfterMillis(timeout - 1));
+
+        assertTrue("A lost trial should be replaced", breaker.allowRequest(timeout));
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, breaker.getState(timeout));
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(SyncRetryPolicy.ERROR_TIMEOUT,
+                SyncRetryPolicy.classify(new SocketTimeoutException()));
+        assertEquals(SyncRetryPolicy.ERROR_DNS,
+                SyncRetryPolicy.classify(new UnknownHostException()));
+        assertEquals(SyncRetryPolicy.ERROR_SERVER,
+                SyncRetryPolicy.classify(new HttpStatusException(502, "Bad Gateway")));
+        assertEquals(SyncRetryPolicy.ERROR_THROTTLED,
+                SyncRetryPolicy.classify(new HttpStatusException(429, "Too Many Requests")));
+        assertEquals(SyncRetryPolicy.ERROR_CLIENT,
+                SyncRetryPolicy.classify(new HttpStatusException(404, "Not Found")));
+        assertEquals(SyncRetryPolicy.ERROR_CONNECTION,
+                SyncRetryPolicy.classify(new IOException()));
+        assertEquals(SyncRetryPolicy.ERROR_OTHER,
+                SyncRetryPolicy.classify(new JSONException("bad")));
+    }
+
+    @Test
+    public void testBackoffIsCappedAndJittered() {
+        SyncRetryPolicy policy = new SyncRetryPolicy(new Random(7))
+                .setRule(SyncRetryPolicy.ERROR_TIMEOUT, 10, 100, 1000);
+
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long ceiling = Math.min(1000, 100L << (attempt - 1));
+            for (int sample = 0; sample < 100; sample++) {
+                long delay = policy.getBackoffMillis(SyncRetryPolicy.ERROR_TIMEOUT, attempt);
+                assertTrue("Delay " + delay + " is out of range for attempt " + attempt,
+                        delay >= 0 && delay <= ceiling);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.PerformanceFixtures;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherDbHelper;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utilities.SunshineClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs months of 3-hourly syncs against a {@link FaultyWeatherServer} in seconds, on a virtual
+ * clock that starts on March 1st in New York, so that the default run crosses both of its
+ * daylight saving changes as well as hundreds of midnights.
+ * <p>
+ * For each simulated day, the database size, Java heap in use, rows written and wall clock time
+ * spent are written to logcat under the tag "SyncSoak". The number of days defaults to 270,
+ * which runs into late November, and can be changed with the instrumentation argument
+ * "soakDays", for example:
+ * <pre>
+ * adb shell am instrument -w -e soakDays 30 \
+ *     -e class com.example.android.sunshine.sync.TestSyncSoak \
+ *     com.example.android.sunshine.test/android.support.test.runner.AndroidJUnitRunner
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncSoak {
+
+    private static final String TAG = "SyncSoak";
+
+    private static final int DEFAULT_SOAK_DAYS = 270;
+
+    private static final int SYNCS_PER_DAY = 8;
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+    /* The number of days in each forecast the mock server returns */
+    private static final int FORECAST_DAYS = 14;
+
+    /* These are SunshineSyncTask's, which remember times from the virtual clock */
+    private static final String NOTIFICATION_POLICY_PREFERENCES = "notification_policy";
+    private static final String CIRCUIT_BREAKER_PREFERENCES = "sync_circuit_breaker";
+
+    /* A clock that only moves when the soak moves it */
+    private static class VirtualClock implements SunshineClock.TimeSource {
+        private final TimeZone mTimeZone;
+        private volatile long mNowMillis;
+
+        VirtualClock(TimeZone timeZone, long startMillis) {
+            mTimeZone = timeZone;
+            mNowMillis = startMillis;
+        }
+
+        void advance(long millis) {
+            mNowMillis += millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNowMillis;
+        }
+
+        @Override
+        public TimeZone getTimeZone() {
+            return mTimeZone;
+        }
+    }
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private FaultyWeatherServer mServer;
+    private VirtualClock mClock;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new FaultyWeatherServer();
+        NetworkUtils.setBaseUrl(mServer.getUrl().toString());
+
+        /* Start at 1 AM on March 1st, New York time, a week before the clocks go forward */
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        Calendar start = Calendar.getInstance(timeZone);
+        start.clear();
+        start.set(2026, Calendar.MARCH, 1, 1, 0);
+        mClock = new VirtualClock(timeZone, start.getTimeInMillis());
+        SunshineClock.setTimeSource(mClock);
+
+        clearSyncState();
+        SyncMetrics.reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        SunshineClock.setTimeSource(null);
+        NetworkUtils.setBaseUrl(null);
+        mServer.shutdown();
+
+        /* Nothing the soak wrote should outlive it, as it is all dated months from now */
+        clearSyncState();
+        SyncMetrics.reset();
+    }
+
+    @Test
+    public void soakSyncLifecycle() {
+        int soakDays = getSoakDays();
+        int sample = 0;
+
+        for (int day = 0; day < soakDays; day++) {
+            long rowsBefore = SyncMetrics.getRowsWrittenTotal();
+            long dayStart = SystemClock.elapsedRealtime();
+
+            for (int sync = 0; sync < SYNCS_PER_DAY; sync++) {
+                mServer.clearScript().respond(200, PerformanceFixtures.createForecastJson(
+                        PerformanceFixtures.createWeatherValues(FORECAST_DAYS, sample++)));
+
+                int result = SunshineSyncTask.syncWeather(mContext);
+                assertEquals("Sync " + sync + " on day " + day + " failed",
+                        SunshineSyncTask.SYNC_RESULT_SUCCESS, result);
+
+                mClock.advance(SYNC_INTERVAL_MILLIS);
+            }
+
+            long dayMillis = SystemClock.elapsedRealtime() - dayStart;
+            int weatherRows = countWeatherRows();
+
+            Log.i(TAG, "day=" + day
+                    + " dbBytes=" + getDatabaseSize()
+                    + " heapBytes=" + getHeapInUse()
+                    + " rowsWritten=" + (SyncMetrics.getRowsWrittenTotal() - rowsBefore)
+                    + " weatherRows=" + weatherRows
+                    + " wallMillis=" + dayMillis);
+
+            /* Old days must be deleted as new ones arrive, or the table grows forever */
+            assertTrue("The weather table grew to " + weatherRows + " rows on day " + day,
+                    weatherRows <= FORECAST_DAYS);
+        }
+
+        int notifications =
+                SyncMetrics.getNotificationDecisionCount(NotificationPolicy.NOTIFY);
+        Log.i(TAG, "syncs=" + SyncMetrics.getSucceededCount()
+                + " failed=" + SyncMetrics.getFailedCount()
+                + " notifications=" + notifications
+                + " throttled="
+                + SyncMetrics.getNotificationDecisionCount(NotificationPolicy.SKIP_THROTTLED));
+
+        assertEquals(soakDays * SYNCS_PER_DAY, SyncMetrics.getSucceededCount());
+        assertTrue("Notified " + notifications + " times in " + soakDays + " days",
+                notifications <= soakDays);
+    }
+
+    private static int getSoakDays() {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String soakDays = arguments.getString("soakDays");
+        return soakDays == null ? DEFAULT_SOAK_DAYS : Integer.parseInt(soakDays);
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* The database and its journal, which is where growth would show up first */
+    private long getDatabaseSize() {
+        File database = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        File parent = database.getParentFile();
+        long bytes = 0;
+        for (String suffix : new String[]{"", "-journal", "-wal", "-shm"}) {
+            bytes += new File(parent, database.getName() + suffix).length();
+        }
+        return bytes;
+    }
+
+    private static long getHeapInUse() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    private void clearSyncState() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        ForecastSnapshot.delete(mContext);
+        mContext.getSharedPreferences(NOTIFICATION_POLICY_PREFERENCES, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        mContext.getSharedPreferences(CIRCUIT_BREAKER_PREFERENCES, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.PerformanceFixtures;
+import com.example.android.sunshine.data.ForecastBatch;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Counts the objects allocated to parse a forecast into a {@link ForecastBatch}, and into one
+ * ContentValues per day, which is what the sync used to hand to the ContentProvider.
+ * <p>
+ * Results are written to logcat under the tag "ForecastAllocations". Both counts include the
+ * JSONObject tree, which is the same for both and is most of what either of them allocates.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastAllocations {
+
+    private static final String TAG = "ForecastAllocations";
+
+    private static final int DAYS = 16;
+
+    /* Number of parses to average over */
+    private static final int ITERATIONS = 20;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testBatchAllocatesLessThanContentValues() throws Exception {
+        String json = PerformanceFixtures.createForecastJson(
+                PerformanceFixtures.createWeatherValues(DAYS));
+
+        /* Warm up, so that class loading and interning aren't counted */
+        ForecastBatch warmUpBatch = OpenWeatherJsonUtils.getForecastBatchFromJson(mContext, json);
+        ContentValues[] warmUpValues =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+        assertEquals(DAYS, warmUpBatch.count);
+        assertEquals(DAYS, warmUpValues.length);
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < ITERATIONS; i++) {
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+            }
+            int contentValuesAllocations = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < ITERATIONS; i++) {
+                OpenWeatherJsonUtils.getForecastBatchFromJson(mContext, json);
+            }
+            int batchAllocations = Debug.getThreadAllocCount();
+
+            Log.i(TAG, "Allocations per day parsed into ContentValues: "
+                    + (contentValuesAllocations / (ITERATIONS * DAYS)));
+            Log.i(TAG, "Allocations per day parsed into a ForecastBatch: "
+                    + (batchAllocations / (ITERATIONS * DAYS)));
+
+            assertTrue("Parsing into a ForecastBatch should allocate less than into ContentValues",
+                    batchAllocations < contentValuesAllocations);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests that a single parse feeds every sink attached to it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherJsonUtils {
+
+    private static final String FORECAST_JSON = "{\"cod\":\"200\","
+            + "\"city\":{\"coord\":{\"lat\":37.4192,\"lon\":-122.0574}},\"list\":["
+            + "{\"pressure\":1012.5,\"humidity\":61,\"speed\":3.5,\"deg\":180,"
+            + "\"temp\":{\"min\":10.5,\"max\":20.5},\"weather\":[{\"id\":800}]},"
+            + "{\"pressure\":1009.0,\"humidity\":80,\"speed\":6.0,\"deg\":270,"
+            + "\"temp\":{\"min\":8.0,\"max\":14.0},\"weather\":[{\"id\":501}]}]}";
+
+    private static final String NOT_FOUND_JSON = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testOneParseFeedsEverySink() throws Exception {
+        ParsedForecast forecast = new ParsedForecast();
+        List<String> displayStrings = new ArrayList<>();
+
+        assertTrue(OpenWeatherJsonUtils.parseForecast(FORECAST_JSON,
+                forecast, ForecastSinks.displayStrings(mContext, displayStrings)));
+
+        assertTrue(forecast.hasLocation());
+        assertEquals(37.4192, forecast.getLatitude());
+        assertEquals(-122.0574, forecast.getLongitude());
+
+        ForecastBatch days = forecast.getDays();
+        assertEquals(2, days.count);
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        assertEquals(today, days.dates[0]);
+        assertEquals(today + SunshineDateUtils.DAY_IN_MILLIS, days.dates[1]);
+        assertEquals(800, days.weatherIds[0]);
+        assertEquals(10.5, days.minTemps[0]);
+        assertEquals(20.5, days.maxTemps[0]);
+        assertEquals(61.0, days.humidity[0]);
+        assertEquals(1012.5, days.pressure[0]);
+        assertEquals(3.5, days.windSpeed[0]);
+        assertEquals(180.0, days.degrees[0]);
+        assertEquals(501, days.weatherIds[1]);
+
+        assertEquals(2, displayStrings.size());
+        assertTrue(displayStrings.get(1).contains(
+                SunshineWeatherUtils.getStringForWeatherCondition(mContext, 501)));
+    }
+
+    @Test
+    public void testErrorCodeCallsNoSink() throws Exception {
+        ParsedForecast forecast = new ParsedForecast();
+        List<String> displayStrings = new ArrayList<>();
+
+        assertFalse(OpenWeatherJsonUtils.parseForecast(NOT_FOUND_JSON,
+                forecast, ForecastSinks.displayStrings(mContext, displayStrings)));
+
+        assertNull(forecast.getDays());
+        assertFalse(forecast.hasLocation());
+        assertTrue(displayStrings.isEmpty());
+        assertNull(OpenWeatherJsonUtils.getForecastBatchFromJson(mContext, NOT_FOUND_JSON));
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.databinding.DataBindingUtil;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.ShareCompat;
 import android.support.v4.content.CursorLoader;
@@ -14,14 +16,19 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCursorReader;
+import com.example.android.sunshine.data.ForecastDetailCache;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.PresentationChanges;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
 
 public class DetailActivity extends AppCompatActivity implements
 
-        LoaderManager.LoaderCallbacks<Cursor> {
+        LoaderManager.LoaderCallbacks<Cursor>,
+        PresentationChanges.Listener {
 
     /*
      * In this Activity, you can share the selected day's forecast. No social sharing is complete
@@ -31,32 +38,11 @@ public class DetailActivity extends AppCompatActivity implements
 
     /*
      * The columns of data that we are interested in displaying within our DetailActivity's
-     * weather display.
+     * weather display. They are those of a ForecastBatch, so that a day we query ourselves is
+     * read by the generated ForecastBatchCursorReader and bound just like a day from the
+     * ForecastDetailCache.
      */
-    public static final String[] WEATHER_DETAIL_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
-            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
-            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherContract.WeatherEntry.COLUMN_DEGREES,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_DATE = 0;
-    public static final int INDEX_WEATHER_MAX_TEMP = 1;
-    public static final int INDEX_WEATHER_MIN_TEMP = 2;
-    public static final int INDEX_WEATHER_HUMIDITY = 3;
-    public static final int INDEX_WEATHER_PRESSURE = 4;
-    public static final int INDEX_WEATHER_WIND_SPEED = 5;
-    public static final int INDEX_WEATHER_DEGREES = 6;
-    public static final int INDEX_WEATHER_CONDITION_ID = 7;
+    public static final String[] WEATHER_DETAIL_PROJECTION = ForecastBatchCursorReader.PROJECTION;
 
     /*
      * This ID will be used to identify the Loader responsible for loading the weather details
@@ -73,6 +59,13 @@ public class DetailActivity extends AppCompatActivity implements
     /* The URI that is used to access the chosen day's weather details */
     private Uri mUri;
 
+    /* The last day bound, at mBoundIndex of mBoundDays, to bind again when formats change */
+    private ForecastBatch mBoundDays;
+    private int mBoundIndex;
+
+    /* Watches the day bound from the ForecastDetailCache, until the Loader takes over */
+    private ContentObserver mDayObserver;
+
     /*
      * This field is used for data binding. Normally, we would have to call findViewById many
      * times to get references to the Views in this Activity. With data binding however, we only
@@ -92,10 +85,111 @@ public class DetailActivity extends AppCompatActivity implements
         mUri = getIntent().getData();
         if (mUri == null) throw new NullPointerException("URI for DetailActivity cannot be null");
 
+        /* Units, locale and time format changes are applied to the day we hold, without a query */
+        PresentationChanges.register(this, this);
+
+        /*
+         * If MainActivity's list already loaded this day, bind it right away, so the first frame
+         * shows the weather. Only on a miss do we query the database for it. On a hit, we still
+         * watch the day, and start the Loader the first time it changes, such as when a sync
+         * rewrites it while we are open.
+         */
+        if (bindFromCache()) {
+            watchCachedDay();
+            return;
+        }
+
         /* This connects our Activity into the loader lifecycle. */
         getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, this);
     }
 
+    /**
+     * Binds the day in our URI from the ForecastDetailCache, if it's there.
+     *
+     * @return true if the day was cached and has been bound
+     */
+    private boolean bindFromCache() {
+        ForecastBatch days = ForecastDetailCache.get();
+        if (days == null) {
+            return false;
+        }
+
+        long date;
+        try {
+            date = Long.parseLong(mUri.getLastPathSegment());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        int i = days.indexOf(date);
+        if (i < 0) {
+            return false;
+        }
+
+        bindDay(days, i);
+        return true;
+    }
+
+    /*
+     * Watches the day we bound from the ForecastDetailCache. On its first change, hands over to
+     * the Loader, which queries the day again and keeps watching it from then on.
+     */
+    private void watchCachedDay() {
+        mDayObserver = new ContentObserver(new Handler()) {
+            @Override
+            public void onChange(boolean selfChange) {
+                stopWatchingCachedDay();
+                getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, DetailActivity.this);
+            }
+        };
+        long date = mBoundDays.dates[mBoundIndex];
+        getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.buildDayNotificationUriWithDate(date),
+                false,
+                mDayObserver);
+    }
+
+    private void stopWatchingCachedDay() {
+        if (mDayObserver != null) {
+            getContentResolver().unregisterContentObserver(mDayObserver);
+            mDayObserver = null;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        stopWatchingCachedDay();
+        PresentationChanges.unregister(this, this);
+    }
+
+    /**
+     * Called when the units, locale or time format have changed. Binds the day we are showing
+     * again, which formats it for the new settings.
+     *
+     * @param changes The PresentationChanges.CHANGE_* flags of what changed
+     */
+    @Override
+    public void onPresentationChanged(int changes) {
+        if (mBoundDays != null) {
+            bindDay(mBoundDays, mBoundIndex);
+        }
+    }
+
+    /* Binds the day at index i of a batch, and remembers it */
+    private void bindDay(ForecastBatch days, int i) {
+        mBoundDays = days;
+        mBoundIndex = i;
+        bindWeather(days.dates[i],
+                days.weatherIds[i],
+                days.maxTemps[i],
+                days.minTemps[i],
+                (float) days.humidity[i],
+                (float) days.pressure[i],
+                (float) days.windSpeed[i],
+                (float) days.degrees[i]);
+    }
+
     /**
      * This is where we inflate and set up the menu for this Activity.
      *
@@ -225,11 +319,32 @@ public class DetailActivity extends AppCompatActivity implements
             return;
         }
 
+        ForecastBatch day = new ForecastBatch(1);
+        ForecastBatchCursorReader.readRow(data, day);
+        bindDay(day, 0);
+    }
+
+    /**
+     * Binds one day's weather to our views, whether it came from our own query or from the
+     * ForecastDetailCache.
+     *
+     * @param localDateMidnightGmt The date, as stored in the weather table
+     * @param weatherId            Weather condition ID, as provided by Open Weather Map
+     * @param highInCelsius        High temperature, in degrees celsius
+     * @param lowInCelsius         Low temperature, in degrees celsius
+     * @param humidity             Humidity, in percent
+     * @param pressure             Pressure, in hPa
+     * @param windSpeed            Wind speed
+     * @param windDirection        Wind direction, in compass degrees
+     */
+    private void bindWeather(long localDateMidnightGmt, int weatherId,
+                             double highInCelsius, double lowInCelsius,
+                             float humidity, float pressure,
+                             float windSpeed, float windDirection) {
+
         /****************
          * Weather Icon *
          ****************/
-        /* Read weather condition ID from the cursor (ID provided by Open Weather Map) */
-        int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
         /* Use our utility method to determine the resource ID for the proper art */
         int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
 
@@ -240,15 +355,14 @@ public class DetailActivity extends AppCompatActivity implements
          * Weather Date *
          ****************/
         /*
-         * Read the date from the cursor. It is important to note that the date from the cursor
-         * is the same date from the weather SQL table. The date that is stored is a GMT
-         * representation at midnight of the date when the weather information was loaded for.
+         * It is important to note that this date is the same date from the weather SQL table.
+         * The date that is stored is a GMT representation at midnight of the date when the
+         * weather information was loaded for.
          *
          * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
          * the date representation for the local date in local time.
          * SunshineDateUtils#getFriendlyDateString takes care of this for us.
          */
-        long localDateMidnightGmt = data.getLong(INDEX_WEATHER_DATE);
         String dateText = SunshineDateUtils.getFriendlyDateString(this, localDateMidnightGmt, true);
 
         // Display the date
@@ -273,8 +387,6 @@ public class DetailActivity extends AppCompatActivity implements
         /**************************
          * High (max) temperature *
          **************************/
-        /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = data.getDouble(INDEX_WEATHER_MAX_TEMP);
         /*
          * If the user's preference for weather is fahrenheit, formatTemperature will convert
          * the temperature. This method will also append either °C or °F to the temperature
@@ -292,8 +404,6 @@ public class DetailActivity extends AppCompatActivity implements
         /*************************
          * Low (min) temperature *
          *************************/
-        /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = data.getDouble(INDEX_WEATHER_MIN_TEMP);
         /*
          * If the user's preference for weather is fahrenheit, formatTemperature will convert
          * the temperature. This method will also append either °C or °F to the temperature
@@ -311,8 +421,6 @@ public class DetailActivity extends AppCompatActivity implements
         /************
          * Humidity *
          ************/
-        /* Read humidity from the cursor */
-        float humidity = data.getFloat(INDEX_WEATHER_HUMIDITY);
         String humidityString = getString(R.string.format_humidity, humidity);
 
         // Content description for the humidity for a11y
@@ -329,9 +437,6 @@ public class DetailActivity extends AppCompatActivity implements
         /****************************
          * Wind speed and direction *
          ****************************/
-        /* Read wind speed (in MPH) and direction (in compass degrees) from the cursor  */
-        float windSpeed = data.getFloat(INDEX_WEATHER_WIND_SPEED);
-        float windDirection = data.getFloat(INDEX_WEATHER_DEGREES);
         String windString = SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection);
 
         // Content description for the wind for a11y
@@ -348,9 +453,6 @@ public class DetailActivity extends AppCompatActivity implements
         /************
          * Pressure *
          ************/
-        /* Read pressure from the cursor */
-        float pressure = data.getFloat(INDEX_WEATHER_PRESSURE);
-
         /*
          * Format the pressure text using string resources. The reason we directly access
          * resources using getString rather than using a method from SunshineWeatherUtils as
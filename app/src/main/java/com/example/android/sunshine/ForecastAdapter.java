@@ -3,21 +3,31 @@ package com.example.android.sunshine;
 import android.content.Context;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.v4.view.AsyncLayoutInflater;
 import android.support.v7.widget.RecyclerView;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * <p>
+ * Only the first page of the forecast comes from the Cursor MainActivity loads. The rest is read
+ * by a {@link ForecastPager} as the list is scrolled towards it, and only a few pages are kept
+ * in memory however long the forecast is.
  */
-class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ForecastPager.OnPageLoadedListener {
 
     //  COMPLETED (6) Declare constant IDs for the ViewType for today and for a future day
     private static final int VIEW_TYPE_TODAY = 0;
@@ -50,7 +60,33 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
 //  COMPLETED (7) Declare a private boolean called mUseTodayLayout
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    /*
+     * The most list items worth inflating ahead of time. The sync stores two weeks of weather,
+     * and few screens show more than this many rows at once.
+     */
+    private static final int MAX_PREWARMED_VIEWS = 14;
+
+    /* Reads and keeps the pages of the forecast */
+    private final ForecastPager mPager;
+
+    /* Set once the first page has been swapped in; until then, we display the snapshot */
+    private boolean mHasPages;
+
+    /*
+     * A view inflated in the background by prewarmViewHolders, waiting to be wrapped in a
+     * ViewHolder by onCreateViewHolder. It is only ever set for the length of one call to
+     * createViewHolder. This only works because createViewHolder calls onCreateViewHolder
+     * synchronously, on the main thread, right after prewarmViewHolders sets it, so no other
+     * ViewHolder can be created in between and take the view.
+     */
+    private View mPrewarmedView;
+
+    /*
+     * The forecast snapshot written by the last sync. It is only used to display the list until
+     * the first page arrives, and is dropped then; once we have pages, they are the single
+     * source of truth, and clearing them leaves the list empty rather than showing it again.
+     */
+    private ForecastSnapshot mSnapshot;
 
     /**
      * Creates a ForecastAdapter.
@@ -64,6 +100,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         mClickHandler = clickHandler;
 //      COMPLETED (8) Set mUseTodayLayout to the value specified in resources
         mUseTodayLayout = mContext.getResources().getBoolean(R.bool.use_today_layout);
+        mPager = new ForecastPager(context.getContentResolver(),
+                MainActivity.MAIN_FORECAST_PROJECTION, this);
     }
 
     /**
@@ -101,12 +139,84 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        View view = LayoutInflater.from(mContext).inflate(layoutId, viewGroup, false);
+        View view;
+        if (mPrewarmedView != null) {
+            view = mPrewarmedView;
+            mPrewarmedView = null;
+        } else {
+            view = LayoutInflater.from(mContext).inflate(layoutId, viewGroup, false);
+        }
         view.setFocusable(true);
 
         return new ForecastAdapterViewHolder(view);
     }
 
+    /**
+     * Inflates the list items the first screen of the forecast will need on a background thread,
+     * and puts their ViewHolders in the RecyclerView's pool. When the first Cursor is swapped in,
+     * the RecyclerView takes its ViewHolders from the pool instead of inflating every row of the
+     * first frame on the main thread.
+     * <p>
+     * Call this before the adapter has any data. Views that finish inflating after the first
+     * layout aren't wasted; they wait in the pool for the list to scroll.
+     *
+     * @param recyclerView The RecyclerView this adapter is attached to
+     */
+    void prewarmViewHolders(final RecyclerView recyclerView) {
+        final RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+
+        /* Enough rows to fill the screen, plus one partly scrolled into view */
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        TypedValue itemHeight = new TypedValue();
+        mContext.getTheme()
+                .resolveAttribute(android.R.attr.listPreferredItemHeight, itemHeight, true);
+        int rowHeight = Math.max(1, (int) itemHeight.getDimension(metrics));
+        int futureDayCount = Math.min(metrics.heightPixels / rowHeight + 1, MAX_PREWARMED_VIEWS);
+
+        /* The pool only keeps 5 views of each type unless told otherwise */
+        pool.setMaxRecycledViews(VIEW_TYPE_FUTURE_DAY, futureDayCount);
+
+        /*
+         * AsyncLayoutInflater queues requests for its one background thread in a queue of 10,
+         * and blocks the caller when that is full. Rather than queue every row at once, which
+         * could block the main thread until the first few had been inflated, each row is queued
+         * when the one before it is done.
+         */
+        final AsyncLayoutInflater inflater = new AsyncLayoutInflater(mContext);
+        final int[] remainingFutureDays = {futureDayCount};
+        AsyncLayoutInflater.OnInflateFinishedListener onInflateFinished =
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+                    @Override
+                    public void onInflateFinished(@NonNull View view, int layoutId,
+                                                  ViewGroup parent) {
+                        int viewType = layoutId == R.layout.list_item_forecast_today
+                                ? VIEW_TYPE_TODAY
+                                : VIEW_TYPE_FUTURE_DAY;
+
+                        /*
+                         * createViewHolder, rather than our own constructor, records the
+                         * ViewHolder's view type, which the pool sorts ViewHolders by.
+                         */
+                        mPrewarmedView = view;
+                        ForecastAdapterViewHolder holder = createViewHolder(recyclerView, viewType);
+                        pool.putRecycledView(holder);
+
+                        if (remainingFutureDays[0] > 0) {
+                            remainingFutureDays[0]--;
+                            inflater.inflate(R.layout.forecast_list_item, recyclerView, this);
+                        }
+                    }
+                };
+
+        if (mUseTodayLayout) {
+            remainingFutureDays[0]--;
+            inflater.inflate(R.layout.list_item_forecast_today, recyclerView, onInflateFinished);
+        } else if (remainingFutureDays[0] > 0) {
+            remainingFutureDays[0]--;
+            inflater.inflate(R.layout.forecast_list_item, recyclerView, onInflateFinished);
+        }
+    }
+
     /**
      * OnBindViewHolder is called by the RecyclerView to display the data at the specified
      * position. In this method, we update the contents of the ViewHolder to display the weather
@@ -119,12 +229,28 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+        if (!mHasPages) {
+            bindSnapshot(forecastAdapterViewHolder, position);
+            return;
+        }
+
+        /*
+         * If this row's page was dropped to make room for others, it is being read again, and
+         * onPageLoaded binds the row once it arrives. Until then, show an empty row. A page read
+         * again just as the weather changed may also come back shorter; the Loader is about to
+         * swap in a new first page then.
+         */
+        ForecastBatch page = mPager.getPageFor(position);
+        int row = ForecastPager.getIndexInPage(position);
+        if (page == null || row >= page.count) {
+            bindPlaceholder(forecastAdapterViewHolder);
+            return;
+        }
 
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+        int weatherId = page.weatherIds[row];
         int weatherImageId;
 
         int viewType = getItemViewType(position);
@@ -152,8 +278,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /****************
          * Weather Date *
          ****************/
-        /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+        /* Read date from the page */
+        long dateInMillis = page.dates[row];
         /* Get human readable string using our utility method */
         String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
 
@@ -174,8 +300,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /**************************
          * High (max) temperature *
          **************************/
-        /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
+        /* Read high temperature from the page (in degrees celsius) */
+        double highInCelsius = page.maxTemps[row];
         /*
          * If the user's preference for weather is fahrenheit, formatTemperature will convert
          * the temperature. This method will also append either °C or °F to the temperature
@@ -192,8 +318,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         /*************************
          * Low (min) temperature *
          *************************/
-        /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
+        /* Read low temperature from the page (in degrees celsius) */
+        double lowInCelsius = page.minTemps[row];
         /*
          * If the user's preference for weather is fahrenheit, formatTemperature will convert
          * the temperature. This method will also append either °C or °F to the temperature
@@ -207,16 +333,71 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
     }
 
+    /**
+     * Empties a row whose page hasn't been read yet.
+     *
+     * @param forecastAdapterViewHolder The ViewHolder which should be updated
+     */
+    private void bindPlaceholder(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        forecastAdapterViewHolder.iconView.setImageDrawable(null);
+        forecastAdapterViewHolder.dateView.setText(null);
+        forecastAdapterViewHolder.descriptionView.setText(null);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(null);
+        forecastAdapterViewHolder.highTempView.setText(null);
+        forecastAdapterViewHolder.highTempView.setContentDescription(null);
+        forecastAdapterViewHolder.lowTempView.setText(null);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(null);
+    }
+
+    /**
+     * Binds a row from the forecast snapshot. All of the strings were already formatted by the
+     * sync when the snapshot was written, so the only work left is to choose the icon.
+     *
+     * @param forecastAdapterViewHolder The ViewHolder which should be updated
+     * @param position                  The position of the item within the snapshot
+     */
+    private void bindSnapshot(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        int weatherId = mSnapshot.weatherIds[position];
+        int weatherImageId;
+
+        if (getItemViewType(position) == VIEW_TYPE_TODAY) {
+            weatherImageId = SunshineWeatherUtils
+                    .getLargeArtResourceIdForWeatherCondition(weatherId);
+        } else {
+            weatherImageId = SunshineWeatherUtils
+                    .getSmallArtResourceIdForWeatherCondition(weatherId);
+        }
+
+        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
+        forecastAdapterViewHolder.dateView.setText(mSnapshot.dateStrings[position]);
+
+        String description = mSnapshot.descriptions[position];
+        forecastAdapterViewHolder.descriptionView.setText(description);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(
+                mContext.getString(R.string.a11y_forecast, description));
+
+        String highString = mSnapshot.highStrings[position];
+        forecastAdapterViewHolder.highTempView.setText(highString);
+        forecastAdapterViewHolder.highTempView.setContentDescription(
+                mContext.getString(R.string.a11y_high_temp, highString));
+
+        String lowString = mSnapshot.lowStrings[position];
+        forecastAdapterViewHolder.lowTempView.setText(lowString);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(
+                mContext.getString(R.string.a11y_low_temp, lowString));
+    }
+
     /**
      * This method simply returns the number of items to display. It is used behind the scenes
      * to help layout our Views and for animations.
      *
-     * @return The number of items available in our forecast
+     * @return The number of items available in our forecast, as far as it has been read
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (mHasPages) return mPager.getCount();
+        if (null != mSnapshot) return mSnapshot.count;
+        return 0;
     }
 
     /**
@@ -242,18 +423,77 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     /**
-     * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
-     * MainActivity after a load has finished, as well as when the Loader responsible for loading
-     * the weather data is reset. When this method is called, we assume we have a completely new
-     * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * Swaps in a new first page of weather data. This method is called by MainActivity after a
+     * load has finished, as well as when the Loader responsible for loading the weather data is
+     * reset. When this method is called, we assume we have a completely new set of data, so the
+     * pages read after the old first page are dropped, and we call notifyDataSetChanged to tell
+     * the RecyclerView to update.
+     *
+     * @param firstPage the first page of the forecast, read with
+     *                  WeatherContract.WeatherEntry.buildPageUri(Long.MIN_VALUE,
+     *                  ForecastPager.PAGE_SIZE), or null to clear the list. It is copied, so
+     *                  the caller keeps ownership of it.
+     * @param selection the selection firstPage was queried with
+     * @return the rows of the first page, or null if firstPage was null
+     */
+    ForecastBatch swapFirstPage(Cursor firstPage, String selection) {
+        ForecastBatch page = null;
+        if (firstPage != null) {
+            page = mPager.reset(firstPage, selection);
+            /* The pages replace the snapshot for good, so don't keep it around */
+            mSnapshot = null;
+        } else {
+            mPager.clear();
+        }
+        mHasPages = firstPage != null;
+        notifyDataSetChanged();
+        return page;
+    }
+
+    /**
+     * Called by our ForecastPager when a page it was asked for has been read.
+     *
+     * @param firstPosition The position of the page's first row
+     * @param rowCount      The rows in the page
+     * @param oldCount      The item count before the page was read
+     */
+    @Override
+    public void onPageLoaded(int firstPosition, int rowCount, int oldCount) {
+        int newCount = mPager.getCount();
+
+        /* Rows we had already counted were bound as placeholders, and rows past them are new */
+        int changedCount = Math.min(firstPosition + rowCount, oldCount) - firstPosition;
+        if (changedCount > 0) {
+            notifyItemRangeChanged(firstPosition, changedCount);
+        }
+        if (newCount > oldCount) {
+            notifyItemRangeInserted(oldCount, newCount - oldCount);
+        }
+    }
+
+    /**
+     * Displays the forecast snapshot until the first Cursor is swapped in. MainActivity calls
+     * this from onCreate, before the Loader has had a chance to query the database.
      *
-     * @param newCursor the new cursor to use as ForecastAdapter's data source
+     * @param snapshot the snapshot written by the last sync
      */
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    void swapSnapshot(ForecastSnapshot snapshot) {
+        mSnapshot = snapshot;
         notifyDataSetChanged();
     }
 
+    /**
+     * Binds every row again, for when the units, locale or time format have changed. The rows
+     * are formatted as they are bound, so the pages and snapshot we already hold are all that
+     * is needed; nothing is read from the database.
+     */
+    void reformat() {
+        if (!mHasPages && mSnapshot != null) {
+            mSnapshot.reformat(mContext);
+        }
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
     /**
      * A ViewHolder is a required part of the pattern for RecyclerViews. It mostly behaves as
      * a cache of the child views for a forecast item. It's also a convenient place to set an
@@ -289,8 +529,18 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+
+            long dateInMillis;
+            if (mHasPages) {
+                ForecastBatch page = mPager.getPageFor(adapterPosition);
+                int row = ForecastPager.getIndexInPage(adapterPosition);
+                /* A placeholder row has no date to open yet */
+                if (page == null || row >= page.count) return;
+                dateInMillis = page.dates[row];
+            } else {
+                dateInMillis = mSnapshot.dates[adapterPosition];
+            }
             mClickHandler.onClick(dateInMillis);
         }
     }
@@ -0,0 +1,231 @@
+package com.example.android.sunshine;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+import android.util.SparseBooleanArray;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCursorReader;
+import com.example.android.sunshine.data.WeatherContract;
+
+import java.util.Arrays;
+
+/**
+ * Reads the forecast for {@link ForecastAdapter} one page at a time, through
+ * {@link WeatherContract.WeatherEntry#buildPageUri(long, int)}, and keeps only the few pages
+ * nearest to where the list was last bound in memory.
+ * <p>
+ * Pages are keyed by date: page n starts after the last date of page n - 1. Those dates are
+ * remembered for every page read so far, even after the page itself has been dropped, so any
+ * page we have seen can be read again with a single query. The number of rows is only known up
+ * to the last page read, and grows as the list is scrolled towards it.
+ * <p>
+ * Rows are copied out of each Cursor into a {@link ForecastBatch} and the Cursor is closed right
+ * away, so no CursorWindow outlives the query that filled it.
+ * <p>
+ * Everything here except the queries themselves runs on the main thread.
+ */
+class ForecastPager {
+
+    /* The rows in a page. Two weeks of forecast fit in the first page with room to spare. */
+    static final int PAGE_SIZE = 32;
+
+    /* The most pages kept in memory at once */
+    static final int MAX_PAGES = 4;
+
+    /* How close to the last row we know of binding has to get before we read the next page */
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    /**
+     * Told when a page has been read in the background.
+     */
+    interface OnPageLoadedListener {
+        /**
+         * @param firstPosition The position of the page's first row
+         * @param rowCount      The rows in the page
+         * @param oldCount      What getCount returned before the page was read
+         */
+        void onPageLoaded(int firstPosition, int rowCount, int oldCount);
+    }
+
+    private final ContentResolver mResolver;
+    private final String[] mProjection;
+    private final OnPageLoadedListener mListener;
+
+    /* Only the MAX_PAGES pages most recently asked for stay here */
+    private final LruCache<Integer, ForecastBatch> mPages =
+            new LruCache<Integer, ForecastBatch>(MAX_PAGES);
+
+    /* The pages being read in the background right now */
+    private final SparseBooleanArray mLoading = new SparseBooleanArray();
+
+    /* mPageKeys[n] is the date page n starts after; the first mKeyCount of them are known */
+    private long[] mPageKeys = new long[8];
+    private int mKeyCount;
+
+    private String mSelection;
+    private int mCount;
+    private boolean mReachedEnd;
+
+    /* Bumped by clear, so that reads started before it are thrown away when they finish */
+    private int mGeneration;
+
+    /**
+     * @param resolver   Used to query the pages
+     * @param projection The columns to read. They must be ForecastBatchCursorReader.PROJECTION,
+     *                   which toBatch relies on.
+     * @param listener   Told when a page read in the background has arrived
+     */
+    ForecastPager(@NonNull ContentResolver resolver, @NonNull String[] projection,
+                  @NonNull OnPageLoadedListener listener) {
+        mResolver = resolver;
+        mProjection = projection;
+        mListener = listener;
+    }
+
+    /**
+     * Starts over from a first page that was read elsewhere, usually by a Loader that re-reads it
+     * whenever the weather changes. Every other page is dropped, as rows may have moved between
+     * them.
+     *
+     * @param firstPage The first page, queried with buildPageUri(Long.MIN_VALUE, PAGE_SIZE) and
+     *                  this pager's projection. It is copied, and not closed.
+     * @param selection The selection firstPage was queried with, applied to every later page too
+     * @return The rows of the first page. Don't modify the batch returned.
+     */
+    ForecastBatch reset(@NonNull Cursor firstPage, String selection) {
+        clear();
+        mSelection = selection;
+        mPageKeys[0] = Long.MIN_VALUE;
+        mKeyCount = 1;
+
+        ForecastBatch page = toBatch(firstPage);
+        addPage(0, page);
+        return page;
+    }
+
+    /**
+     * Forgets every page and every key, as if nothing had been read yet.
+     */
+    void clear() {
+        mGeneration++;
+        mPages.evictAll();
+        mLoading.clear();
+        mKeyCount = 0;
+        mCount = 0;
+        mReachedEnd = false;
+    }
+
+    /**
+     * @return The number of rows up to the end of the last page read so far
+     */
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the page holding a position, reading it in the background if it isn't in memory.
+     * Reading it also reads the next page ahead of time, when the position is near the last
+     * row we know of.
+     *
+     * @param position A position below getCount
+     * @return The page holding position, or null if it is still being read
+     */
+    ForecastBatch getPageFor(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        ForecastBatch page = mPages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+        }
+        if (!mReachedEnd && position >= mCount - PREFETCH_DISTANCE) {
+            requestPage(mKeyCount - 1);
+        }
+        return page;
+    }
+
+    /**
+     * @param position Any position
+     * @return The index of position's row within its page
+     */
+    static int getIndexInPage(int position) {
+        return position % PAGE_SIZE;
+    }
+
+    private void requestPage(final int pageIndex) {
+        /* Without the key of the page, we can't say where it starts yet */
+        if (pageIndex >= mKeyCount || mLoading.get(pageIndex)) return;
+        mLoading.put(pageIndex, true);
+
+        final int generation = mGeneration;
+        final long afterDate = mPageKeys[pageIndex];
+        final String selection = mSelection;
+
+        new AsyncTask<Void, Void, ForecastBatch>() {
+            @Override
+            protected ForecastBatch doInBackground(Void... voids) {
+                return readPage(afterDate, selection);
+            }
+
+            @Override
+            protected void onPostExecute(ForecastBatch page) {
+                if (generation != mGeneration) return;
+                mLoading.delete(pageIndex);
+                if (page == null) return;
+
+                int oldCount = mCount;
+                addPage(pageIndex, page);
+                mListener.onPageLoaded(pageIndex * PAGE_SIZE, page.count, oldCount);
+            }
+        }.execute();
+    }
+
+    /**
+     * Reads one page. Safe to call from any thread.
+     *
+     * @param afterDate The date the page starts after, or Long.MIN_VALUE for the first page
+     * @param selection Applied on top of the page's own selection
+     * @return The page, or null if the query failed
+     */
+    ForecastBatch readPage(long afterDate, String selection) {
+        Cursor cursor = mResolver.query(
+                WeatherContract.WeatherEntry.buildPageUri(afterDate, PAGE_SIZE),
+                mProjection,
+                selection,
+                null,
+                null);
+        if (cursor == null) return null;
+        try {
+            return toBatch(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Stores a page that has just been read, learns the key of the page after it, and works out
+     * whether it was the last one.
+     */
+    private void addPage(int pageIndex, ForecastBatch page) {
+        mPages.put(pageIndex, page);
+        mCount = Math.max(mCount, pageIndex * PAGE_SIZE + page.count);
+
+        if (page.count < PAGE_SIZE) {
+            mReachedEnd = true;
+        } else if (pageIndex + 1 == mKeyCount) {
+            if (mKeyCount == mPageKeys.length) {
+                mPageKeys = Arrays.copyOf(mPageKeys, mKeyCount * 2);
+            }
+            mPageKeys[mKeyCount++] = page.getLastDate();
+        }
+    }
+
+    private static ForecastBatch toBatch(Cursor cursor) {
+        ForecastBatch page = new ForecastBatch(Math.min(cursor.getCount(), PAGE_SIZE));
+        cursor.moveToPosition(-1);
+        ForecastBatchCursorReader.read(cursor, page);
+        return page;
+    }
+}
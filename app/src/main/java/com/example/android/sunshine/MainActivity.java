@@ -3,6 +3,7 @@ package com.example.android.sunshine;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
@@ -15,39 +16,36 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCursorReader;
+import com.example.android.sunshine.data.ForecastDetailCache;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
 import com.example.android.sunshine.utilities.FakeDataUtils;
+import com.example.android.sunshine.utilities.PresentationChanges;
 
 public class MainActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>,
-        ForecastAdapter.ForecastAdapterOnClickHandler {
+        ForecastAdapter.ForecastAdapterOnClickHandler,
+        PresentationChanges.Listener {
 
     private final String TAG = MainActivity.class.getSimpleName();
 
     /*
      * The columns of data that we are interested in displaying within our MainActivity's list of
-     * weather data.
-     */
-    public static final String[] MAIN_FORECAST_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able to
-     * access the data from our query. If the order of the Strings above changes, these indices
-     * must be adjusted to match the order of the Strings.
+     * weather data. The list itself only shows the date, temperatures and condition; the rest are
+     * loaded along with them for the ForecastDetailCache, so that DetailActivity doesn't have to
+     * query them again.
+     *
+     * Rows are read into ForecastBatch pages by the generated ForecastBatchCursorReader, which
+     * also owns the order of these columns, so there are no indices here to keep in step.
      */
-    public static final int INDEX_WEATHER_DATE = 0;
-    public static final int INDEX_WEATHER_MAX_TEMP = 1;
-    public static final int INDEX_WEATHER_MIN_TEMP = 2;
-    public static final int INDEX_WEATHER_CONDITION_ID = 3;
+    public static final String[] MAIN_FORECAST_PROJECTION = ForecastBatchCursorReader.PROJECTION;
 
 
     /*
@@ -65,6 +63,9 @@ public class MainActivity extends AppCompatActivity implements
 
     private ProgressBar mLoadingIndicator;
 
+    /* Set once we have reported that the list has been populated for the first time */
+    private boolean mReportedFullyDrawn;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -128,7 +129,32 @@ public class MainActivity extends AppCompatActivity implements
         /* Setting the adapter attaches it to the RecyclerView in our layout. */
         mRecyclerView.setAdapter(mForecastAdapter);
 
-        showLoading();
+        /*
+         * When the units, locale or time format change, the list is formatted again from the
+         * rows the adapter already holds, rather than queried again.
+         */
+        PresentationChanges.register(this, this);
+
+        /*
+         * If the last sync left us a snapshot of the forecast, display it right away. The
+         * snapshot is memory-mapped from a small file and already contains formatted strings, so
+         * this doesn't touch the database at all. The Loader below replaces it with the real
+         * data once the query finishes.
+         */
+        ForecastSnapshot snapshot = ForecastSnapshot.read(this);
+        if (snapshot != null) {
+            mForecastAdapter.swapSnapshot(snapshot);
+            showWeatherDataView();
+        } else {
+            showLoading();
+
+            /*
+             * Without a snapshot, the list stays empty until the Loader's query finishes. Use
+             * that time to inflate the first screen of list items in the background, so that
+             * the first populated frame doesn't have to.
+             */
+            mForecastAdapter.prewarmViewHolders(mRecyclerView);
+        }
 
         /*
          * Ensures a loader is initialized and active. If the loader doesn't already exist, one is
@@ -137,7 +163,42 @@ public class MainActivity extends AppCompatActivity implements
          */
         getSupportLoaderManager().initLoader(ID_FORECAST_LOADER, null, this);
 
-        SunshineSyncUtils.initialize(this);
+        /*
+         * Nothing SunshineSyncUtils.initialize does is needed to draw the first frame, so wait
+         * until that frame is on its way. Posting from onPreDraw runs it after the frame has been
+         * drawn, and initialize itself does all of its work on a background thread.
+         */
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        decorView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                SunshineSyncUtils.initialize(getApplicationContext());
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PresentationChanges.unregister(this, this);
+    }
+
+    /**
+     * Called when the units, locale or time format have changed.
+     *
+     * @param changes The PresentationChanges.CHANGE_* flags of what changed
+     */
+    @Override
+    public void onPresentationChanged(int changes) {
+        mForecastAdapter.reformat();
     }
 
     /**
@@ -182,10 +243,13 @@ public class MainActivity extends AppCompatActivity implements
         switch (loaderId) {
 
             case ID_FORECAST_LOADER:
-                /* URI for all rows of weather data in our weather table */
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-                /* Sort order: Ascending by date */
-                String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+                /*
+                 * URI for the first page of weather data in our weather table. Pages are always
+                 * in ascending date order. The adapter reads the pages after this one itself, as
+                 * the list is scrolled, so a long forecast never fills one huge Cursor.
+                 */
+                Uri forecastQueryUri = WeatherContract.WeatherEntry
+                        .buildPageUri(Long.MIN_VALUE, ForecastPager.PAGE_SIZE);
                 /*
                  * A SELECTION in SQL declares which rows you'd like to return. In our case, we
                  * want all weather data from today onwards that is stored in our weather table.
@@ -198,7 +262,7 @@ public class MainActivity extends AppCompatActivity implements
                         MAIN_FORECAST_PROJECTION,
                         selection,
                         null,
-                        sortOrder);
+                        null);
 
             default:
                 throw new RuntimeException("Loader Not Implemented: " + loaderId);
@@ -220,7 +284,15 @@ public class MainActivity extends AppCompatActivity implements
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
 
 
-        mForecastAdapter.swapCursor(data);
+        String selection = ((CursorLoader) loader).getSelection();
+        ForecastBatch firstPage = mForecastAdapter.swapFirstPage(data, selection);
+
+        /*
+         * Keep every column of the first page's days in the ForecastDetailCache, so that
+         * DetailActivity can show any of them without a query of its own. Days further down the
+         * list are rarely opened, and DetailActivity queries those itself.
+         */
+        ForecastDetailCache.put(this, firstPage);
         if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
         mRecyclerView.smoothScrollToPosition(mPosition);
         if (data.getCount() != 0) showWeatherDataView();
@@ -238,7 +310,7 @@ public class MainActivity extends AppCompatActivity implements
          * Since this Loader's data is now invalid, we need to clear the Adapter that is
          * displaying the data.
          */
-        mForecastAdapter.swapCursor(null);
+        mForecastAdapter.swapFirstPage(null, null);
     }
 
     /**
@@ -269,6 +341,15 @@ public class MainActivity extends AppCompatActivity implements
         mLoadingIndicator.setVisibility(View.INVISIBLE);
         /* Finally, make sure the weather data is visible */
         mRecyclerView.setVisibility(View.VISIBLE);
+
+        /*
+         * Tell the system that the first populated frame is about to be drawn. This shows up as
+         * "Fully drawn" in logcat and is what our startup benchmark measures.
+         */
+        if (!mReportedFullyDrawn && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mReportedFullyDrawn = true;
+            reportFullyDrawn();
+        }
     }
 
     /**
@@ -302,6 +383,8 @@ public class MainActivity extends AppCompatActivity implements
         MenuInflater inflater = getMenuInflater();
         /* Use the inflater's inflate method to inflate our menu layout to this menu */
         inflater.inflate(R.menu.forecast, menu);
+        /* The sync metrics screen is a debugging aid, so we only offer it in debug builds */
+        menu.findItem(R.id.action_sync_metrics).setVisible(BuildConfig.DEBUG);
         /* Return true so that the menu is displayed in the Toolbar */
         return true;
     }
@@ -326,6 +409,10 @@ public class MainActivity extends AppCompatActivity implements
             openPreferredLocationInMap();
             return true;
         }
+        if (id == R.id.action_sync_metrics) {
+            startActivity(new Intent(this, SyncMetricsActivity.class));
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -10,8 +10,8 @@ import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
 
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.utilities.PresentationChanges;
 
 /**
  * The SettingsFragment serves as the display for all of the user's settings. In Sunshine, the
@@ -87,8 +87,12 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             /* Sync weather when location changes */
             SunshineSyncUtils.startImmediateSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
-            // units have changed. update lists of weather entries accordingly
-            activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            /*
+             * Units have changed. The weather table always stores Celsius, so nothing in it
+             * changed; the screens showing weather only need to format the rows they already
+             * hold again, without querying the database for them.
+             */
+            PresentationChanges.notifyChanged(PresentationChanges.CHANGE_UNITS);
         }
         Preference preference = findPreference(key);
         if (null != preference) {
@@ -0,0 +1,77 @@
+package com.example.android.sunshine;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.example.android.sunshine.sync.SyncMetrics;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * A debug-only screen that shows what {@link SyncMetrics} has recorded in this process: how long
+ * each stage of the sync took, how much was downloaded and written, and what made syncs fail.
+ * MainActivity only offers it in debug builds.
+ * <p>
+ * The same output is available without opening the screen, while it is running, through
+ * "adb shell dumpsys activity com.example.android.sunshine/.SyncMetricsActivity".
+ */
+public class SyncMetricsActivity extends AppCompatActivity {
+
+    private TextView mMetricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_metrics);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        mMetricsTextView = (TextView) findViewById(R.id.tv_sync_metrics);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.sync_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+
+        if (id == R.id.action_refresh) {
+            showMetrics();
+            return true;
+        }
+        if (id == R.id.action_reset_sync_metrics) {
+            SyncMetrics.reset();
+            showMetrics();
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        SyncMetrics.dump(writer);
+    }
+
+    /* Replaces the text on screen with everything recorded so far */
+    private void showMetrics() {
+        StringWriter metrics = new StringWriter();
+        SyncMetrics.dump(new PrintWriter(metrics));
+        mMetricsTextView.setText(metrics.toString());
+    }
+}
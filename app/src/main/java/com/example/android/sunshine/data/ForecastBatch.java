@@ -0,0 +1,166 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.cursor.Column;
+import com.example.android.sunshine.cursor.CursorBatch;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * A batch of days of weather, stored column by column in primitive arrays: one array per column
+ * of the weather table, with row i of the batch at index i of every array.
+ * <p>
+ * This is what the JSON parser fills and what the sync hands to {@link WeatherProvider}, through
+ * {@link ForecastBatchCodec} and {@link WeatherContract#METHOD_PUT_FORECAST_BATCH}. Compared to
+ * a ContentValues per day, it costs a fixed nine allocations per batch rather than a HashMap and
+ * eight boxed values per day, and nothing has to be unboxed again to bind the insert statement.
+ * <p>
+ * Reading weather rows out of a Cursor goes through the generated ForecastBatchCursorReader:
+ * its PROJECTION lists the columns below in declaration order, so queries that want to read a
+ * batch use that projection rather than keeping their own list of columns and indices.
+ */
+@CursorBatch
+public final class ForecastBatch {
+
+    /* The number of days the arrays have room for */
+    public final int capacity;
+
+    /* The number of days added so far; only the first count values of each array are valid */
+    public int count;
+
+    @Column(WeatherEntry.COLUMN_DATE)
+    public final long[] dates;
+    @Column(WeatherEntry.COLUMN_WEATHER_ID)
+    public final int[] weatherIds;
+    @Column(WeatherEntry.COLUMN_MIN_TEMP)
+    public final double[] minTemps;
+    @Column(WeatherEntry.COLUMN_MAX_TEMP)
+    public final double[] maxTemps;
+    @Column(WeatherEntry.COLUMN_HUMIDITY)
+    public final double[] humidity;
+    @Column(WeatherEntry.COLUMN_PRESSURE)
+    public final double[] pressure;
+    @Column(WeatherEntry.COLUMN_WIND_SPEED)
+    public final double[] windSpeed;
+    @Column(WeatherEntry.COLUMN_DEGREES)
+    public final double[] degrees;
+
+    /**
+     * @param capacity The largest number of days this batch will hold
+     */
+    public ForecastBatch(int capacity) {
+        this.capacity = capacity;
+        dates = new long[capacity];
+        weatherIds = new int[capacity];
+        minTemps = new double[capacity];
+        maxTemps = new double[capacity];
+        humidity = new double[capacity];
+        pressure = new double[capacity];
+        windSpeed = new double[capacity];
+        degrees = new double[capacity];
+    }
+
+    /**
+     * Appends a day to the batch.
+     *
+     * @throws IllegalStateException If the batch is already full
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp,
+                    double humidity, double pressure, double windSpeed, double degrees) {
+        if (count == capacity) {
+            throw new IllegalStateException("Forecast batch is full: " + capacity + " days");
+        }
+
+        dates[count] = date;
+        weatherIds[count] = weatherId;
+        minTemps[count] = minTemp;
+        maxTemps[count] = maxTemp;
+        this.humidity[count] = humidity;
+        this.pressure[count] = pressure;
+        this.windSpeed[count] = windSpeed;
+        this.degrees[count] = degrees;
+        count++;
+    }
+
+    /* Empties the batch so that its arrays can be filled again */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * @return The earliest date in the batch, or Long.MAX_VALUE if it is empty
+     */
+    public long getFirstDate() {
+        long firstDate = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            firstDate = Math.min(firstDate, dates[i]);
+        }
+        return firstDate;
+    }
+
+    /**
+     * @return The latest date in the batch, or Long.MIN_VALUE if it is empty
+     */
+    public long getLastDate() {
+        long lastDate = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            lastDate = Math.max(lastDate, dates[i]);
+        }
+        return lastDate;
+    }
+
+    /**
+     * @param date A normalized UTC date
+     * @return The index of the first day in the batch with that date, or -1 if there is none
+     */
+    public int indexOf(long date) {
+        for (int i = 0; i < count; i++) {
+            if (dates[i] == date) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Copies weather rows held as ContentValues, such as those passed to bulkInsert, into a new
+     * batch. Every value must contain all of the columns a batch holds.
+     *
+     * @param weatherValues The rows to copy
+     * @return A batch holding the same rows, in the same order
+     */
+    public static ForecastBatch fromContentValues(ContentValues[] weatherValues) {
+        ForecastBatch batch = new ForecastBatch(weatherValues.length);
+        for (ContentValues value : weatherValues) {
+            batch.add(value.getAsLong(WeatherEntry.COLUMN_DATE),
+                    value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    value.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    value.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    value.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        }
+        return batch;
+    }
+
+    /**
+     * Copies the batch into one ContentValues per day, for callers that need them.
+     *
+     * @return The rows of the batch, in order
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] weatherValues = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues value = new ContentValues();
+            value.put(WeatherEntry.COLUMN_DATE, dates[i]);
+            value.put(WeatherEntry.COLUMN_WEATHER_ID, weatherIds[i]);
+            value.put(WeatherEntry.COLUMN_MIN_TEMP, minTemps[i]);
+            value.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemps[i]);
+            value.put(WeatherEntry.COLUMN_HUMIDITY, humidity[i]);
+            value.put(WeatherEntry.COLUMN_PRESSURE, pressure[i]);
+            value.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeed[i]);
+            value.put(WeatherEntry.COLUMN_DEGREES, degrees[i]);
+            weatherValues[i] = value;
+        }
+        return weatherValues;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Packs rows of the weather table into a compact binary batch, and reads them back out. Batches
+ * are what {@link WeatherProvider#call} exchanges for
+ * {@link WeatherContract#METHOD_GET_FORECAST_BATCH} and
+ * {@link WeatherContract#METHOD_PUT_FORECAST_BATCH}. Moving a single byte array through Binder is
+ * far cheaper than filling a CursorWindow or parcelling a ContentValues per row.
+ * <p>
+ * Batches are encoded from a {@link ForecastBatch} or straight from a Cursor, and read back
+ * without copying through the getters of the object {@link #decode(byte[])} returns.
+ * <p>
+ * A batch is laid out column by column, in little endian byte order:
+ * <pre>
+ *     int      magic
+ *     int      version
+ *     int      count
+ *     long[]   date
+ *     int[]    weather_id
+ *     double[] min, max, humidity, pressure, wind, degrees
+ * </pre>
+ * Each array holds exactly count values, so every row is {@link #BYTES_PER_ROW} bytes.
+ */
+public final class ForecastBatchCodec {
+
+    /* "SWB1" in ASCII */
+    private static final int BATCH_MAGIC = 0x53574231;
+
+    /* Increment this if the layout of a batch ever changes */
+    private static final int BATCH_VERSION = 1;
+
+    private static final int HEADER_BYTES = 3 * 4;
+
+    /* One long, one int and six doubles */
+    public static final int BYTES_PER_ROW = 8 + 4 + 6 * 8;
+
+    /*
+     * A Binder transaction is limited to 1MB, shared by everything in flight in the process. We
+     * keep each batch well under half of that. Callers moving more rows page through them.
+     */
+    public static final int MAX_ROWS_PER_BATCH = 8192;
+
+    /*
+     * The columns a batch is encoded from, in the order ForecastBatchCursorReader reads them.
+     * Queries that feed encode(Cursor, int) must use this projection.
+     */
+    public static final String[] BATCH_PROJECTION = ForecastBatchCursorReader.PROJECTION;
+
+    /* Index of each double column within the block of double columns */
+    private static final int DOUBLE_MIN_TEMP = 0;
+    private static final int DOUBLE_MAX_TEMP = 1;
+    private static final int DOUBLE_HUMIDITY = 2;
+    private static final int DOUBLE_PRESSURE = 3;
+    private static final int DOUBLE_WIND_SPEED = 4;
+    private static final int DOUBLE_DEGREES = 5;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private ForecastBatchCodec(ByteBuffer buffer, int count) {
+        mBuffer = buffer;
+        mCount = count;
+    }
+
+    /**
+     * Encodes up to maxRows rows of a Cursor, starting at the row after the Cursor's current
+     * position. The Cursor must have been queried with {@link #BATCH_PROJECTION}.
+     *
+     * @param cursor  The rows to encode
+     * @param maxRows The maximum number of rows to encode
+     * @return The encoded batch
+     */
+    public static byte[] encode(Cursor cursor, int maxRows) {
+        int count = Math.min(maxRows, cursor.getCount() - cursor.getPosition() - 1);
+        if (count < 0) count = 0;
+
+        ForecastBatch batch = new ForecastBatch(count);
+        ForecastBatchCursorReader.read(cursor, batch);
+
+        return encode(batch);
+    }
+
+    /**
+     * Encodes every day of a batch.
+     *
+     * @param batch The days to encode; there must be at most {@link #MAX_ROWS_PER_BATCH}
+     * @return The encoded batch
+     */
+    public static byte[] encode(ForecastBatch batch) {
+        return encode(batch, 0, batch.count);
+    }
+
+    /**
+     * Encodes count days of a batch, starting at from. Larger batches are sent in slices of up
+     * to {@link #MAX_ROWS_PER_BATCH} days.
+     *
+     * @param batch The days to encode
+     * @param from  The first day to encode
+     * @param count The number of days to encode
+     * @return The encoded batch
+     */
+    public static byte[] encode(ForecastBatch batch, int from, int count) {
+        if (from < 0 || count < 0 || from + count > batch.count) {
+            throw new IndexOutOfBoundsException(
+                    "Can't encode " + count + " days from " + from + " of " + batch.count);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * BYTES_PER_ROW)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(BATCH_MAGIC);
+        buffer.putInt(BATCH_VERSION);
+        buffer.putInt(count);
+
+        int end = from + count;
+        for (int i = from; i < end; i++) buffer.putLong(batch.dates[i]);
+        for (int i = from; i < end; i++) buffer.putInt(batch.weatherIds[i]);
+        for (int i = from; i < end; i++) buffer.putDouble(batch.minTemps[i]);
+        for (int i = from; i < end; i++) buffer.putDouble(batch.maxTemps[i]);
+        for (int i = from; i < end; i++) buffer.putDouble(batch.humidity[i]);
+        for (int i = from; i < end; i++) buffer.putDouble(batch.pressure[i]);
+        for (int i = from; i < end; i++) buffer.putDouble(batch.windSpeed[i]);
+        for (int i = from; i < end; i++) buffer.putDouble(batch.degrees[i]);
+
+        return buffer.array();
+    }
+
+    /**
+     * Writes every row of a batch through {@link WeatherContract#METHOD_PUT_FORECAST_BATCH},
+     * in slices of at most {@link #MAX_ROWS_PER_BATCH} rows. Each slice is its own transaction.
+     *
+     * @param resolver Used to reach WeatherProvider
+     * @param batch    The rows to write
+     * @return The number of rows written
+     */
+    public static int put(ContentResolver resolver, ForecastBatch batch) {
+        int rowsWritten = 0;
+        for (int from = 0; from < batch.count; from += MAX_ROWS_PER_BATCH) {
+            int sliceCount = Math.min(MAX_ROWS_PER_BATCH, batch.count - from);
+
+            Bundle extras = new Bundle();
+            extras.putByteArray(WeatherContract.EXTRA_BATCH, encode(batch, from, sliceCount));
+            Bundle result = resolver.call(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_PUT_FORECAST_BATCH,
+                    null,
+                    extras);
+            rowsWritten += result.getInt(WeatherContract.EXTRA_ROW_COUNT);
+        }
+        return rowsWritten;
+    }
+
+    /**
+     * Wraps an encoded batch for reading. No values are copied; each getter reads straight out of
+     * the byte array.
+     *
+     * @param batch The encoded batch
+     * @return A reader for the batch
+     * @throws IllegalArgumentException If the bytes are not a batch this version understands, or
+     *                                  hold more than {@link #MAX_ROWS_PER_BATCH} rows
+     */
+    public static ForecastBatchCodec decode(byte[] batch) {
+        if (batch == null || batch.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Forecast batch is missing or truncated");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(batch).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != BATCH_MAGIC || buffer.getInt(4) != BATCH_VERSION) {
+            throw new IllegalArgumentException("Unknown forecast batch format");
+        }
+
+        /*
+         * Check the count against the limit first. A count near Integer.MAX_VALUE would
+         * overflow the length below, and could make a short batch look like the right length.
+         */
+        int count = buffer.getInt(8);
+        if (count < 0 || count > MAX_ROWS_PER_BATCH) {
+            throw new IllegalArgumentException("Forecast batch has too many rows: " + count);
+        }
+        if (batch.length != HEADER_BYTES + count * BYTES_PER_ROW) {
+            throw new IllegalArgumentException("Forecast batch has the wrong length");
+        }
+
+        return new ForecastBatchCodec(buffer, count);
+    }
+
+    /* The number of rows in this batch */
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getDate(int row) {
+        return mBuffer.getLong(HEADER_BYTES + row * 8);
+    }
+
+    public int getWeatherId(int row) {
+        return mBuffer.getInt(HEADER_BYTES + mCount * 8 + row * 4);
+    }
+
+    public double getMinTemp(int row) {
+        return getDouble(DOUBLE_MIN_TEMP, row);
+    }
+
+    public double getMaxTemp(int row) {
+        return getDouble(DOUBLE_MAX_TEMP, row);
+    }
+
+    public double getHumidity(int row) {
+        return getDouble(DOUBLE_HUMIDITY, row);
+    }
+
+    public double getPressure(int row) {
+        return getDouble(DOUBLE_PRESSURE, row);
+    }
+
+    public double getWindSpeed(int row) {
+        return getDouble(DOUBLE_WIND_SPEED, row);
+    }
+
+    public double getDegrees(int row) {
+        return getDouble(DOUBLE_DEGREES, row);
+    }
+
+    private double getDouble(int column, int row) {
+        int doublesStart = HEADER_BYTES + mCount * (8 + 4);
+        return mBuffer.getDouble(doublesStart + (column * mCount + row) * 8);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+
+/**
+ * Keeps every column of the days MainActivity's list last loaded in memory, so that DetailActivity
+ * can show a day the moment it opens instead of querying the database for it again.
+ * <p>
+ * MainActivity fills the cache each time its Loader delivers, which happens after every change
+ * to the weather table while it is running. Changes made while it isn't, by a sync for example,
+ * empty the cache through a ContentObserver, so DetailActivity never shows weather that is older
+ * than the database's. On a miss, DetailActivity simply queries the database as before.
+ */
+public final class ForecastDetailCache {
+
+    private static volatile ForecastBatch sDays;
+
+    private static ContentObserver sObserver;
+
+    private ForecastDetailCache() {
+    }
+
+    /**
+     * Replaces the cached days.
+     *
+     * @param context Used to watch the weather table for changes
+     * @param days    Every column of the days to cache. The batch must not be modified afterwards.
+     */
+    public static synchronized void put(Context context, ForecastBatch days) {
+        if (sObserver == null) {
+            /* With no Handler, onChange runs on a binder thread; clearing is safe from anywhere */
+            sObserver = new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    clear();
+                }
+            };
+            context.getApplicationContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, false, sObserver);
+        }
+        sDays = days;
+    }
+
+    /**
+     * @return The cached days, or null if there are none. Don't modify the batch returned.
+     */
+    public static ForecastBatch get() {
+        return sDays;
+    }
+
+    /* Empties the cache, so that the next lookup goes to the database */
+    public static void clear() {
+        sDays = null;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * A compact, versioned binary copy of the forecast list exactly as MainActivity displays it.
+ * <p>
+ * The sync writes this file right after it inserts fresh weather into the database. On a cold
+ * start, MainActivity memory-maps it and renders the list from it before the database has even
+ * been opened. The CursorLoader's results replace the snapshot as soon as they arrive.
+ * <p>
+ * Along with the raw values (dates, temperatures and condition IDs), the snapshot stores the
+ * strings that were formatted for display. Those strings depend on the day they were formatted
+ * ("Today", "Tomorrow"), on the user's units and on the locale, so all three are recorded in
+ * the header. A snapshot that doesn't match the current values is treated as missing.
+ * <p>
+ * File layout (big endian, as written by {@link DataOutputStream}):
+ * <pre>
+ *     int    magic
+ *     int    version
+ *     long   normalized UTC date the strings were formatted for
+ *     byte   1 if the temperatures were formatted as metric, 0 otherwise
+ *     string locale
+ *     int    count
+ *     count x { long date, double max, double min, int weatherId,
+ *               string date, string description, string high, string low }
+ * </pre>
+ * Every string is stored as an unsigned short byte length followed by UTF-8 bytes.
+ */
+public final class ForecastSnapshot {
+
+    private static final String TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String SNAPSHOT_FILE_NAME = "forecast_snapshot.bin";
+
+    /* "SNAP" in ASCII. Lets us quickly reject files that aren't snapshots at all. */
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;
+
+    /*
+     * If you change the layout of the file, you must increment this version. Snapshots written
+     * with any other version are ignored and will be replaced on the next sync.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* The number of days contained within this snapshot */
+    public final int count;
+
+    /* Raw values for each day, in the same order they are displayed */
+    public final long[] dates;
+    public final double[] maxTemps;
+    public final double[] minTemps;
+    public final int[] weatherIds;
+
+    /* Display strings for each day, formatted when the snapshot was written or last reformatted */
+    public final String[] dateStrings;
+    public final String[] descriptions;
+    public final String[] highStrings;
+    public final String[] lowStrings;
+
+    private ForecastSnapshot(int count) {
+        this.count = count;
+        dates = new long[count];
+        maxTemps = new double[count];
+        minTemps = new double[count];
+        weatherIds = new int[count];
+        dateStrings = new String[count];
+        descriptions = new String[count];
+        highStrings = new String[count];
+        lowStrings = new String[count];
+    }
+
+    /**
+     * Formats the weather values the same way ForecastAdapter does and writes them to the
+     * snapshot file. Only days from today onwards are written, sorted by date. The file is
+     * written to a temporary file first and then renamed, so readers never see a partially
+     * written snapshot.
+     * <p>
+     * This method performs disk I/O and must not be called on the main thread.
+     *
+     * @param context Used to format the values and to locate the snapshot file
+     * @param batch   The days that were just written to the database
+     */
+    public static void write(Context context, ForecastBatch batch) {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        /*
+         * Collect the days from today onwards and sort them by date, so that the snapshot is in
+         * display order. A forecast is a couple of weeks long, so an insertion sort will do.
+         */
+        int[] order = new int[batch.count];
+        int count = 0;
+        for (int i = 0; i < batch.count; i++) {
+            if (batch.dates[i] < today) continue;
+
+            int position = count++;
+            while (position > 0 && batch.dates[order[position - 1]] > batch.dates[i]) {
+                order[position] = order[position - 1];
+                position--;
+            }
+            order[position] = i;
+        }
+
+        File snapshotFile = getSnapshotFile(context);
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(today);
+            out.writeByte(SunshinePreferences.isMetric(context) ? 1 : 0);
+            writeString(out, Locale.getDefault().toString());
+            out.writeInt(count);
+
+            for (int i = 0; i < count; i++) {
+                int day = order[i];
+                long date = batch.dates[day];
+                double high = batch.maxTemps[day];
+                double low = batch.minTemps[day];
+                int weatherId = batch.weatherIds[day];
+
+                out.writeLong(date);
+                out.writeDouble(high);
+                out.writeDouble(low);
+                out.writeInt(weatherId);
+
+                writeString(out, SunshineDateUtils.getFriendlyDateString(context, date, false));
+                writeString(out,
+                        SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId));
+                writeString(out, SunshineWeatherUtils.formatTemperature(context, high));
+                writeString(out, SunshineWeatherUtils.formatTemperature(context, low));
+            }
+
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(snapshotFile)) {
+                Log.w(TAG, "Unable to move snapshot into place");
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write forecast snapshot", e);
+            tempFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Like {@link #write(Context, ForecastBatch)}, for weather values held as ContentValues.
+     *
+     * @param context       Used to format the values and to locate the snapshot file
+     * @param weatherValues The values that were just inserted into the database
+     */
+    public static void write(Context context, ContentValues[] weatherValues) {
+        write(context, ForecastBatch.fromContentValues(weatherValues));
+    }
+
+    /**
+     * Memory-maps the snapshot file and reads it. Reading is cheap enough to do on the main
+     * thread during onCreate; the file is a few kilobytes at most.
+     *
+     * @param context Used to locate the snapshot file and to check that it is still valid
+     * @return The snapshot, or null if there is no snapshot, it is corrupt, or it was formatted
+     * for a different day, different units or a different locale
+     */
+    public static ForecastSnapshot read(Context context) {
+        File snapshotFile = getSnapshotFile(context);
+        if (!snapshotFile.exists()) return null;
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(snapshotFile);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != SNAPSHOT_MAGIC) return null;
+            if (buffer.getInt() != SNAPSHOT_VERSION) return null;
+
+            long formattedForDay = buffer.getLong();
+            boolean formattedAsMetric = buffer.get() == 1;
+            String formattedForLocale = readString(buffer);
+
+            if (formattedForDay != SunshineDateUtils.getNormalizedUtcDateForToday()
+                    || formattedAsMetric != SunshinePreferences.isMetric(context)
+                    || !formattedForLocale.equals(Locale.getDefault().toString())) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            if (count <= 0) return null;
+
+            ForecastSnapshot snapshot = new ForecastSnapshot(count);
+            for (int i = 0; i < count; i++) {
+                snapshot.dates[i] = buffer.getLong();
+                snapshot.maxTemps[i] = buffer.getDouble();
+                snapshot.minTemps[i] = buffer.getDouble();
+                snapshot.weatherIds[i] = buffer.getInt();
+                snapshot.dateStrings[i] = readString(buffer);
+                snapshot.descriptions[i] = readString(buffer);
+                snapshot.highStrings[i] = readString(buffer);
+                snapshot.lowStrings[i] = readString(buffer);
+            }
+            return snapshot;
+
+        } catch (IOException | RuntimeException e) {
+            /*
+             * A truncated or corrupt file shows up here as a BufferUnderflowException. Either
+             * way, the database is still the source of truth, so we just don't use the snapshot.
+             */
+            Log.w(TAG, "Unable to read forecast snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Formats every day's display strings again from its raw values, the same way write does.
+     * MainActivity calls this when the units, locale or time format change while the snapshot is
+     * on screen. The file isn't touched; read already refuses a file formatted differently.
+     *
+     * @param context Used to format the values
+     */
+    public void reformat(Context context) {
+        for (int i = 0; i < count; i++) {
+            dateStrings[i] = SunshineDateUtils.getFriendlyDateString(context, dates[i], false);
+            descriptions[i] =
+                    SunshineWeatherUtils.getStringForWeatherCondition(context, weatherIds[i]);
+            highStrings[i] = SunshineWeatherUtils.formatTemperature(context, maxTemps[i]);
+            lowStrings[i] = SunshineWeatherUtils.formatTemperature(context, minTemps[i]);
+        }
+    }
+
+    /**
+     * Deletes the snapshot file. Used when the data in the snapshot is known to be out of date.
+     *
+     * @param context Used to locate the snapshot file
+     */
+    public static void delete(Context context) {
+        getSnapshotFile(context).delete();
+    }
+
+    private static File getSnapshotFile(Context context) {
+        return new File(context.getFilesDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            /* Nothing useful we can do here */
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android.sunshine.data;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects preference changes so that they can be written together, later, and only if they
+ * change anything.
+ * <p>
+ * Every SharedPreferences commit rewrites the whole XML file, even when the values written are the
+ * ones already there. The sync used to save the location's coordinates that way on every run,
+ * from the middle of parsing, although they only change when the user picks another location.
+ * Changes staged here are compared against what the preferences already hold. If any remain,
+ * {@link #apply()} writes them all with a single asynchronous commit.
+ * <p>
+ * A PreferenceWriter is meant to be used by one thread, for one batch of changes.
+ */
+public final class PreferenceWriter {
+
+    private final SharedPreferences mPreferences;
+
+    /* Staged changes by key. A null value removes the key. */
+    private final Map<String, Long> mPendingLongs = new HashMap<>();
+
+    public PreferenceWriter(SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    /**
+     * Stages a long value, unless the preferences already hold it.
+     *
+     * @param key   The name of the preference
+     * @param value The value to store
+     */
+    public void putLong(String key, long value) {
+        if (mPreferences.contains(key) && mPreferences.getLong(key, 0) == value) {
+            /* Forget anything staged earlier, as the stored value is already the latest one */
+            mPendingLongs.remove(key);
+            return;
+        }
+        mPendingLongs.put(key, value);
+    }
+
+    /**
+     * Stages removing a value, unless the preferences don't hold one.
+     *
+     * @param key The name of the preference
+     */
+    public void remove(String key) {
+        if (!mPreferences.contains(key)) {
+            mPendingLongs.remove(key);
+            return;
+        }
+        mPendingLongs.put(key, null);
+    }
+
+    /**
+     * @return true if any staged change would modify the preferences
+     */
+    public boolean hasChanges() {
+        return !mPendingLongs.isEmpty();
+    }
+
+    /**
+     * Writes every staged change in one asynchronous commit, then forgets them. Nothing is
+     * written if there is nothing to change.
+     *
+     * @return true if anything was written
+     */
+    public boolean apply() {
+        if (mPendingLongs.isEmpty()) {
+            return false;
+        }
+
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (Map.Entry<String, Long> change : mPendingLongs.entrySet()) {
+            if (change.getValue() == null) {
+                editor.remove(change.getKey());
+            } else {
+                editor.putLong(change.getKey(), change.getValue());
+            }
+        }
+        editor.apply();
+        mPendingLongs.clear();
+        return true;
+    }
+}
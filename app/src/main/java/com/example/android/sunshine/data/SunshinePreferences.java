@@ -27,12 +27,33 @@ public final class SunshinePreferences {
      * @param lon      the longitude of the city
      */
     public static void setLocationDetails(Context context, double lat, double lon) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        SharedPreferences.Editor editor = sp.edit();
+        PreferenceWriter writer = newWriter(context);
+        putLocationDetails(writer, lat, lon);
+        writer.apply();
+    }
 
-        editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
-        editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
-        editor.apply();
+    /**
+     * Stages the location's coordinates in a PreferenceWriter, to be written along with its other
+     * changes, and only if they differ from the coordinates already saved.
+     *
+     * @param writer The writer to stage the coordinates in
+     * @param lat    the latitude of the city
+     * @param lon    the longitude of the city
+     */
+    public static void putLocationDetails(PreferenceWriter writer, double lat, double lon) {
+        writer.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
+        writer.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
+    }
+
+    /**
+     * Returns a PreferenceWriter for the default SharedPreferences, which batches changes and
+     * skips the ones that wouldn't change anything.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return A writer with no changes staged
+     */
+    public static PreferenceWriter newWriter(Context context) {
+        return new PreferenceWriter(PreferenceManager.getDefaultSharedPreferences(context));
     }
 
     /**
@@ -140,64 +161,6 @@ public final class SunshinePreferences {
         return spContainBothLatitudeAndLongitude;
     }
 
-    /**
-     * Returns the last time that a notification was shown (in UNIX time)
-     *
-     * @param context Used to access SharedPreferences
-     * @return UNIX time of when the last notification was shown
-     */
-    public static long getLastNotificationTimeInMillis(Context context) {
-        /* Key for accessing the time at which Sunshine last displayed a notification */
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /*
-         * Here, we retrieve the time in milliseconds when the last notification was shown. If
-         * SharedPreferences doesn't have a value for lastNotificationKey, we return 0. The reason
-         * we return 0 is because we compare the value returned from this method to the current
-         * system time. If the difference between the last notification time and the current time
-         * is greater than one day, we will show a notification again. When we compare the two
-         * values, we subtract the last notification time from the current system time. If the
-         * time of the last notification was 0, the difference will always be greater than the
-         * number of milliseconds in a day and we will show another notification.
-         */
-        long lastNotificationTime = sp.getLong(lastNotificationKey, 0);
-
-        return lastNotificationTime;
-    }
-
-    /**
-     * Returns the elapsed time in milliseconds since the last notification was shown. This is used
-     * as part of our check to see if we should show another notification when the weather is
-     * updated.
-     *
-     * @param context Used to access SharedPreferences as well as use other utility methods
-     * @return Elapsed time in milliseconds since the last notification was shown
-     */
-    public static long getEllapsedTimeSinceLastNotification(Context context) {
-        long lastNotificationTimeMillis =
-                SunshinePreferences.getLastNotificationTimeInMillis(context);
-        long timeSinceLastNotification = System.currentTimeMillis() - lastNotificationTimeMillis;
-        return timeSinceLastNotification;
-    }
-
-    /**
-     * Saves the time that a notification is shown. This will be used to get the ellapsed time
-     * since a notification was shown.
-     *
-     * @param context Used to access SharedPreferences
-     * @param timeOfNotification Time of last notification to save (in UNIX time)
-     */
-    public static void saveLastNotificationTime(Context context, long timeOfNotification) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        SharedPreferences.Editor editor = sp.edit();
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-        editor.putLong(lastNotificationKey, timeOfNotification);
-        editor.apply();
-    }
-
     /**
      * Returns true if the user prefers to see notifications from Sunshine, false otherwise. This
      * preference can be changed by the user within the SettingsFragment.
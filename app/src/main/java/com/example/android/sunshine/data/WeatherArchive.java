@@ -0,0 +1,206 @@
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads and writes the streaming archive format that {@link WeatherProvider} serves through
+ * {@link WeatherContract.WeatherEntry#ARCHIVE_URI}. Rows are written one at a time straight from
+ * a Cursor to the stream, so exporting or importing an archive of any size uses constant memory.
+ * <p>
+ * Both formats are compressed with GZIP by the provider. The binary format
+ * ({@link WeatherContract.WeatherEntry#ARCHIVE_MIME_TYPE_RECORDS}) is big endian:
+ * <pre>
+ *     int magic
+ *     int version
+ *     any number of { int length, length bytes of record }
+ * </pre>
+ * where a version 1 record is { long date, int weather_id, double min, double max,
+ * double humidity, double pressure, double wind, double degrees }. Readers skip any bytes of a
+ * record beyond the fields they know, so later versions can append fields.
+ * <p>
+ * The NDJSON format ({@link WeatherContract.WeatherEntry#ARCHIVE_MIME_TYPE_NDJSON}) is one JSON
+ * object per line, keyed by column name. It is meant for people and other tools; only the binary
+ * format can be imported.
+ */
+public final class WeatherArchive {
+
+    /* "SWA1" in ASCII */
+    private static final int ARCHIVE_MAGIC = 0x53574131;
+
+    private static final int ARCHIVE_VERSION = 1;
+
+    /* One long, one int and six doubles */
+    private static final int RECORD_BYTES = 8 + 4 + 6 * 8;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /*
+     * The columns an archive is written from, in the order of ForecastBatchCursorReader's
+     * INDEX_* constants. Cursors passed to the write methods must be queried with this
+     * projection.
+     */
+    public static final String[] ARCHIVE_PROJECTION = ForecastBatchCursorReader.PROJECTION;
+
+    /* The columns written as doubles, after the date and weather ID */
+    private static final int[] DOUBLE_COLUMNS = {
+            ForecastBatchCursorReader.INDEX_MIN_TEMPS,
+            ForecastBatchCursorReader.INDEX_MAX_TEMPS,
+            ForecastBatchCursorReader.INDEX_HUMIDITY,
+            ForecastBatchCursorReader.INDEX_PRESSURE,
+            ForecastBatchCursorReader.INDEX_WIND_SPEED,
+            ForecastBatchCursorReader.INDEX_DEGREES
+    };
+
+    /* The fields of the record most recently read by a Reader */
+    public long date;
+    public int weatherId;
+    public double minTemp;
+    public double maxTemp;
+    public double humidity;
+    public double pressure;
+    public double windSpeed;
+    public double degrees;
+
+    private final DataInputStream mIn;
+
+    private WeatherArchive(DataInputStream in) {
+        mIn = in;
+    }
+
+    /**
+     * Writes every remaining row of the Cursor as binary records.
+     *
+     * @param cursor Rows queried with {@link #ARCHIVE_PROJECTION}
+     * @param out    The stream to write to. It is flushed, but not closed.
+     * @throws IOException If the stream can't be written to, such as when the reader went away
+     */
+    public static void writeRecords(Cursor cursor, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+
+        data.writeInt(ARCHIVE_MAGIC);
+        data.writeInt(ARCHIVE_VERSION);
+
+        while (cursor.moveToNext()) {
+            data.writeInt(RECORD_BYTES);
+            data.writeLong(cursor.getLong(ForecastBatchCursorReader.INDEX_DATES));
+            data.writeInt(cursor.getInt(ForecastBatchCursorReader.INDEX_WEATHER_IDS));
+            data.writeDouble(cursor.getDouble(ForecastBatchCursorReader.INDEX_MIN_TEMPS));
+            data.writeDouble(cursor.getDouble(ForecastBatchCursorReader.INDEX_MAX_TEMPS));
+            data.writeDouble(cursor.getDouble(ForecastBatchCursorReader.INDEX_HUMIDITY));
+            data.writeDouble(cursor.getDouble(ForecastBatchCursorReader.INDEX_PRESSURE));
+            data.writeDouble(cursor.getDouble(ForecastBatchCursorReader.INDEX_WIND_SPEED));
+            data.writeDouble(cursor.getDouble(ForecastBatchCursorReader.INDEX_DEGREES));
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Writes every remaining row of the Cursor as one JSON object per line.
+     *
+     * @param cursor Rows queried with {@link #ARCHIVE_PROJECTION}
+     * @param out    The stream to write to. It is flushed, but not closed.
+     * @throws IOException If the stream can't be written to, such as when the reader went away
+     */
+    public static void writeNdjson(Cursor cursor, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(new BufferedOutputStream(out, BUFFER_SIZE), UTF_8);
+
+        /* Reused for every line, so we don't allocate a new builder per row */
+        StringBuilder line = new StringBuilder(256);
+
+        while (cursor.moveToNext()) {
+            line.setLength(0);
+            line.append('{');
+            appendField(line, ARCHIVE_PROJECTION[ForecastBatchCursorReader.INDEX_DATES])
+                    .append(cursor.getLong(ForecastBatchCursorReader.INDEX_DATES));
+            line.append(',');
+            appendField(line, ARCHIVE_PROJECTION[ForecastBatchCursorReader.INDEX_WEATHER_IDS])
+                    .append(cursor.getInt(ForecastBatchCursorReader.INDEX_WEATHER_IDS));
+            for (int column : DOUBLE_COLUMNS) {
+                line.append(',');
+                appendField(line, ARCHIVE_PROJECTION[column]).append(cursor.getDouble(column));
+            }
+            line.append("}\n");
+            writer.append(line);
+        }
+
+        writer.flush();
+    }
+
+    private static StringBuilder appendField(StringBuilder line, String name) {
+        return line.append('"').append(name).append("\":");
+    }
+
+    /**
+     * Starts reading binary records from a stream. Call {@link #next()} to read each record into
+     * this object's public fields.
+     *
+     * @param in The stream to read from, positioned at the start of the archive
+     * @return A reader for the archive
+     * @throws IOException If the stream doesn't start with an archive header this version reads
+     */
+    public static WeatherArchive openRecords(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+
+        if (data.readInt() != ARCHIVE_MAGIC) {
+            throw new IOException("Not a weather archive");
+        }
+        if (data.readInt() != ARCHIVE_VERSION) {
+            throw new IOException("Unsupported weather archive version");
+        }
+
+        return new WeatherArchive(data);
+    }
+
+    /**
+     * Reads the next record into this object's public fields.
+     *
+     * @return true if a record was read, false at the end of the archive
+     * @throws IOException If the stream ends in the middle of a record or can't be read
+     */
+    public boolean next() throws IOException {
+        int length;
+        try {
+            length = mIn.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+
+        if (length < RECORD_BYTES) {
+            throw new IOException("Weather archive record is too short: " + length);
+        }
+
+        date = mIn.readLong();
+        weatherId = mIn.readInt();
+        minTemp = mIn.readDouble();
+        maxTemp = mIn.readDouble();
+        humidity = mIn.readDouble();
+        pressure = mIn.readDouble();
+        windSpeed = mIn.readDouble();
+        degrees = mIn.readDouble();
+
+        /* Skip any fields added by a later version */
+        int remaining = length - RECORD_BYTES;
+        while (remaining > 0) {
+            int skipped = mIn.skipBytes(remaining);
+            if (skipped <= 0) throw new EOFException("Weather archive record is truncated");
+            remaining -= skipped;
+        }
+
+        return true;
+    }
+}
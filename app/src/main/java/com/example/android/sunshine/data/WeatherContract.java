@@ -3,6 +3,7 @@ package com.example.android.sunshine.data;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import com.example.android.sunshine.utilities.SunshineClock;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 /**
@@ -41,6 +42,71 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * Path used only for change notifications about a single day. It is deliberately NOT a child
+     * of PATH_WEATHER: a notification on a URI wakes every observer registered on its descendants,
+     * so if single days lived under PATH_WEATHER, every change to the forecast as a whole would
+     * also wake every screen showing one particular day, and vice versa.
+     */
+    public static final String PATH_WEATHER_DAY = "weather_day";
+
+    /* Appended to PATH_WEATHER to stream the whole weather table in or out, see WeatherArchive */
+    public static final String PATH_ARCHIVE = "archive";
+
+    /*
+     * Appended to PATH_WEATHER to read the weather one page at a time. Pages are keyed by date
+     * rather than by offset: QUERY_AFTER_DATE is the date of the last row of the previous page
+     * (leave it out for the first page), and QUERY_LIMIT is the most rows the page may hold.
+     * Each page is read straight off the date index, however far down the table it starts.
+     */
+    public static final String PATH_PAGE = "page";
+
+    public static final String QUERY_AFTER_DATE = "after";
+    public static final String QUERY_LIMIT = "limit";
+
+    /*
+     * Path for the weekly and monthly summaries of the weather table, see RollupEntry. PATH_WEEK
+     * or PATH_MONTH is appended to it to say which.
+     */
+    public static final String PATH_ROLLUP = "rollup";
+    public static final String PATH_WEEK = "week";
+    public static final String PATH_MONTH = "month";
+
+    /*
+     * Methods that can be passed to ContentResolver#call to move many rows of weather in a single
+     * Binder transaction. Rows travel as a packed byte array in the EXTRA_BATCH extra; see
+     * ForecastBatchCodec for the layout and for encoding and decoding batches.
+     *
+     * METHOD_GET_FORECAST_BATCH returns the rows with a date after EXTRA_AFTER_DATE (or all rows
+     * if it is missing), in ascending date order, up to EXTRA_LIMIT rows. To read everything,
+     * call it again with the date of the last row received until EXTRA_ROW_COUNT is 0.
+     *
+     * METHOD_PUT_FORECAST_BATCH inserts every row of EXTRA_BATCH in a single transaction,
+     * replacing rows with the same date, and returns the number of rows in EXTRA_ROW_COUNT.
+     */
+    public static final String METHOD_GET_FORECAST_BATCH = "get_forecast_batch";
+    public static final String METHOD_PUT_FORECAST_BATCH = "put_forecast_batch";
+
+    /*
+     * Methods for looking after the rollup table, see RollupEntry. Neither is needed in normal
+     * use, as every write to the weather table keeps the rollups up to date.
+     *
+     * METHOD_REBUILD_ROLLUPS recomputes every rollup from the weather table, in one transaction,
+     * and returns the number of rollup rows in EXTRA_ROW_COUNT.
+     *
+     * METHOD_CHECK_ROLLUPS compares every rollup with the weather table without changing either,
+     * and returns the number of periods that disagree in EXTRA_MISMATCH_COUNT. A period missing
+     * from the rollup table, or one that shouldn't be there, counts as a mismatch.
+     */
+    public static final String METHOD_REBUILD_ROLLUPS = "rebuild_rollups";
+    public static final String METHOD_CHECK_ROLLUPS = "check_rollups";
+
+    public static final String EXTRA_BATCH = "batch";
+    public static final String EXTRA_AFTER_DATE = "after_date";
+    public static final String EXTRA_LIMIT = "limit";
+    public static final String EXTRA_ROW_COUNT = "row_count";
+    public static final String EXTRA_MISMATCH_COUNT = "mismatch_count";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -49,6 +115,37 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * The root of the URIs that WeatherProvider uses to notify observers about changes to a
+         * single day. Notifying this URI itself wakes the observers of every day.
+         */
+        public static final Uri DAY_NOTIFICATION_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_WEATHER_DAY)
+                .build();
+
+        /*
+         * Opening this URI with ContentResolver#openInputStream streams every row of the weather
+         * table out; opening it with ContentResolver#openOutputStream imports an archive that was
+         * streamed out earlier. Use ContentResolver#openTypedAssetFileDescriptor with
+         * ARCHIVE_MIME_TYPE_NDJSON to read the archive as NDJSON instead. Both formats are GZIP
+         * compressed.
+         */
+        public static final Uri ARCHIVE_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_ARCHIVE)
+                .build();
+
+        /*
+         * Queries of this URI return a page of rows in ascending date order, see PATH_PAGE. Use
+         * buildPageUri to say which page. Any selection passed to the query is applied on top.
+         */
+        public static final Uri PAGE_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_PAGE)
+                .build();
+
+        public static final String ARCHIVE_MIME_TYPE_RECORDS =
+                "application/vnd.com.example.android.sunshine.weather-records";
+        public static final String ARCHIVE_MIME_TYPE_NDJSON = "application/x-ndjson";
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
@@ -108,6 +205,39 @@ public class WeatherContract {
                     .build();
         }
 
+        /**
+         * Builds the URI of one page of weather. To read every row, start with Long.MIN_VALUE
+         * and query again with the date of the last row received, until a page comes back with
+         * fewer than limit rows.
+         *
+         * @param afterDate The page holds rows with a date after this one
+         * @param limit     The most rows the page may hold
+         * @return Uri to query one page of weather
+         */
+        public static Uri buildPageUri(long afterDate, int limit) {
+            Uri.Builder builder = PAGE_URI.buildUpon();
+            if (afterDate != Long.MIN_VALUE) {
+                builder.appendQueryParameter(QUERY_AFTER_DATE, Long.toString(afterDate));
+            }
+            return builder
+                    .appendQueryParameter(QUERY_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /**
+         * Builds the URI that WeatherProvider notifies when the weather for a single date changes.
+         * Cursors returned for {@link #buildWeatherUriWithDate(long)} are registered on this URI,
+         * so they are only re-queried when their own day changes.
+         *
+         * @param date Normalized date in milliseconds
+         * @return Uri that observers of a single day's weather are notified on
+         */
+        public static Uri buildDayNotificationUriWithDate(long date) {
+            return DAY_NOTIFICATION_URI.buildUpon()
+                    .appendPath(Long.toString(date))
+                    .build();
+        }
+
         /**
          * Returns just the selection part of the weather query from a normalized today value.
          * This is used to get a weather forecast from today's date. To make this easy to use
@@ -116,8 +246,66 @@ public class WeatherContract {
          * @return The selection part of the weather query for today onwards
          */
         public static String getSqlSelectForTodayOnwards() {
-            long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+            long normalizedUtcNow =
+                    SunshineDateUtils.normalizeDate(SunshineClock.currentTimeMillis());
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Inner class that defines the rollup table, which holds a summary of the weather table for
+     * every week and every month it has weather for. WeatherProvider keeps it up to date in the
+     * same transaction as every write to the weather table, so screens that show summaries can
+     * read them directly rather than grouping the weather table themselves.
+     *
+     * The weather table holds a single location, so its rollups are for that location too.
+     */
+    public static final class RollupEntry implements BaseColumns {
+
+        /* The root of the rollup URIs. Observers of it are notified whenever a rollup changes. */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_ROLLUP)
+                .build();
+
+        /* Queries of these URIs return the weekly or monthly rollups, in ascending date order */
+        public static final Uri WEEK_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_WEEK)
+                .build();
+        public static final Uri MONTH_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_MONTH)
+                .build();
+
+        /* Used internally as the name of our rollup table. */
+        public static final String TABLE_NAME = "weather_rollup";
+
+        /* The values of COLUMN_PERIOD */
+        public static final int PERIOD_WEEK = 0;
+        public static final int PERIOD_MONTH = 1;
+
+        /* Whether the row summarizes a week or a month, as PERIOD_WEEK or PERIOD_MONTH */
+        public static final String COLUMN_PERIOD = "period";
+
+        /*
+         * The normalized dates of the first day of the period and of the first day after it.
+         * Weeks start on Monday, as ISO 8601 weeks do, and months on the first of the month.
+         */
+        public static final String COLUMN_PERIOD_START = "period_start";
+        public static final String COLUMN_PERIOD_END = "period_end";
+
+        /* The number of days in the period we have weather for */
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        /* The lowest low and the highest high of the period, in °C */
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+
+        /* The means, over the days we have weather for, of each day's low and high, in °C */
+        public static final String COLUMN_MEAN_MIN_TEMP = "mean_min";
+        public static final String COLUMN_MEAN_MAX_TEMP = "mean_max";
+
+        /* The means of the other measurements, in the units of WeatherEntry's columns */
+        public static final String COLUMN_MEAN_HUMIDITY = "mean_humidity";
+        public static final String COLUMN_MEAN_PRESSURE = "mean_pressure";
+        public static final String COLUMN_MEAN_WIND_SPEED = "mean_wind";
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.data.WeatherContract.RollupEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
@@ -27,8 +28,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * versions of Sunshine could cause everything to break. Although that is certainly a rare
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
+     *
+     * Version 4 added the rollup table.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 4;
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -84,6 +87,37 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        /*
+         * The weekly and monthly summaries of the weather table, kept up to date by
+         * WeatherProvider. There is one row per period, which is what the UNIQUE constraint on
+         * the period and its first day ensures; it also indexes them for reading in date order.
+         */
+        final String SQL_CREATE_ROLLUP_TABLE =
+
+                "CREATE TABLE " + RollupEntry.TABLE_NAME + " (" +
+
+                RollupEntry._ID                    + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                RollupEntry.COLUMN_PERIOD          + " INTEGER NOT NULL, "                 +
+                RollupEntry.COLUMN_PERIOD_START    + " INTEGER NOT NULL, "                 +
+                RollupEntry.COLUMN_PERIOD_END      + " INTEGER NOT NULL, "                 +
+
+                RollupEntry.COLUMN_DAY_COUNT       + " INTEGER NOT NULL, "                 +
+
+                RollupEntry.COLUMN_MIN_TEMP        + " REAL NOT NULL, "                    +
+                RollupEntry.COLUMN_MAX_TEMP        + " REAL NOT NULL, "                    +
+                RollupEntry.COLUMN_MEAN_MIN_TEMP   + " REAL NOT NULL, "                    +
+                RollupEntry.COLUMN_MEAN_MAX_TEMP   + " REAL NOT NULL, "                    +
+
+                RollupEntry.COLUMN_MEAN_HUMIDITY   + " REAL NOT NULL, "                    +
+                RollupEntry.COLUMN_MEAN_PRESSURE   + " REAL NOT NULL, "                    +
+                RollupEntry.COLUMN_MEAN_WIND_SPEED + " REAL NOT NULL, "                    +
+
+                " UNIQUE (" + RollupEntry.COLUMN_PERIOD + ", "
+                        + RollupEntry.COLUMN_PERIOD_START + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_ROLLUP_TABLE);
     }
 
     /**
@@ -101,6 +135,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + RollupEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
\ No newline at end of file
@@ -1,16 +1,38 @@
 package com.example.android.sunshine.data;
 
 import android.annotation.TargetApi;
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -23,6 +45,8 @@ import com.example.android.sunshine.utilities.SunshineDateUtils;
  */
 public class WeatherProvider extends ContentProvider {
 
+    private static final String TAG = WeatherProvider.class.getSimpleName();
+
     /*
      * These constant will be used to match URIs with the data they are looking for. We will take
      * advantage of the UriMatcher class to make that matching MUCH easier than doing something
@@ -30,6 +54,16 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_WEATHER_ARCHIVE = 102;
+    public static final int CODE_WEATHER_PAGE = 103;
+    public static final int CODE_ROLLUP_WEEK = 104;
+    public static final int CODE_ROLLUP_MONTH = 105;
+
+    /*
+     * The most days notifyDatesChanged will notify one by one. Writers collecting changed dates
+     * can stop collecting once they have more than this many.
+     */
+    private static final int MAX_DAY_NOTIFICATIONS = 64;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -39,6 +73,41 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /*
+     * Runs archive imports, one at a time. Each import is a single transaction, so running two
+     * at once would only have one wait for the other's lock.
+     */
+    private final Executor mImportExecutor = Executors.newSingleThreadExecutor();
+
+    /*
+     * Counts the rows that already hold exactly the values we are about to insert. Together with
+     * a bound date, this lets bulkInsert skip writing (and notifying about) days that the new
+     * forecast didn't change.
+     */
+    private static final String SQL_COUNT_IDENTICAL_ROWS =
+            "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " WHERE "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES + " = ?";
+
+    /* Inserts one row, in the column order of ForecastBatchCodec.BATCH_PROJECTION */
+    private static final String SQL_INSERT_ROW =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -81,6 +150,24 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/weather/archive */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_ARCHIVE,
+                CODE_WEATHER_ARCHIVE);
+
+        /* This URI is content://com.example.android.sunshine/weather/page?after=...&limit=... */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_PAGE,
+                CODE_WEATHER_PAGE);
+
+        /* These URIs are content://com.example.android.sunshine/rollup/week and .../month */
+        matcher.addURI(authority,
+                WeatherContract.PATH_ROLLUP + "/" + WeatherContract.PATH_WEEK,
+                CODE_ROLLUP_WEEK);
+        matcher.addURI(authority,
+                WeatherContract.PATH_ROLLUP + "/" + WeatherContract.PATH_MONTH,
+                CODE_ROLLUP_MONTH);
+
         return matcher;
     }
 
@@ -130,8 +217,12 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
+                /* The dates of the rows that were actually written, used to notify observers */
+                Set<Long> changedDates = new HashSet<>();
+
                 db.beginTransaction();
                 int rowsInserted = 0;
+                SQLiteStatement countIdentical = db.compileStatement(SQL_COUNT_IDENTICAL_ROWS);
                 try {
                     for (ContentValues value : values) {
                         long weatherDate =
@@ -140,19 +231,30 @@ public class WeatherProvider extends ContentProvider {
                             throw new IllegalArgumentException("Date must be normalized to insert");
                         }
 
+                        /*
+                         * If this day is already stored with exactly these values, there is
+                         * nothing to write. We still count it, as after this call the row is in
+                         * the table just as the caller asked.
+                         */
+                        if (isRowUnchanged(countIdentical, value)) {
+                            rowsInserted++;
+                            continue;
+                        }
+
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             rowsInserted++;
+                            changedDates.add(weatherDate);
                         }
                     }
+                    updateRollups(db, changedDates);
                     db.setTransactionSuccessful();
                 } finally {
+                    countIdentical.close();
                     db.endTransaction();
                 }
 
-                if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
-                }
+                notifyDatesChanged(changedDates);
 
                 return rowsInserted;
 
@@ -161,6 +263,483 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Returns true if the weather table already contains a row with the same date and exactly the
+     * same values as the given ContentValues. Values that are missing from the ContentValues can't
+     * be compared, so in that case we report the row as changed and let the insert decide.
+     *
+     * @param countIdentical Compiled {@link #SQL_COUNT_IDENTICAL_ROWS} statement
+     * @param value          The values that are about to be inserted
+     * @return true if inserting these values would not change the table
+     */
+    private static boolean isRowUnchanged(SQLiteStatement countIdentical, ContentValues value) {
+        Long weatherId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        Double min = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        Double max = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        Double humidity = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        Double pressure = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        Double windSpeed = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+        Double degrees = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+
+        if (weatherId == null || min == null || max == null || humidity == null
+                || pressure == null || windSpeed == null || degrees == null) {
+            return false;
+        }
+
+        return isRowUnchanged(countIdentical,
+                value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                weatherId, min, max, humidity, pressure, windSpeed, degrees);
+    }
+
+    /**
+     * Returns true if the weather table already contains a row with exactly these values.
+     *
+     * @param countIdentical Compiled {@link #SQL_COUNT_IDENTICAL_ROWS} statement
+     * @return true if inserting these values would not change the table
+     */
+    private static boolean isRowUnchanged(SQLiteStatement countIdentical, long date,
+                                          long weatherId, double min, double max,
+                                          double humidity, double pressure,
+                                          double windSpeed, double degrees) {
+        countIdentical.clearBindings();
+        countIdentical.bindLong(1, date);
+        countIdentical.bindLong(2, weatherId);
+        countIdentical.bindDouble(3, min);
+        countIdentical.bindDouble(4, max);
+        countIdentical.bindDouble(5, humidity);
+        countIdentical.bindDouble(6, pressure);
+        countIdentical.bindDouble(7, windSpeed);
+        countIdentical.bindDouble(8, degrees);
+
+        return countIdentical.simpleQueryForLong() > 0;
+    }
+
+    /**
+     * Writes one row through a compiled {@link #SQL_INSERT_ROW} statement, unless the table
+     * already holds exactly these values.
+     *
+     * @param countIdentical Compiled {@link #SQL_COUNT_IDENTICAL_ROWS} statement
+     * @param insert         Compiled {@link #SQL_INSERT_ROW} statement
+     * @return true if the row was written, false if it was already there
+     */
+    private static boolean writeRow(SQLiteStatement countIdentical, SQLiteStatement insert,
+                                    long date, long weatherId, double min, double max,
+                                    double humidity, double pressure,
+                                    double windSpeed, double degrees) {
+        if (isRowUnchanged(countIdentical, date, weatherId,
+                min, max, humidity, pressure, windSpeed, degrees)) {
+            return false;
+        }
+
+        insert.bindLong(1, date);
+        insert.bindLong(2, weatherId);
+        insert.bindDouble(3, min);
+        insert.bindDouble(4, max);
+        insert.bindDouble(5, humidity);
+        insert.bindDouble(6, pressure);
+        insert.bindDouble(7, windSpeed);
+        insert.bindDouble(8, degrees);
+        insert.executeInsert();
+        return true;
+    }
+
+    /**
+     * Notifies observers about a set of changed days once the transaction that changed them has
+     * been committed. Each day's own notification URI is notified, which only wakes observers of
+     * that day, followed by a single notification on
+     * {@link WeatherContract.WeatherEntry#CONTENT_URI} for observers of the forecast as a whole.
+     * If nothing changed, nobody is notified.
+     * <p>
+     * Large imports can change far more days than anyone is observing. Past
+     * {@link #MAX_DAY_NOTIFICATIONS} days, we notify the root of the per-day URIs once instead.
+     *
+     * @param changedDates Normalized dates of the rows that were inserted, replaced or deleted
+     */
+    private void notifyDatesChanged(Set<Long> changedDates) {
+        if (changedDates.isEmpty()) return;
+
+        ContentResolver resolver = getContext().getContentResolver();
+        if (changedDates.size() > MAX_DAY_NOTIFICATIONS) {
+            /* Too many days to name one by one; wake the observers of every day at once */
+            resolver.notifyChange(WeatherContract.WeatherEntry.DAY_NOTIFICATION_URI, null);
+        } else {
+            for (long date : changedDates) {
+                resolver.notifyChange(
+                        WeatherContract.WeatherEntry.buildDayNotificationUriWithDate(date), null);
+            }
+        }
+        resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+
+        /* Every change to the weather table changes at least one week's rollup */
+        resolver.notifyChange(WeatherContract.RollupEntry.CONTENT_URI, null);
+    }
+
+    /**
+     * Recomputes the rollups of the weeks and months a write changed, see WeatherRollups. Must
+     * be called inside the write's transaction.
+     *
+     * @param db           The database, in the write's transaction
+     * @param changedDates Normalized dates of the rows that were inserted, replaced or deleted
+     */
+    private static void updateRollups(SQLiteDatabase db, Set<Long> changedDates) {
+        WeatherRollups.DirtyPeriods dirtyPeriods = new WeatherRollups.DirtyPeriods();
+        dirtyPeriods.addAll(changedDates);
+        WeatherRollups.update(db, dirtyPeriods);
+    }
+
+    /**
+     * Handles the bulk binary transfer methods defined in {@link WeatherContract}. These let a
+     * caller move thousands of rows per Binder transaction as one packed byte array. Also
+     * handles the methods that rebuild and check the rollup table.
+     *
+     * @param method One of WeatherContract's METHOD_* constants
+     * @param arg    Unused
+     * @param extras The arguments for the method, see {@link WeatherContract}
+     * @return The results of the method, see {@link WeatherContract}
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        switch (method) {
+
+            case WeatherContract.METHOD_GET_FORECAST_BATCH:
+                return getForecastBatch(extras);
+
+            case WeatherContract.METHOD_PUT_FORECAST_BATCH:
+                return putForecastBatch(extras);
+
+            case WeatherContract.METHOD_REBUILD_ROLLUPS: {
+                Bundle result = new Bundle();
+                result.putInt(WeatherContract.EXTRA_ROW_COUNT,
+                        WeatherRollups.rebuild(mOpenHelper.getWritableDatabase()));
+                getContext().getContentResolver()
+                        .notifyChange(WeatherContract.RollupEntry.CONTENT_URI, null);
+                return result;
+            }
+
+            case WeatherContract.METHOD_CHECK_ROLLUPS: {
+                Bundle result = new Bundle();
+                result.putInt(WeatherContract.EXTRA_MISMATCH_COUNT,
+                        WeatherRollups.check(mOpenHelper.getWritableDatabase()));
+                return result;
+            }
+
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Reads one page of rows, in ascending date order, into a packed batch.
+     *
+     * @param extras Optionally contains EXTRA_AFTER_DATE and EXTRA_LIMIT
+     * @return A Bundle containing EXTRA_BATCH and EXTRA_ROW_COUNT
+     */
+    private Bundle getForecastBatch(Bundle extras) {
+        long afterDate = Long.MIN_VALUE;
+        int limit = ForecastBatchCodec.MAX_ROWS_PER_BATCH;
+        if (extras != null) {
+            afterDate = extras.getLong(WeatherContract.EXTRA_AFTER_DATE, afterDate);
+            limit = Math.min(limit, extras.getInt(WeatherContract.EXTRA_LIMIT, limit));
+        }
+
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                ForecastBatchCodec.BATCH_PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " > ?",
+                new String[]{Long.toString(afterDate)},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                Integer.toString(Math.max(limit, 0)));
+
+        Bundle result = new Bundle();
+        try {
+            result.putByteArray(WeatherContract.EXTRA_BATCH,
+                    ForecastBatchCodec.encode(cursor, limit));
+            result.putInt(WeatherContract.EXTRA_ROW_COUNT, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Inserts every row of a packed batch in a single transaction, through one compiled
+     * statement, replacing any rows with the same date.
+     *
+     * @param extras Contains EXTRA_BATCH
+     * @return A Bundle containing EXTRA_ROW_COUNT
+     */
+    private Bundle putForecastBatch(Bundle extras) {
+        if (extras == null) throw new IllegalArgumentException("Missing forecast batch");
+        ForecastBatchCodec batch =
+                ForecastBatchCodec.decode(extras.getByteArray(WeatherContract.EXTRA_BATCH));
+
+        int count = batch.getCount();
+        for (int i = 0; i < count; i++) {
+            if (!SunshineDateUtils.isDateNormalized(batch.getDate(i))) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+        }
+
+        Set<Long> changedDates = new HashSet<>();
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        db.beginTransaction();
+        SQLiteStatement countIdentical = db.compileStatement(SQL_COUNT_IDENTICAL_ROWS);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_ROW);
+        try {
+            for (int i = 0; i < count; i++) {
+                long date = batch.getDate(i);
+                int weatherId = batch.getWeatherId(i);
+                double min = batch.getMinTemp(i);
+                double max = batch.getMaxTemp(i);
+                double humidity = batch.getHumidity(i);
+                double pressure = batch.getPressure(i);
+                double windSpeed = batch.getWindSpeed(i);
+                double degrees = batch.getDegrees(i);
+
+                if (writeRow(countIdentical, insert, date, weatherId,
+                        min, max, humidity, pressure, windSpeed, degrees)) {
+                    changedDates.add(date);
+                }
+            }
+            updateRollups(db, changedDates);
+            db.setTransactionSuccessful();
+        } finally {
+            countIdentical.close();
+            insert.close();
+            db.endTransaction();
+        }
+
+        notifyDatesChanged(changedDates);
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROW_COUNT, count);
+        return result;
+    }
+
+    /**
+     * Opens the weather archive. Reading (mode "r") streams every row out as GZIP-compressed
+     * binary records. Writing (any mode containing "w") returns a pipe whose contents are
+     * imported, in a single transaction, once the caller closes it. See {@link WeatherArchive}.
+     *
+     * @param uri  Must be {@link WeatherContract.WeatherEntry#ARCHIVE_URI}
+     * @param mode The file mode, as for ContentResolver#openFileDescriptor
+     * @return One end of a pipe
+     * @throws FileNotFoundException If the URI isn't the archive or the pipe couldn't be made
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != CODE_WEATHER_ARCHIVE) {
+            return super.openFile(uri, mode);
+        }
+
+        if (mode.contains("w")) {
+            return openArchiveForImport();
+        }
+
+        return openPipeHelper(uri, WeatherContract.WeatherEntry.ARCHIVE_MIME_TYPE_RECORDS,
+                null, null, mArchiveWriter);
+    }
+
+    /**
+     * Streams the weather archive in whichever format the caller asked for. Asking for
+     * {@link WeatherContract.WeatherEntry#ARCHIVE_MIME_TYPE_NDJSON} gives one JSON object per
+     * line; anything else that matches gives binary records.
+     *
+     * @param uri            Must be {@link WeatherContract.WeatherEntry#ARCHIVE_URI}
+     * @param mimeTypeFilter The type of data the caller wants, which may be a pattern
+     * @param opts           Unused
+     * @return The read end of a pipe the archive is streamed through
+     * @throws FileNotFoundException If we can't provide data of the requested type
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri, @NonNull String mimeTypeFilter,
+                                                  Bundle opts) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != CODE_WEATHER_ARCHIVE) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+
+        String[] mimeTypes = getStreamTypes(uri, mimeTypeFilter);
+        if (mimeTypes == null) {
+            throw new FileNotFoundException("Can't stream the archive as " + mimeTypeFilter);
+        }
+
+        ParcelFileDescriptor pipe = openPipeHelper(uri, mimeTypes[0], opts, null, mArchiveWriter);
+        return new AssetFileDescriptor(pipe, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Lists the formats the weather archive can be streamed in, binary records first.
+     *
+     * @param uri            The URI to list the formats for
+     * @param mimeTypeFilter The type of data the caller wants, which may be a pattern
+     * @return The matching formats, or null if there are none
+     */
+    @Override
+    public String[] getStreamTypes(@NonNull Uri uri, @NonNull String mimeTypeFilter) {
+        if (sUriMatcher.match(uri) != CODE_WEATHER_ARCHIVE) {
+            return super.getStreamTypes(uri, mimeTypeFilter);
+        }
+
+        String[] archiveTypes = {
+                WeatherContract.WeatherEntry.ARCHIVE_MIME_TYPE_RECORDS,
+                WeatherContract.WeatherEntry.ARCHIVE_MIME_TYPE_NDJSON
+        };
+
+        List<String> matchingTypes = new ArrayList<>();
+        for (String archiveType : archiveTypes) {
+            if (ClipDescription.compareMimeTypes(archiveType, mimeTypeFilter)) {
+                matchingTypes.add(archiveType);
+            }
+        }
+
+        return matchingTypes.isEmpty() ? null : matchingTypes.toArray(new String[0]);
+    }
+
+    /*
+     * Writes the whole weather table to a pipe, in the format named by mimeType. This runs on a
+     * background thread started by openPipeHelper, which also closes the pipe afterwards.
+     */
+    private final PipeDataWriter<Void> mArchiveWriter = new PipeDataWriter<Void>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                    Bundle opts, Void args) {
+            Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    WeatherArchive.ARCHIVE_PROJECTION,
+                    null,
+                    null,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+            try {
+                GZIPOutputStream out =
+                        new GZIPOutputStream(new FileOutputStream(output.getFileDescriptor()));
+                if (WeatherContract.WeatherEntry.ARCHIVE_MIME_TYPE_NDJSON.equals(mimeType)) {
+                    WeatherArchive.writeNdjson(cursor, out);
+                } else {
+                    WeatherArchive.writeRecords(cursor, out);
+                }
+                out.finish();
+                out.flush();
+            } catch (IOException e) {
+                /* Most likely the reader closed its end of the pipe before reading everything */
+                Log.w(TAG, "Weather archive export stopped early", e);
+            } finally {
+                cursor.close();
+            }
+        }
+    };
+
+    /**
+     * Creates a pipe and imports whatever is written into it on {@link #mImportExecutor}. The
+     * caller gets the write end and signals the end of the archive by closing it.
+     * <p>
+     * From KitKat on, the pipe is a reliable one. If the import fails, the read end is closed
+     * with the error, so a writer still writing gets a failed write, and can get the reason from
+     * ParcelFileDescriptor#checkError. Before KitKat, a failed import is only logged.
+     *
+     * @return The write end of the pipe
+     * @throws FileNotFoundException If the pipe couldn't be created
+     */
+    private ParcelFileDescriptor openArchiveForImport() throws FileNotFoundException {
+        final boolean reliable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = reliable ? createReliablePipe() : ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Unable to create pipe: " + e.getMessage());
+        }
+
+        mImportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ParcelFileDescriptor readSide = pipe[0];
+                String error = null;
+                try {
+                    importArchive(new FileInputStream(readSide.getFileDescriptor()));
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Weather archive import failed, nothing was imported", e);
+                    error = "Weather archive import failed, nothing was imported: " + e;
+                }
+
+                try {
+                    if (error != null && reliable) {
+                        closeWithError(readSide, error);
+                    } else {
+                        readSide.close();
+                    }
+                } catch (IOException ignored) {
+                    /* Nothing useful we can do here */
+                }
+            }
+        });
+
+        return pipe[1];
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static ParcelFileDescriptor[] createReliablePipe() throws IOException {
+        return ParcelFileDescriptor.createReliablePipe();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void closeWithError(ParcelFileDescriptor descriptor, String error)
+            throws IOException {
+        descriptor.closeWithError(error);
+    }
+
+    /**
+     * Reads a GZIP-compressed binary archive and writes every record in a single transaction. If
+     * anything goes wrong part way through, the transaction is rolled back and nothing is
+     * imported. Only one record is held in memory at a time.
+     *
+     * @param in The compressed archive
+     * @throws IOException If the archive is malformed or can't be read
+     */
+    private void importArchive(InputStream in) throws IOException {
+        WeatherArchive archive = WeatherArchive.openRecords(new GZIPInputStream(in));
+
+        Set<Long> changedDates = new HashSet<>();
+        /* Unlike changedDates, this has to hear about every day, however many there are */
+        WeatherRollups.DirtyPeriods dirtyPeriods = new WeatherRollups.DirtyPeriods();
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        db.beginTransaction();
+        SQLiteStatement countIdentical = db.compileStatement(SQL_COUNT_IDENTICAL_ROWS);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_ROW);
+        try {
+            while (archive.next()) {
+                if (!SunshineDateUtils.isDateNormalized(archive.date)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
+                }
+
+                boolean written = writeRow(countIdentical, insert, archive.date,
+                        archive.weatherId, archive.minTemp, archive.maxTemp, archive.humidity,
+                        archive.pressure, archive.windSpeed, archive.degrees);
+
+                if (written) dirtyPeriods.add(archive.date);
+
+                /* Past the limit, notifyDatesChanged notifies every day at once anyway */
+                if (written && changedDates.size() <= MAX_DAY_NOTIFICATIONS) {
+                    changedDates.add(archive.date);
+                }
+            }
+            WeatherRollups.update(db, dirtyPeriods);
+            db.setTransactionSuccessful();
+        } finally {
+            countIdentical.close();
+            insert.close();
+            db.endTransaction();
+        }
+
+        notifyDatesChanged(changedDates);
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -182,6 +761,13 @@ public class WeatherProvider extends ContentProvider {
 
         Cursor cursor;
 
+        /*
+         * The URI on which this cursor will watch for changes. For most queries, this is simply
+         * the URI that was queried. See the CODE_WEATHER_WITH_DATE, CODE_WEATHER_PAGE and rollup
+         * cases for the exceptions.
+         */
+        Uri notificationUri = uri;
+
         /*
          * Here's the switch statement that, given a URI, will determine what kind of request is
          * being made and query the database accordingly.
@@ -243,6 +829,13 @@ public class WeatherProvider extends ContentProvider {
                         null,
                         sortOrder);
 
+                /*
+                 * A single day only needs to be re-queried when that day changes, so we watch
+                 * that day's notification URI rather than the URI we were queried with.
+                 */
+                notificationUri = WeatherContract.WeatherEntry
+                        .buildDayNotificationUriWithDate(Long.parseLong(normalizedUtcDateString));
+
                 break;
             }
 
@@ -270,11 +863,88 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            /*
+             * A page of the weather table, see WeatherContract.PATH_PAGE. The page is found by
+             * seeking the date index to the date after QUERY_AFTER_DATE, so reading the last page
+             * of a long table costs no more than reading the first. That only works in date
+             * order, so any sortOrder passed in is ignored.
+             */
+            case CODE_WEATHER_PAGE: {
+                String limit = uri.getQueryParameter(WeatherContract.QUERY_LIMIT);
+                String afterDate = uri.getQueryParameter(WeatherContract.QUERY_AFTER_DATE);
+                try {
+                    if (limit == null || Integer.parseInt(limit) < 0) {
+                        throw new IllegalArgumentException("Missing or negative limit: " + uri);
+                    }
+                    if (afterDate != null) Long.parseLong(afterDate);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed page uri: " + uri);
+                }
+
+                String pageSelection = selection;
+                String[] pageSelectionArgs = selectionArgs;
+                if (afterDate != null) {
+                    /* The date is the first argument, so it goes first in the selection too */
+                    pageSelection = WeatherContract.WeatherEntry.COLUMN_DATE + " > ?"
+                            + (selection == null ? "" : " AND (" + selection + ")");
+                    int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+                    pageSelectionArgs = new String[argCount + 1];
+                    pageSelectionArgs[0] = afterDate;
+                    if (argCount > 0) {
+                        System.arraycopy(selectionArgs, 0, pageSelectionArgs, 1, argCount);
+                    }
+                }
+
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        projection,
+                        pageSelection,
+                        pageSelectionArgs,
+                        null,
+                        null,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                        limit);
+
+                /* Every page watches the whole table, as any change may move rows between pages */
+                notificationUri = WeatherContract.WeatherEntry.CONTENT_URI;
+
+                break;
+            }
+
+            /*
+             * The weekly or monthly rollups, see WeatherContract.RollupEntry. Like the weather
+             * itself, they are in ascending date order unless the caller asks otherwise.
+             */
+            case CODE_ROLLUP_WEEK:
+            case CODE_ROLLUP_MONTH: {
+                int period = sUriMatcher.match(uri) == CODE_ROLLUP_WEEK
+                        ? WeatherContract.RollupEntry.PERIOD_WEEK
+                        : WeatherContract.RollupEntry.PERIOD_MONTH;
+
+                String rollupSelection = WeatherContract.RollupEntry.COLUMN_PERIOD + " = "
+                        + period + (selection == null ? "" : " AND (" + selection + ")");
+
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.RollupEntry.TABLE_NAME,
+                        projection,
+                        rollupSelection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder != null
+                                ? sortOrder
+                                : WeatherContract.RollupEntry.COLUMN_PERIOD_START + " ASC");
+
+                notificationUri = WeatherContract.RollupEntry.CONTENT_URI;
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return cursor;
     }
 
@@ -301,13 +971,45 @@ public class WeatherProvider extends ContentProvider {
          */
         if (null == selection) selection = "1";
 
+        /* The dates of the rows that were deleted, used to notify observers */
+        Set<Long> changedDates = new HashSet<>();
+
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        selection,
-                        selectionArgs);
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    /*
+                     * Find out which days are about to be deleted before deleting them, so that
+                     * we can tell exactly those days' observers about it.
+                     */
+                    Cursor deletedDates = db.query(
+                            WeatherContract.WeatherEntry.TABLE_NAME,
+                            new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            null);
+                    try {
+                        while (deletedDates.moveToNext()) {
+                            changedDates.add(deletedDates.getLong(0));
+                        }
+                    } finally {
+                        deletedDates.close();
+                    }
+
+                    numRowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME,
+                            selection,
+                            selectionArgs);
+
+                    updateRollups(db, changedDates);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
 
                 break;
 
@@ -315,9 +1017,9 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        /* If we actually deleted any rows, notify that a change has occurred to this URI */
+        /* If we actually deleted any rows, notify the observers of the days that are now gone */
         if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyDatesChanged(changedDates);
         }
 
         return numRowsDeleted;
@@ -330,11 +1032,16 @@ public class WeatherProvider extends ContentProvider {
      * given URI. For example, if your app provided images at a particular URI, then you would
      * return an image URI from this method.
      *
+     * The one exception is the weather archive, which is a stream of binary records.
+     *
      * @param uri the URI to query.
      * @return nothing in Sunshine, but normally a MIME type string, or null if there is no type.
      */
     @Override
     public String getType(@NonNull Uri uri) {
+        if (sUriMatcher.match(uri) == CODE_WEATHER_ARCHIVE) {
+            return WeatherContract.WeatherEntry.ARCHIVE_MIME_TYPE_RECORDS;
+        }
         throw new RuntimeException("We are not implementing getType in Sunshine.");
     }
 
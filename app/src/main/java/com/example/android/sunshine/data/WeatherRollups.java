@@ -0,0 +1,343 @@
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Maintains the rollup table, see {@link RollupEntry}.
+ * <p>
+ * Writers collect the dates they change in a {@link DirtyPeriods}, and call
+ * {@link #update(SQLiteDatabase, DirtyPeriods)} before committing their transaction. Only the
+ * weeks and months holding those dates are recomputed, each from the handful of weather rows
+ * inside it, so a sync that rewrites two weeks of forecast touches about three weeks and two
+ * months however long the table is.
+ * <p>
+ * Lows and highs can't be taken back out of a running minimum or maximum when a day is replaced
+ * or deleted, so a changed period is always recomputed from the weather table rather than
+ * adjusted. That also means a rollup never drifts from the rows it summarizes, and
+ * {@link #rebuild(SQLiteDatabase)} and {@link #check(SQLiteDatabase)} use the very same
+ * statement as every write.
+ */
+final class WeatherRollups {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /* Day 0 of the epoch was a Thursday, which is day 3 of an ISO week */
+    private static final int EPOCH_DAY_OF_WEEK = 3;
+
+    private static final String SQL_DELETE_PERIOD =
+            "DELETE FROM " + RollupEntry.TABLE_NAME + " WHERE "
+                    + RollupEntry.COLUMN_PERIOD + " = ? AND "
+                    + RollupEntry.COLUMN_PERIOD_START + " = ?";
+
+    /*
+     * Summarizes the weather rows of one period into the rollup table. Bound as period, start,
+     * end, start, end. A period without weather produces no row.
+     */
+    private static final String SQL_INSERT_PERIOD =
+            "INSERT INTO " + RollupEntry.TABLE_NAME + " ("
+                    + RollupEntry.COLUMN_PERIOD + ", "
+                    + RollupEntry.COLUMN_PERIOD_START + ", "
+                    + RollupEntry.COLUMN_PERIOD_END + ", "
+                    + RollupEntry.COLUMN_DAY_COUNT + ", "
+                    + RollupEntry.COLUMN_MIN_TEMP + ", "
+                    + RollupEntry.COLUMN_MAX_TEMP + ", "
+                    + RollupEntry.COLUMN_MEAN_MIN_TEMP + ", "
+                    + RollupEntry.COLUMN_MEAN_MAX_TEMP + ", "
+                    + RollupEntry.COLUMN_MEAN_HUMIDITY + ", "
+                    + RollupEntry.COLUMN_MEAN_PRESSURE + ", "
+                    + RollupEntry.COLUMN_MEAN_WIND_SPEED
+                    + ") " + selectPeriodSummary("?, ?, ?");
+
+    /* The same summary as SQL_INSERT_PERIOD, read rather than stored. Bound as start, end. */
+    private static final String SQL_SUMMARIZE_PERIOD = selectPeriodSummary("0, 0, 0");
+
+    /* The summary columns of a rollup, in the order SQL_SUMMARIZE_PERIOD returns them */
+    private static final String[] SUMMARY_COLUMNS = {
+            RollupEntry.COLUMN_DAY_COUNT,
+            RollupEntry.COLUMN_MIN_TEMP,
+            RollupEntry.COLUMN_MAX_TEMP,
+            RollupEntry.COLUMN_MEAN_MIN_TEMP,
+            RollupEntry.COLUMN_MEAN_MAX_TEMP,
+            RollupEntry.COLUMN_MEAN_HUMIDITY,
+            RollupEntry.COLUMN_MEAN_PRESSURE,
+            RollupEntry.COLUMN_MEAN_WIND_SPEED,
+    };
+
+    /* The first three columns of SQL_SUMMARIZE_PERIOD are placeholders for the period itself */
+    private static final int SUMMARY_OFFSET = 3;
+
+    /* Means are compared with this much slack, as SQLite may sum in any order */
+    private static final double CHECK_TOLERANCE = 1e-9;
+
+    /* The outcomes of checkPeriod */
+    private static final int CHECK_OK = 0;
+    private static final int CHECK_DIFFERENT = 1;
+    private static final int CHECK_MISSING = 2;
+
+    private WeatherRollups() {
+    }
+
+    /*
+     * Older SQLite versions don't allow HAVING without GROUP BY, so the empty summary of a period
+     * without weather is filtered out by an outer query instead.
+     */
+    private static String selectPeriodSummary(String periodColumns) {
+        return "SELECT * FROM (SELECT " + periodColumns + ", COUNT(*) AS day_count, "
+                + "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + "), "
+                + "MAX(" + WeatherEntry.COLUMN_MAX_TEMP + "), "
+                + "AVG(" + WeatherEntry.COLUMN_MIN_TEMP + "), "
+                + "AVG(" + WeatherEntry.COLUMN_MAX_TEMP + "), "
+                + "AVG(" + WeatherEntry.COLUMN_HUMIDITY + "), "
+                + "AVG(" + WeatherEntry.COLUMN_PRESSURE + "), "
+                + "AVG(" + WeatherEntry.COLUMN_WIND_SPEED + ") "
+                + "FROM " + WeatherEntry.TABLE_NAME + " WHERE "
+                + WeatherEntry.COLUMN_DATE + " >= ? AND "
+                + WeatherEntry.COLUMN_DATE + " < ?) WHERE day_count > 0";
+    }
+
+    /**
+     * The weeks and months touched by a write. Each period is kept once, however many of its
+     * days changed, so this stays small even for large imports.
+     */
+    static final class DirtyPeriods {
+        private final Set<Long> mWeekStarts = new HashSet<>();
+        private final Set<Long> mMonthStarts = new HashSet<>();
+
+        /**
+         * @param date The normalized date of a row that was inserted, replaced or deleted
+         */
+        void add(long date) {
+            mWeekStarts.add(getPeriodStart(RollupEntry.PERIOD_WEEK, date));
+            mMonthStarts.add(getPeriodStart(RollupEntry.PERIOD_MONTH, date));
+        }
+
+        void addAll(Iterable<Long> dates) {
+            for (long date : dates) {
+                add(date);
+            }
+        }
+
+        boolean isEmpty() {
+            return mWeekStarts.isEmpty();
+        }
+    }
+
+    /**
+     * Returns the first day of the week or month holding a date.
+     *
+     * @param period RollupEntry.PERIOD_WEEK or RollupEntry.PERIOD_MONTH
+     * @param date   A normalized date
+     * @return The normalized date of the first day of the period
+     */
+    static long getPeriodStart(int period, long date) {
+        switch (period) {
+            case RollupEntry.PERIOD_WEEK: {
+                long day = date / SunshineDateUtils.DAY_IN_MILLIS;
+                long dayOfWeek = ((day + EPOCH_DAY_OF_WEEK) % 7 + 7) % 7;
+                return (day - dayOfWeek) * SunshineDateUtils.DAY_IN_MILLIS;
+            }
+
+            case RollupEntry.PERIOD_MONTH: {
+                Calendar calendar = Calendar.getInstance(UTC);
+                calendar.setTimeInMillis(date);
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                return calendar.getTimeInMillis();
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown rollup period: " + period);
+        }
+    }
+
+    /**
+     * @param period      RollupEntry.PERIOD_WEEK or RollupEntry.PERIOD_MONTH
+     * @param periodStart The first day of the period, as returned by getPeriodStart
+     * @return The normalized date of the first day after the period
+     */
+    static long getPeriodEnd(int period, long periodStart) {
+        switch (period) {
+            case RollupEntry.PERIOD_WEEK:
+                return periodStart + 7 * SunshineDateUtils.DAY_IN_MILLIS;
+
+            case RollupEntry.PERIOD_MONTH: {
+                Calendar calendar = Calendar.getInstance(UTC);
+                calendar.setTimeInMillis(periodStart);
+                calendar.add(Calendar.MONTH, 1);
+                return calendar.getTimeInMillis();
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown rollup period: " + period);
+        }
+    }
+
+    /**
+     * Recomputes the rollups of every period a write touched. Call this inside the write's
+     * transaction, so that the weather and its rollups are committed together.
+     *
+     * @param db    The database, in the transaction that changed the weather
+     * @param dirty The periods the transaction changed
+     */
+    static void update(SQLiteDatabase db, DirtyPeriods dirty) {
+        if (dirty.isEmpty()) return;
+
+        SQLiteStatement delete = db.compileStatement(SQL_DELETE_PERIOD);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_PERIOD);
+        try {
+            for (long weekStart : dirty.mWeekStarts) {
+                recompute(delete, insert, RollupEntry.PERIOD_WEEK, weekStart);
+            }
+            for (long monthStart : dirty.mMonthStarts) {
+                recompute(delete, insert, RollupEntry.PERIOD_MONTH, monthStart);
+            }
+        } finally {
+            delete.close();
+            insert.close();
+        }
+    }
+
+    private static void recompute(SQLiteStatement delete, SQLiteStatement insert,
+                                  int period, long periodStart) {
+        long periodEnd = getPeriodEnd(period, periodStart);
+
+        delete.bindLong(1, period);
+        delete.bindLong(2, periodStart);
+        delete.executeUpdateDelete();
+
+        insert.bindLong(1, period);
+        insert.bindLong(2, periodStart);
+        insert.bindLong(3, periodEnd);
+        insert.bindLong(4, periodStart);
+        insert.bindLong(5, periodEnd);
+        insert.executeInsert();
+    }
+
+    /**
+     * Throws every rollup away and computes them all again from the weather table, in a single
+     * transaction.
+     *
+     * @param db The database
+     * @return The number of rollup rows afterwards
+     */
+    static int rebuild(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.delete(RollupEntry.TABLE_NAME, null, null);
+            update(db, getPeriodsWithWeather(db));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return (int) countRollups(db);
+    }
+
+    /**
+     * Compares every rollup with a summary computed afresh from the weather table. Nothing is
+     * written.
+     *
+     * @param db The database
+     * @return The number of periods whose rollup is wrong, missing, or shouldn't exist
+     */
+    static int check(SQLiteDatabase db) {
+        int mismatches = 0;
+        long matchedRollups = 0;
+
+        /*
+         * Read everything in one transaction, so that a write can't land half way through. It
+         * only reads, so it doesn't take the exclusive lock, which would also shut out readers
+         * such as the forecast list for as long as the check runs.
+         */
+        db.beginTransactionNonExclusive();
+        try {
+            DirtyPeriods periods = getPeriodsWithWeather(db);
+            for (long weekStart : periods.mWeekStarts) {
+                int result = checkPeriod(db, RollupEntry.PERIOD_WEEK, weekStart);
+                if (result != CHECK_MISSING) matchedRollups++;
+                if (result != CHECK_OK) mismatches++;
+            }
+            for (long monthStart : periods.mMonthStarts) {
+                int result = checkPeriod(db, RollupEntry.PERIOD_MONTH, monthStart);
+                if (result != CHECK_MISSING) matchedRollups++;
+                if (result != CHECK_OK) mismatches++;
+            }
+
+            /* Any other rollup rows are for periods without weather, and shouldn't exist */
+            mismatches += (int) (countRollups(db) - matchedRollups);
+        } finally {
+            db.endTransaction();
+        }
+
+        return mismatches;
+    }
+
+    /*
+     * Compares the stored rollup of a period that has weather with the weather table, and returns
+     * CHECK_OK, CHECK_DIFFERENT or CHECK_MISSING.
+     */
+    private static int checkPeriod(SQLiteDatabase db, int period, long periodStart) {
+        String[] range = {
+                Long.toString(periodStart),
+                Long.toString(getPeriodEnd(period, periodStart))
+        };
+        Cursor expected = db.rawQuery(SQL_SUMMARIZE_PERIOD, range);
+        Cursor actual = db.query(RollupEntry.TABLE_NAME,
+                SUMMARY_COLUMNS,
+                RollupEntry.COLUMN_PERIOD + " = ? AND " + RollupEntry.COLUMN_PERIOD_START + " = ?",
+                new String[]{Integer.toString(period), Long.toString(periodStart)},
+                null,
+                null,
+                null);
+        try {
+            if (!actual.moveToFirst()) return CHECK_MISSING;
+            if (!expected.moveToFirst()) return CHECK_DIFFERENT;
+
+            for (int column = 0; column < SUMMARY_COLUMNS.length; column++) {
+                double want = expected.getDouble(SUMMARY_OFFSET + column);
+                double have = actual.getDouble(column);
+                if (Math.abs(want - have) > CHECK_TOLERANCE * Math.max(1.0, Math.abs(want))) {
+                    return CHECK_DIFFERENT;
+                }
+            }
+            return CHECK_OK;
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    private static long countRollups(SQLiteDatabase db) {
+        return DatabaseUtils.queryNumEntries(db, RollupEntry.TABLE_NAME);
+    }
+
+    /* Reads every date in the weather table, and returns the periods they fall in */
+    private static DirtyPeriods getPeriodsWithWeather(SQLiteDatabase db) {
+        DirtyPeriods periods = new DirtyPeriods();
+        Cursor dates = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_DATE},
+                null,
+                null,
+                null,
+                null,
+                null);
+        try {
+            while (dates.moveToNext()) {
+                periods.add(dates.getLong(0));
+            }
+        } finally {
+            dates.close();
+        }
+        return periods;
+    }
+}
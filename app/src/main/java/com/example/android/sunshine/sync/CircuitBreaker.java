@@ -0,0 +1,157 @@
+package com.example.android.sunshine.sync;
+
+import android.content.SharedPreferences;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops the sync from contacting the weather server after it has failed repeatedly, so that a
+ * struggling or unreachable server isn't hit by every retry of every device.
+ * <p>
+ * The breaker starts out closed, allowing every request. After {@code failureThreshold}
+ * consecutive failures it opens, and refuses every request for {@code openMillis}. Once that
+ * time has passed it is half open: the next request is allowed through as a trial, and every
+ * other request is refused until the trial's result is recorded. If the trial succeeds, the
+ * breaker closes again. If it fails, the breaker opens again for twice as long, up to
+ * {@code maxOpenMillis}. A trial whose result never arrives, say because the process was killed
+ * while making it, is given up on after {@link #TRIAL_TIMEOUT_MILLIS}, and a new one is allowed.
+ * <p>
+ * Syncs usually run in a fresh process started by the job scheduler, so the breaker keeps its
+ * state in SharedPreferences rather than in memory.
+ */
+public final class CircuitBreaker {
+
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    private static final String KEY_CONSECUTIVE_FAILURES = "consecutive_failures";
+    private static final String KEY_OPENED_AT = "opened_at";
+    private static final String KEY_OPEN_MILLIS = "open_millis";
+    private static final String KEY_TRIAL_STARTED_AT = "trial_started_at";
+
+    /*
+     * Longer than any one request can take, given SunshineHttpClient's connect and read
+     * timeouts, so a trial still in flight is never mistaken for a lost one.
+     */
+    static final long TRIAL_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final SharedPreferences mPreferences;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final long mMaxOpenMillis;
+
+    /**
+     * @param preferences      Where the breaker's state is kept. Use a file of its own.
+     * @param failureThreshold Consecutive failures that open the breaker
+     * @param openMillis       How long the breaker first stays open for
+     * @param maxOpenMillis    The longest the breaker will stay open for
+     */
+    public CircuitBreaker(SharedPreferences preferences, int failureThreshold,
+                          long openMillis, long maxOpenMillis) {
+        mPreferences = preferences;
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mMaxOpenMillis = maxOpenMillis;
+    }
+
+    /**
+     * @param nowMillis The current time, in milliseconds since the epoch
+     * @return One of STATE_CLOSED, STATE_OPEN and STATE_HALF_OPEN
+     */
+    public synchronized int getState(long nowMillis) {
+        if (!mPreferences.contains(KEY_OPENED_AT)) return STATE_CLOSED;
+
+        long openedAt = mPreferences.getLong(KEY_OPENED_AT, 0);
+
+        /* A clock that went backwards shouldn't keep the breaker open forever */
+        if (nowMillis < openedAt) return STATE_HALF_OPEN;
+
+        long openMillis = mPreferences.getLong(KEY_OPEN_MILLIS, mOpenMillis);
+        return nowMillis - openedAt < openMillis ? STATE_OPEN : STATE_HALF_OPEN;
+    }
+
+    /**
+     * Asks whether a request may be made now. While the breaker is half open, the first caller
+     * is granted the trial request and must report how it went with recordSuccess or
+     * recordFailure. Everyone else is refused until then.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch
+     * @return true if a request may be made now, false if the breaker is open or a trial request
+     * is already being made
+     */
+    public synchronized boolean allowRequest(long nowMillis) {
+        int state = getState(nowMillis);
+        if (state == STATE_CLOSED) return true;
+        if (state == STATE_OPEN || isTrialInFlight(nowMillis)) return false;
+
+        mPreferences.edit()
+                .putLong(KEY_TRIAL_STARTED_AT, nowMillis)
+                .apply();
+        return true;
+    }
+
+    /**
+     * @param nowMillis The current time, in milliseconds since the epoch
+     * @return How long until the breaker lets a trial request through, 0 if it already would
+     */
+    public synchronized long getRetryAfterMillis(long nowMillis) {
+        int state = getState(nowMillis);
+        if (state == STATE_HALF_OPEN && isTrialInFlight(nowMillis)) {
+            long trialStartedAt = mPreferences.getLong(KEY_TRIAL_STARTED_AT, 0);
+            return trialStartedAt + TRIAL_TIMEOUT_MILLIS - nowMillis;
+        }
+        if (state != STATE_OPEN) return 0;
+
+        long openedAt = mPreferences.getLong(KEY_OPENED_AT, 0);
+        long openMillis = mPreferences.getLong(KEY_OPEN_MILLIS, mOpenMillis);
+        return openedAt + openMillis - nowMillis;
+    }
+
+    /* Records a successful request, which closes the breaker */
+    public synchronized void recordSuccess() {
+        mPreferences.edit()
+                .remove(KEY_CONSECUTIVE_FAILURES)
+                .remove(KEY_OPENED_AT)
+                .remove(KEY_OPEN_MILLIS)
+                .remove(KEY_TRIAL_STARTED_AT)
+                .apply();
+    }
+
+    /**
+     * Records a failed request. This opens the breaker if it was the trial request of a half
+     * open breaker, or if it was one failure too many.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch
+     */
+    public synchronized void recordFailure(long nowMillis) {
+        int state = getState(nowMillis);
+        int failures = mPreferences.getInt(KEY_CONSECUTIVE_FAILURES, 0) + 1;
+
+        SharedPreferences.Editor editor = mPreferences.edit()
+                .putInt(KEY_CONSECUTIVE_FAILURES, failures);
+
+        if (state == STATE_HALF_OPEN) {
+            /* The trial failed, so back off for longer this time */
+            long openMillis = mPreferences.getLong(KEY_OPEN_MILLIS, mOpenMillis);
+            editor.putLong(KEY_OPENED_AT, nowMillis)
+                    .putLong(KEY_OPEN_MILLIS, Math.min(openMillis * 2, mMaxOpenMillis))
+                    .remove(KEY_TRIAL_STARTED_AT);
+        } else if (state == STATE_CLOSED && failures >= mFailureThreshold) {
+            editor.putLong(KEY_OPENED_AT, nowMillis)
+                    .putLong(KEY_OPEN_MILLIS, mOpenMillis);
+        }
+
+        editor.apply();
+    }
+
+    /* Whether a trial request was granted and hasn't reported back, or been given up on, yet */
+    private boolean isTrialInFlight(long nowMillis) {
+        if (!mPreferences.contains(KEY_TRIAL_STARTED_AT)) return false;
+
+        long trialStartedAt = mPreferences.getLong(KEY_TRIAL_STARTED_AT, 0);
+
+        /* As in getState, a clock that went backwards shouldn't hold the trial forever */
+        return nowMillis >= trialStartedAt && nowMillis - trialStartedAt < TRIAL_TIMEOUT_MILLIS;
+    }
+}
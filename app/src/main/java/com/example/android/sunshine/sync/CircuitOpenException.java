@@ -0,0 +1,15 @@
+package com.example.android.sunshine.sync;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of contacting the weather server while the {@link CircuitBreaker} is open,
+ * because the server has been failing.
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(long retryAfterMillis) {
+        super("Weather server has been failing, not retrying for another "
+                + retryAfterMillis + " ms");
+    }
+}
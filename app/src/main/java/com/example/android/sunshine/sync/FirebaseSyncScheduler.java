@@ -0,0 +1,95 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.firebase.jobdispatcher.Constraint;
+import com.firebase.jobdispatcher.Driver;
+import com.firebase.jobdispatcher.FirebaseJobDispatcher;
+import com.firebase.jobdispatcher.GooglePlayDriver;
+import com.firebase.jobdispatcher.Job;
+import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.RetryStrategy;
+import com.firebase.jobdispatcher.Trigger;
+
+/**
+ * Schedules SyncJobs with FirebaseJobDispatcher, which runs them through Google Play services
+ * using SunshineFirebaseJobService.
+ */
+public class FirebaseSyncScheduler implements SyncScheduler {
+
+    /* What getName returns, and what SunshineSyncUtils finds this backend by */
+    static final String NAME = "firebase";
+
+    private final FirebaseJobDispatcher mDispatcher;
+
+    /**
+     * @param context Context used to create the GooglePlayDriver that powers the
+     *                FirebaseJobDispatcher
+     */
+    public FirebaseSyncScheduler(@NonNull Context context) {
+        Driver driver = new GooglePlayDriver(context);
+        mDispatcher = new FirebaseJobDispatcher(driver);
+    }
+
+    /**
+     * @param context Context used to create a GooglePlayDriver
+     * @return Whether Google Play services is there to run the jobs this schedules
+     */
+    public static boolean isAvailable(@NonNull Context context) {
+        return new GooglePlayDriver(context).isAvailable();
+    }
+
+    @Override
+    public boolean schedule(SyncJob job) {
+
+        // Create job to periodically sync weather data
+        Job firebaseJob = mDispatcher.newJobBuilder()
+        // Service that will be used for syncing data
+        .setService(SunshineFirebaseJobService.class)
+                // Set the UNIQUE tag used to identify this Job
+                .setTag(job.getTag())
+                /*
+                 * Network constraints on which this Job should run. We choose to run on any
+                 * network, but you can also choose to run only on un-metered networks or when the
+                 * device is charging. It might be a good idea to include a preference for this,
+                 * as some users may not want to download any data on their mobile plan. ($$$)
+                 */
+                .setConstraints(job.requiresNetwork() ? new int[]{Constraint.ON_ANY_NETWORK}
+                        : new int[0])
+                // Sets how long job should persist. Options: keep "forever" or die on next boot
+                .setLifetime(Lifetime.FOREVER)
+                // Set to recur to ensure data stays up to date
+                .setRecurring(true)
+                /*
+                * First argument for Trigger's static executionWindow method is the start of the
+                * time frame when the sync should be done. The second argument is the latest point
+                * when the data should be synced. Note: this end time isn't guaranteed, but is more
+                * of a guideline for the the dispatcher to go off of
+                * */
+                .setTrigger(Trigger.executionWindow(
+                        job.getIntervalSeconds(),
+                        job.getIntervalSeconds() + job.getFlexSeconds()))
+                // If Job with given tag already exists, this new job will replace it
+                .setReplaceCurrent(true)
+                // Used when SunshineFirebaseJobService asks for a failed sync to be rescheduled
+                .setRetryStrategy(mDispatcher.newRetryStrategy(
+                        RetryStrategy.RETRY_POLICY_EXPONENTIAL,
+                        job.getInitialBackoffSeconds(),
+                        job.getMaxBackoffSeconds()))
+                .build();
+
+        // Schedule Job with the dispatcher
+        return mDispatcher.schedule(firebaseJob) == FirebaseJobDispatcher.SCHEDULE_RESULT_SUCCESS;
+    }
+
+    @Override
+    public void cancel(String tag) {
+        mDispatcher.cancel(tag);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
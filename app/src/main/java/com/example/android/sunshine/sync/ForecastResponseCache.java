@@ -0,0 +1,279 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small disk cache of raw forecast responses, keyed by the URL they were fetched from. It lets
+ * the sync rebuild the database without the network after a wipe or a migration, keep showing
+ * the last forecast while offline, and skip fetching altogether while the last response is
+ * recent enough.
+ * <p>
+ * How a cached response may be used depends on its age, in the spirit of HTTP's Cache-Control
+ * directives:
+ * <ul>
+ * <li>Younger than {@link #MAX_AGE_MILLIS}, it is {@link #FRESH}: use it, don't fetch.</li>
+ * <li>For {@link #STALE_WHILE_REVALIDATE_MILLIS} after that, it is {@link #STALE_REVALIDATE}:
+ * use it right away, then fetch a new one.</li>
+ * <li>For {@link #STALE_IF_ERROR_MILLIS} after that, it is {@link #STALE_IF_ERROR}: only use it
+ * if the fetch fails.</li>
+ * <li>After that, it is {@link #EXPIRED} and is never used.</li>
+ * </ul>
+ * The weather server doesn't send Cache-Control headers, so these windows are ours rather than
+ * the server's.
+ * <p>
+ * Entries live in their own directory under getCacheDir(). The cache holds at most
+ * {@link #MAX_ENTRIES} entries and {@link #MAX_BYTES} bytes; past either limit, the least
+ * recently used entries are deleted. The system may also delete them when storage runs low,
+ * which only costs us a fetch.
+ */
+public final class ForecastResponseCache {
+
+    private static final String TAG = ForecastResponseCache.class.getSimpleName();
+
+    public static final int FRESH = 0;
+    public static final int STALE_REVALIDATE = 1;
+    public static final int STALE_IF_ERROR = 2;
+    public static final int EXPIRED = 3;
+
+    /* The number of freshness states above, for anyone counting them */
+    public static final int FRESHNESS_COUNT = 4;
+
+    /*
+     * The sync runs every 3 to 4 hours. A response younger than an hour can't have changed
+     * enough to be worth fetching again, for example when the app is launched right after a
+     * periodic sync.
+     */
+    public static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long STALE_WHILE_REVALIDATE_MILLIS = TimeUnit.HOURS.toMillis(5);
+    /* A days-old forecast still has most of its days in the future, so it beats no forecast */
+    public static final long STALE_IF_ERROR_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /* One entry per location, and a user rarely has more than a few */
+    private static final int MAX_ENTRIES = 8;
+    private static final long MAX_BYTES = 512 * 1024;
+
+    private static final String CACHE_DIRECTORY = "forecast_responses";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /* "SRC1" in ASCII */
+    private static final int ENTRY_MAGIC = 0x53524331;
+    private static final int ENTRY_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* The body of the cached response */
+    public final String body;
+
+    /* When the response was fetched, in milliseconds since the epoch */
+    public final long fetchedAtMillis;
+
+    private ForecastResponseCache(String body, long fetchedAtMillis) {
+        this.body = body;
+        this.fetchedAtMillis = fetchedAtMillis;
+    }
+
+    /**
+     * @param nowMillis The current time, in milliseconds since the epoch
+     * @return FRESH, STALE_REVALIDATE, STALE_IF_ERROR or EXPIRED
+     */
+    public int getFreshness(long nowMillis) {
+        long age = nowMillis - fetchedAtMillis;
+
+        /* The clock went backwards, so we can't tell how old this is. Don't trust it. */
+        if (age < 0) return STALE_REVALIDATE;
+
+        if (age < MAX_AGE_MILLIS) return FRESH;
+        age -= MAX_AGE_MILLIS;
+        if (age < STALE_WHILE_REVALIDATE_MILLIS) return STALE_REVALIDATE;
+        age -= STALE_WHILE_REVALIDATE_MILLIS;
+        if (age < STALE_IF_ERROR_MILLIS) return STALE_IF_ERROR;
+        return EXPIRED;
+    }
+
+    /**
+     * Looks up the cached response for a URL. This performs disk I/O and must not be called on
+     * the main thread.
+     *
+     * @param context Used to locate the cache directory
+     * @param url     The URL the response was fetched from
+     * @return The cached response, or null if there isn't one
+     */
+    public static ForecastResponseCache get(Context context, URL url) {
+        File entryFile = getEntryFile(context, url);
+        if (!entryFile.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)));
+
+            if (in.readInt() != ENTRY_MAGIC || in.readInt() != ENTRY_VERSION) return null;
+
+            long fetchedAtMillis = in.readLong();
+
+            /* Two URLs could hash to the same file name, however unlikely */
+            if (!url.toString().equals(in.readUTF())) return null;
+
+            /*
+             * Check the length before allocating for it. A corrupt entry could otherwise ask for
+             * gigabytes, and the OutOfMemoryError wouldn't be caught below. No body we stored is
+             * larger than the cache, or than the file it is in.
+             */
+            int bodyLength = in.readInt();
+            if (bodyLength < 0 || bodyLength > MAX_BYTES || bodyLength > entryFile.length()) {
+                throw new IOException("Cached response has an invalid length: " + bodyLength);
+            }
+            byte[] body = new byte[bodyLength];
+            in.readFully(body);
+
+            /* Reading an entry makes it the most recently used one */
+            entryFile.setLastModified(System.currentTimeMillis());
+
+            return new ForecastResponseCache(new String(body, UTF_8), fetchedAtMillis);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to read cached response, discarding it", e);
+            entryFile.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores a response, replacing any earlier response for the same URL, and then trims the
+     * cache to its limits. This performs disk I/O and must not be called on the main thread.
+     *
+     * @param context         Used to locate the cache directory
+     * @param url             The URL the response was fetched from
+     * @param body            The body of the response
+     * @param fetchedAtMillis When the response was fetched, in milliseconds since the epoch
+     */
+    public static void put(Context context, URL url, String body, long fetchedAtMillis) {
+        File entryFile = getEntryFile(context, url);
+        File tempFile = new File(entryFile.getPath() + TEMP_SUFFIX);
+        byte[] bodyBytes = body.getBytes(UTF_8);
+
+        /* A response this large would push everything else out and then be trimmed itself */
+        if (bodyBytes.length > MAX_BYTES) return;
+
+        DataOutputStream out = null;
+        try {
+            entryFile.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(ENTRY_MAGIC);
+            out.writeInt(ENTRY_VERSION);
+            out.writeLong(fetchedAtMillis);
+            out.writeUTF(url.toString());
+            out.writeInt(bodyBytes.length);
+            out.write(bodyBytes);
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(entryFile)) {
+                Log.w(TAG, "Unable to move cached response into place");
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache response", e);
+            tempFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+
+        trim(context);
+    }
+
+    /**
+     * Deletes every cached response.
+     *
+     * @param context Used to locate the cache directory
+     */
+    public static void clear(Context context) {
+        File[] files = getCacheDirectory(context).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /* Deletes the least recently used entries until the cache is within both of its limits */
+    private static void trim(Context context) {
+        File[] files = getCacheDirectory(context).listFiles();
+        if (files == null) return;
+
+        /* Most recently used first */
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long modifiedA = a.lastModified();
+                long modifiedB = b.lastModified();
+                return modifiedA > modifiedB ? -1 : (modifiedA == modifiedB ? 0 : 1);
+            }
+        });
+
+        int entries = 0;
+        long bytes = 0;
+        for (File file : files) {
+            /* Leftovers from a write that was interrupted */
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+
+            entries++;
+            bytes += file.length();
+            if (entries > MAX_ENTRIES || bytes > MAX_BYTES) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File getCacheDirectory(Context context) {
+        return new File(context.getCacheDir(), CACHE_DIRECTORY);
+    }
+
+    private static File getEntryFile(Context context, URL url) {
+        return new File(getCacheDirectory(context), sha1Hex(url.toString()));
+    }
+
+    private static String sha1Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            /* Every Android device is required to provide SHA-1 */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            /* Nothing useful we can do here */
+        }
+    }
+}
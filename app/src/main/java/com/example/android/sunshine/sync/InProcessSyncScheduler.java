@@ -0,0 +1,191 @@
+package com.example.android.sunshine.sync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SyncScheduler that runs jobs itself, on a clock that only moves when advanceTo is called.
+ * Nothing here depends on Android, so it can stand in for the real schedulers in JVM tests and
+ * benchmarks, and a given sequence of calls always runs the same jobs at the same times.
+ * <p>
+ * Each job has a window in which it may run, from its interval after its last run to its flex
+ * after that. Like the platform's schedulers, this wakes up as late as it can: at the end of the
+ * earliest window. Every job whose window has opened by then runs in that same wake-up, so jobs
+ * with overlapping windows share one. getWakeUpCount tells how well that worked.
+ * <p>
+ * This class is not thread safe. Drive it from a single thread.
+ */
+public class InProcessSyncScheduler implements SyncScheduler {
+
+    /**
+     * Runs the jobs an InProcessSyncScheduler decides are due.
+     */
+    public interface JobRunner {
+
+        /**
+         * Runs a job. This may schedule or cancel jobs, including this one.
+         *
+         * @param job        The job that is due
+         * @param nowMillis  The scheduler's clock at this wake-up
+         * @return true if the run failed and should be retried after the job's backoff, as with
+         * JobService.jobFinished
+         */
+        boolean run(SyncJob job, long nowMillis);
+    }
+
+    /* A scheduled job and where it stands */
+    private static class ScheduledJob {
+        final SyncJob job;
+        long windowStartMillis;
+        long windowEndMillis;
+        long backoffMillis;
+
+        ScheduledJob(SyncJob job) {
+            this.job = job;
+        }
+    }
+
+    private final JobRunner mRunner;
+
+    /* Kept in the order jobs were scheduled in, which is also the order due jobs run in */
+    private final Map<String, ScheduledJob> mJobs = new LinkedHashMap<>();
+
+    private long mNowMillis;
+    private int mWakeUpCount;
+    private int mRunCount;
+
+    /**
+     * @param runner      Runs jobs when they are due
+     * @param startMillis What the clock reads until advanceTo is first called
+     */
+    public InProcessSyncScheduler(JobRunner runner, long startMillis) {
+        mRunner = runner;
+        mNowMillis = startMillis;
+    }
+
+    @Override
+    public boolean schedule(SyncJob job) {
+        ScheduledJob scheduled = new ScheduledJob(job);
+        scheduleNextRun(scheduled);
+        mJobs.put(job.getTag(), scheduled);
+        return true;
+    }
+
+    @Override
+    public void cancel(String tag) {
+        mJobs.remove(tag);
+    }
+
+    @Override
+    public String getName() {
+        return "inprocess";
+    }
+
+    /**
+     * @return The time on the scheduler's clock
+     */
+    public long getNowMillis() {
+        return mNowMillis;
+    }
+
+    /**
+     * @return When the scheduler will next wake up, or Long.MAX_VALUE if no jobs are scheduled
+     */
+    public long getNextWakeUpMillis() {
+        long next = Long.MAX_VALUE;
+        for (ScheduledJob scheduled : mJobs.values()) {
+            next = Math.min(next, scheduled.windowEndMillis);
+        }
+        return next;
+    }
+
+    /**
+     * Moves the clock forward, waking up and running due jobs at every point along the way they
+     * would have been run at.
+     *
+     * @param millis The time to move the clock to. Times in the past are ignored.
+     * @return The number of wake-ups that happened
+     */
+    public int advanceTo(long millis) {
+        int wakeUps = 0;
+        long next = getNextWakeUpMillis();
+        while (next <= millis) {
+            mNowMillis = Math.max(mNowMillis, next);
+            wakeUp();
+            wakeUps++;
+            next = getNextWakeUpMillis();
+        }
+        mNowMillis = Math.max(mNowMillis, millis);
+        return wakeUps;
+    }
+
+    /**
+     * @return How many times the scheduler has woken up to run jobs
+     */
+    public int getWakeUpCount() {
+        return mWakeUpCount;
+    }
+
+    /**
+     * @return How many jobs the scheduler has run, across all of its wake-ups
+     */
+    public int getRunCount() {
+        return mRunCount;
+    }
+
+    /* Runs every job whose window has opened, in one batch */
+    private void wakeUp() {
+        mWakeUpCount++;
+
+        /* Collect the batch first, as running a job may change which jobs are scheduled */
+        List<ScheduledJob> due = new ArrayList<>();
+        for (ScheduledJob scheduled : mJobs.values()) {
+            if (scheduled.windowStartMillis <= mNowMillis) {
+                due.add(scheduled);
+            }
+        }
+
+        for (ScheduledJob scheduled : due) {
+            /* The job may have been cancelled or replaced by a job run earlier in this batch */
+            if (mJobs.get(scheduled.job.getTag()) != scheduled) continue;
+
+            mRunCount++;
+            boolean needsRetry = mRunner.run(scheduled.job, mNowMillis);
+
+            if (mJobs.get(scheduled.job.getTag()) != scheduled) continue;
+
+            if (needsRetry) {
+                scheduleRetry(scheduled);
+            } else {
+                scheduled.backoffMillis = 0;
+                scheduleNextRun(scheduled);
+            }
+        }
+    }
+
+    private void scheduleNextRun(ScheduledJob scheduled) {
+        SyncJob job = scheduled.job;
+        scheduled.windowStartMillis = mNowMillis
+                + TimeUnit.SECONDS.toMillis(job.getIntervalSeconds());
+        scheduled.windowEndMillis = scheduled.windowStartMillis
+                + TimeUnit.SECONDS.toMillis(job.getFlexSeconds());
+    }
+
+    /* Retries happen exactly when their backoff runs out, doubling each time up to the maximum */
+    private void scheduleRetry(ScheduledJob scheduled) {
+        SyncJob job = scheduled.job;
+        long maxBackoffMillis = TimeUnit.SECONDS.toMillis(job.getMaxBackoffSeconds());
+        if (scheduled.backoffMillis == 0) {
+            scheduled.backoffMillis = TimeUnit.SECONDS.toMillis(job.getInitialBackoffSeconds());
+        } else {
+            scheduled.backoffMillis = scheduled.backoffMillis * 2;
+        }
+        scheduled.backoffMillis = Math.min(scheduled.backoffMillis, maxBackoffMillis);
+
+        scheduled.windowStartMillis = mNowMillis + scheduled.backoffMillis;
+        scheduled.windowEndMillis = scheduled.windowStartMillis;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.sunshine.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules SyncJobs with the platform's JobScheduler, which runs them using
+ * SunshineJobSchedulerService. Unlike FirebaseSyncScheduler, this doesn't need Google Play
+ * services, and the system batches our job with every other app's periodic work.
+ * <p>
+ * JobScheduler caps exponential backoff itself, so SyncJob's maximum backoff is not used here.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class JobSchedulerSyncScheduler implements SyncScheduler {
+
+    /* What getName returns, and what SunshineSyncUtils finds this backend by */
+    static final String NAME = "jobscheduler";
+
+    private final Context mContext;
+    private final JobScheduler mJobScheduler;
+
+    /**
+     * @param context Used to reach the JobScheduler and to name the service that runs our jobs
+     */
+    public JobSchedulerSyncScheduler(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mJobScheduler = (JobScheduler) mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    /**
+     * @return Whether this device has a JobScheduler
+     */
+    public static boolean isAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    @Override
+    public boolean schedule(SyncJob job) {
+        long intervalMillis = TimeUnit.SECONDS.toMillis(job.getIntervalSeconds());
+
+        JobInfo.Builder builder = new JobInfo.Builder(getJobId(job.getTag()),
+                new ComponentName(mContext, SunshineJobSchedulerService.class))
+                .setRequiredNetworkType(job.requiresNetwork()
+                        ? JobInfo.NETWORK_TYPE_ANY : JobInfo.NETWORK_TYPE_NONE)
+                // Keeps the job across reboots, which needs RECEIVE_BOOT_COMPLETED
+                .setPersisted(true)
+                .setBackoffCriteria(TimeUnit.SECONDS.toMillis(job.getInitialBackoffSeconds()),
+                        JobInfo.BACKOFF_POLICY_EXPONENTIAL);
+
+        /*
+         * Before N, a periodic job can't say how much leeway it has, and the system picks
+         * somewhere in the interval on its own.
+         */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            builder.setPeriodic(intervalMillis,
+                    TimeUnit.SECONDS.toMillis(job.getFlexSeconds()));
+        } else {
+            builder.setPeriodic(intervalMillis);
+        }
+
+        /* Scheduling a job with an ID that is already scheduled replaces it */
+        return mJobScheduler.schedule(builder.build()) == JobScheduler.RESULT_SUCCESS;
+    }
+
+    @Override
+    public void cancel(String tag) {
+        mJobScheduler.cancel(getJobId(tag));
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /* JobScheduler identifies jobs by an int rather than a tag */
+    private static int getJobId(String tag) {
+        return tag.hashCode();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.android.sunshine.sync;
+
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.utilities.SunshineClock;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a sync should tell the user about the weather it just stored. Most syncs
+ * shouldn't: the periodic sync runs several times a day, and today's forecast rarely changes
+ * enough between two of them to be worth a notification.
+ * <p>
+ * A sync notifies only if all of these hold:
+ * <ul>
+ * <li>The user has notifications enabled, and the new forecast includes today.</li>
+ * <li>It isn't quiet hours. A notification skipped for quiet hours isn't lost; the first sync
+ * after they end decides again.</li>
+ * <li>Either the last notification was {@link #THROTTLE_MILLIS} ago or more, or it was about
+ * today and today's forecast has changed meaningfully since. A meaningful change is a different
+ * kind of weather, or a high or low at least {@link #TEMPERATURE_DELTA} degrees away from the
+ * one we showed. Even then, we wait {@link #MIN_CHANGE_INTERVAL_MILLIS} between two
+ * notifications.</li>
+ * </ul>
+ * Syncs usually run in a fresh process started by the job scheduler, so what was last shown is
+ * kept in SharedPreferences rather than in memory.
+ */
+public final class NotificationPolicy {
+
+    /* The possible outcomes of decide */
+    public static final int NOTIFY = 0;
+    public static final int SKIP_DISABLED = 1;
+    public static final int SKIP_NO_TODAY = 2;
+    public static final int SKIP_QUIET_HOURS = 3;
+    public static final int SKIP_THROTTLED = 4;
+    public static final int SKIP_UNCHANGED = 5;
+
+    /* The number of decisions above, for anyone counting them */
+    public static final int DECISION_COUNT = 6;
+
+    public static final long THROTTLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final long MIN_CHANGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+    /* Temperatures are stored in Celsius, whatever units the user has chosen */
+    public static final double TEMPERATURE_DELTA = 3.0;
+
+    /* 22:00 to 07:00, in minutes after local midnight */
+    public static final int DEFAULT_QUIET_START_MINUTE = 22 * 60;
+    public static final int DEFAULT_QUIET_END_MINUTE = 7 * 60;
+
+    private static final String KEY_NOTIFIED_AT = "notified_at";
+    private static final String KEY_DATE = "date";
+    private static final String KEY_WEATHER_ID = "weather_id";
+    private static final String KEY_MAX_TEMP = "max_temp";
+    private static final String KEY_MIN_TEMP = "min_temp";
+
+    private final SharedPreferences mPreferences;
+    private final int mQuietStartMinute;
+    private final int mQuietEndMinute;
+
+    /**
+     * @param preferences      Where the last notification is remembered. Use a file of its own.
+     * @param quietStartMinute When quiet hours start, in minutes after local midnight
+     * @param quietEndMinute   When quiet hours end, in minutes after local midnight. Quiet hours
+     *                         may span midnight. Pass the same value as quietStartMinute for no
+     *                         quiet hours.
+     */
+    public NotificationPolicy(SharedPreferences preferences,
+                              int quietStartMinute, int quietEndMinute) {
+        mPreferences = preferences;
+        mQuietStartMinute = quietStartMinute;
+        mQuietEndMinute = quietEndMinute;
+    }
+
+    /**
+     * @param nowMillis            The current time, in milliseconds since the epoch
+     * @param notificationsEnabled Whether the user wants notifications at all
+     * @param forecast             The forecast that was just stored
+     * @return NOTIFY, or one of the SKIP_* constants saying why not
+     */
+    public synchronized int decide(long nowMillis, boolean notificationsEnabled,
+                                   ForecastBatch forecast) {
+        if (!notificationsEnabled) return SKIP_DISABLED;
+
+        long today = getNormalizedUtcDate(nowMillis);
+        int todayIndex = forecast.indexOf(today);
+        if (todayIndex < 0) return SKIP_NO_TODAY;
+
+        if (isQuietHours(nowMillis)) return SKIP_QUIET_HOURS;
+
+        if (!mPreferences.contains(KEY_NOTIFIED_AT)) return NOTIFY;
+
+        long sinceLastNotification = nowMillis - mPreferences.getLong(KEY_NOTIFIED_AT, 0);
+
+        /* A clock that went backwards shouldn't silence us for good */
+        if (sinceLastNotification < 0 || sinceLastNotification >= THROTTLE_MILLIS) {
+            return NOTIFY;
+        }
+        if (sinceLastNotification < MIN_CHANGE_INTERVAL_MILLIS) return SKIP_THROTTLED;
+
+        /* A notification about another day says nothing about how today has changed */
+        if (mPreferences.getLong(KEY_DATE, 0) != today) return SKIP_THROTTLED;
+
+        return hasChangedMeaningfully(forecast.weatherIds[todayIndex],
+                forecast.maxTemps[todayIndex], forecast.minTemps[todayIndex])
+                ? NOTIFY : SKIP_UNCHANGED;
+    }
+
+    /**
+     * Remembers that today's weather from a forecast was just shown, for later decisions.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch
+     * @param forecast  The forecast the notification was made from
+     */
+    public synchronized void recordNotified(long nowMillis, ForecastBatch forecast) {
+        long today = getNormalizedUtcDate(nowMillis);
+        int todayIndex = forecast.indexOf(today);
+        if (todayIndex < 0) return;
+
+        mPreferences.edit()
+                .putLong(KEY_NOTIFIED_AT, nowMillis)
+                .putLong(KEY_DATE, today)
+                .putInt(KEY_WEATHER_ID, forecast.weatherIds[todayIndex])
+                .putLong(KEY_MAX_TEMP, Double.doubleToRawLongBits(forecast.maxTemps[todayIndex]))
+                .putLong(KEY_MIN_TEMP, Double.doubleToRawLongBits(forecast.minTemps[todayIndex]))
+                .apply();
+    }
+
+    private boolean hasChangedMeaningfully(int weatherId, double maxTemp, double minTemp) {
+        int lastWeatherId = mPreferences.getInt(KEY_WEATHER_ID, 0);
+        double lastMaxTemp = Double.longBitsToDouble(mPreferences.getLong(KEY_MAX_TEMP, 0));
+        double lastMinTemp = Double.longBitsToDouble(mPreferences.getLong(KEY_MIN_TEMP, 0));
+
+        return getConditionClass(weatherId) != getConditionClass(lastWeatherId)
+                || Math.abs(maxTemp - lastMaxTemp) >= TEMPERATURE_DELTA
+                || Math.abs(minTemp - lastMinTemp) >= TEMPERATURE_DELTA;
+    }
+
+    /**
+     * Groups OpenWeatherMap condition codes into the kinds of weather a user would notice
+     * changing between: thunderstorm (2xx), drizzle (3xx), rain (5xx), snow (6xx), atmosphere
+     * such as fog (7xx), clear (800) and clouds (80x). Going from light to moderate rain, or from
+     * scattered to broken clouds, is not a change.
+     *
+     * @param weatherId ID as determined by Open Weather Map
+     * @return A number identifying the kind of weather
+     */
+    static int getConditionClass(int weatherId) {
+        /* Clear skies share the 8xx range with clouds, but are worth telling apart */
+        if (weatherId == 800) return 0;
+        return weatherId / 100;
+    }
+
+    private boolean isQuietHours(long nowMillis) {
+        if (mQuietStartMinute == mQuietEndMinute) return false;
+
+        Calendar calendar = Calendar.getInstance(SunshineClock.getTimeZone());
+        calendar.setTimeInMillis(nowMillis);
+        int minute = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+
+        if (mQuietStartMinute < mQuietEndMinute) {
+            return minute >= mQuietStartMinute && minute < mQuietEndMinute;
+        }
+        /* Quiet hours span midnight */
+        return minute >= mQuietStartMinute || minute < mQuietEndMinute;
+    }
+
+    /*
+     * The same date SunshineDateUtils.getNormalizedUtcDateForToday returns, but for any time
+     * rather than only now.
+     */
+    private static long getNormalizedUtcDate(long millis) {
+        long localMillis = millis + SunshineClock.getTimeZone().getOffset(millis);
+        return TimeUnit.DAYS.toMillis(TimeUnit.MILLISECONDS.toDays(localMillis));
+    }
+}
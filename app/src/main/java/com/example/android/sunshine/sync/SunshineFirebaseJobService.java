@@ -10,7 +10,7 @@ import com.firebase.jobdispatcher.RetryStrategy;
 
 public class SunshineFirebaseJobService extends JobService{
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    private AsyncTask<Void, Void, Integer> mFetchWeatherTask;
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -26,18 +26,22 @@ public class SunshineFirebaseJobService extends JobService{
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>() {
+        mFetchWeatherTask = new AsyncTask<Void, Void, Integer>() {
             @Override
-            protected Void doInBackground(Void... voids) {
+            protected Integer doInBackground(Void... voids) {
                 Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                return null;
+                return SunshineSyncTask.syncWeather(context);
             }
 
             @Override
-            protected void onPostExecute(Void aVoid) {
-                // After data is synced, call jobFinished
-                jobFinished(jobParameters, false);
+            protected void onPostExecute(Integer syncResult) {
+                /*
+                 * After data is synced, call jobFinished. If the sync failed in a way that is
+                 * likely to go away, ask for the job to be rescheduled according to its
+                 * RetryStrategy rather than leaving the data stale until the next periodic sync.
+                 */
+                boolean needsReschedule = syncResult == SunshineSyncTask.SYNC_RESULT_RETRY;
+                jobFinished(jobParameters, needsReschedule);
             }
         };
 
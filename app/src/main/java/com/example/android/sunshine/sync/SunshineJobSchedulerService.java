@@ -0,0 +1,59 @@
+package com.example.android.sunshine.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Runs the sync when JobSchedulerSyncScheduler's job is due. This is the platform JobScheduler's
+ * counterpart to SunshineFirebaseJobService, and works the same way.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class SunshineJobSchedulerService extends JobService {
+
+    private AsyncTask<Void, Void, Integer> mFetchWeatherTask;
+
+    /**
+     * Called on the main thread when the job is due, so the sync runs on a background thread.
+     *
+     * @return whether there is more work remaining.
+     */
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+
+        mFetchWeatherTask = new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... voids) {
+                Context context = getApplicationContext();
+                return SunshineSyncTask.syncWeather(context);
+            }
+
+            @Override
+            protected void onPostExecute(Integer syncResult) {
+                /* As in SunshineFirebaseJobService, back off and retry failures that may go away */
+                boolean needsReschedule = syncResult == SunshineSyncTask.SYNC_RESULT_RETRY;
+                jobFinished(jobParameters, needsReschedule);
+            }
+        };
+
+        mFetchWeatherTask.execute();
+        return true;
+    }
+
+    /**
+     * Called when the system stops the job before it finishes, most likely because the network
+     * went away.
+     *
+     * @return whether the job should be retried
+     */
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        if (mFetchWeatherTask != null) {
+            mFetchWeatherTask.cancel(true);
+        }
+        return true;
+    }
+}
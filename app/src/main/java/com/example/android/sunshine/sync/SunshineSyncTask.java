@@ -1,97 +1,280 @@
 package com.example.android.sunshine.sync;
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
-import android.text.format.DateUtils;
+import android.content.SharedPreferences;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCodec;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.PreferenceWriter;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.ForecastSinks;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.ParsedForecast;
+import com.example.android.sunshine.utilities.SunshineClock;
 
+import org.json.JSONException;
+
+import java.io.IOException;
 import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /* The possible outcomes of syncWeather */
+    public static final int SYNC_RESULT_SUCCESS = 0;
+    /* The sync failed in a way that is likely to go away, so it should be run again soon */
+    public static final int SYNC_RESULT_RETRY = 1;
+    /* The sync failed in a way that running it again soon won't fix */
+    public static final int SYNC_RESULT_FAILED = 2;
+
+    /* The file the circuit breaker keeps its state in */
+    private static final String CIRCUIT_BREAKER_PREFERENCES = "sync_circuit_breaker";
+
+    /* The file the notification policy remembers the last notification in */
+    private static final String NOTIFICATION_POLICY_PREFERENCES = "notification_policy";
+
+    /*
+     * After this many failed fetches in a row, stop contacting the server for a while. Each sync
+     * makes up to three attempts, so this is roughly two syncs' worth of failures.
+     */
+    private static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 6;
+    private static final long CIRCUIT_BREAKER_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long CIRCUIT_BREAKER_MAX_OPEN_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+    private static final SyncRetryPolicy sRetryPolicy = new SyncRetryPolicy(new Random());
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * How long each stage takes, how much was downloaded and written, and why a sync failed are
+     * recorded in {@link SyncMetrics}.
+     * <p>
+     * Transient network failures are retried within the sync according to
+     * {@link SyncRetryPolicy}, and a {@link CircuitBreaker} stops us contacting a server that
+     * keeps failing.
+     * <p>
+     * Only storing a forecast holds the class lock, so that two syncs never write the database
+     * at the same time. Fetching, and sleeping between retries, doesn't, so a sync waiting to
+     * retry never blocks another one.
+     * <p>
+     * Every response is kept in the {@link ForecastResponseCache}. While the cached response is
+     * fresh, the sync inserts it and doesn't touch the network at all. That rebuilds the
+     * database after a wipe or migration, and writes nothing when the database already holds
+     * it. A slightly stale response is inserted before fetching a new one, and a very stale one
+     * is only inserted if the fetch fails.
      *
      * @param context Used to access utility methods and the ContentResolver
+     * @return SYNC_RESULT_SUCCESS, SYNC_RESULT_RETRY if the sync should be run again soon, or
+     * SYNC_RESULT_FAILED if it shouldn't
      */
-    synchronized public static void syncWeather(Context context){
+    public static int syncWeather(Context context){
+        long syncStart = System.nanoTime();
         try{
+            long stageStart = System.nanoTime();
+
             /*
              * The getUrl method will return the URL that we need to get the forecast JSON for the
              * weather. It will decide whether to create a URL based off of the latitude and
              * longitude or off of a simple location as a String.
              */
             URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            SyncMetrics.recordStage(SyncMetrics.STAGE_BUILD_URL, System.nanoTime() - stageStart);
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            ForecastResponseCache cachedResponse =
+                    ForecastResponseCache.get(context, weatherRequestUrl);
+            int freshness = cachedResponse == null
+                    ? ForecastResponseCache.EXPIRED
+                    : cachedResponse.getFreshness(SunshineClock.currentTimeMillis());
+            SyncMetrics.recordCacheLookup(freshness);
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+            if (freshness == ForecastResponseCache.FRESH
+                    || freshness == ForecastResponseCache.STALE_REVALIDATE) {
+                storeForecast(context, cachedResponse.body, false);
+
+                if (freshness == ForecastResponseCache.FRESH) {
+                    SyncMetrics.recordSuccess();
+                    return SYNC_RESULT_SUCCESS;
+                }
+            }
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
+             * Use the URL to retrieve the JSON, retrying if the failure looks transient.
+             * NetworkUtils records the connect and download stages itself, since only it can
+             * tell them apart.
              */
+            String jsonWeatherResponse;
+            try {
+                jsonWeatherResponse = sRetryPolicy.fetchWithRetries(
+                        weatherRequestUrl, getCircuitBreaker(context));
+            } catch (IOException e) {
+                /*
+                 * A stale forecast is better than none, but the sync still failed, so we report
+                 * the failure and let it be retried.
+                 */
+                if (freshness == ForecastResponseCache.STALE_IF_ERROR) {
+                    SyncMetrics.recordCacheFallback();
+                    storeForecast(context, cachedResponse.body, false);
+                }
+                throw e;
+            }
 
-            if(weatherValues != null && weatherValues.length != 0){
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
+            /* Only cache responses we could actually use */
+            if (storeForecast(context, jsonWeatherResponse, true)) {
+                ForecastResponseCache.put(context, weatherRequestUrl, jsonWeatherResponse,
+                        SunshineClock.currentTimeMillis());
+            }
 
-                /* If results aren't null, delete old data and insert the new data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            /* Sync is successful when reaching this point */
+            SyncMetrics.recordSuccess();
+            return SYNC_RESULT_SUCCESS;
 
-                /* Insert new weather data into Sunshine Content Provider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+        } catch (InterruptedException e) {
+            /*
+             * We were told to stop while waiting to retry. Keep the interrupt for whoever runs
+             * us, and have the sync run again later, as nothing went wrong with the server.
+             */
+            Thread.currentThread().interrupt();
+            SyncMetrics.recordFailure(e);
+            return SYNC_RESULT_RETRY;
+        }catch (Exception e) {
+            /* Server probably invalid */
+            Log.e(TAG, "Weather sync failed", e);
+            SyncMetrics.recordFailure(e);
 
-                /*
-                * Lastly, after inserting data into ContentProvider, determine if system needs to
-                * notify users that data is refreshed
-                */
-                boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+            int errorClass = SyncRetryPolicy.classify(e);
+            return sRetryPolicy.isRetryable(errorClass) ? SYNC_RESULT_RETRY : SYNC_RESULT_FAILED;
+        } finally {
+            SyncMetrics.recordStage(SyncMetrics.STAGE_TOTAL, System.nanoTime() - syncStart);
+        }
+    }
 
-                /*
-                * If last notification was shown more than one day ago, the system should send
-                * another notification to notify weather is updated.
-                */
-                long timeSinceLastNotification = SunshinePreferences
-                        .getEllapsedTimeSinceLastNotification(context);
+    /**
+     * Parses a forecast response and writes it to the ContentProvider and the forecast snapshot,
+     * then notifies the user if they want to be notified.
+     *
+     * @param context             Used to access utility methods and the ContentResolver
+     * @param jsonWeatherResponse The body of a forecast response, either just fetched or cached
+     * @param isNewWeather        true if the response was just fetched. Responses replayed from
+     *                            the cache never notify the user.
+     * @return true if the response contained weather to store
+     * @throws JSONException If the response couldn't be parsed
+     */
+    synchronized private static boolean storeForecast(Context context, String jsonWeatherResponse,
+                                                      boolean isNewWeather) throws JSONException {
+        /*
+         * Parse the JSON once, into a batch of weather values. The location's coordinates are
+         * only staged from the same pass; they are written after the weather is stored.
+         */
+        long stageStart = System.nanoTime();
+        ParsedForecast forecast = new ParsedForecast();
+        PreferenceWriter preferenceWriter = SunshinePreferences.newWriter(context);
+        boolean parsed = OpenWeatherJsonUtils.parseForecast(jsonWeatherResponse,
+                forecast, ForecastSinks.stageLocation(preferenceWriter));
+        SyncMetrics.recordStage(SyncMetrics.STAGE_PARSE, System.nanoTime() - stageStart);
 
-                boolean oneDayPassedSinceLastNotification = true;
+        /*
+         * In cases where our JSON contained an error code, parseForecast would have returned
+         * false. We also have no reason to insert fresh data if there isn't any to insert.
+         */
+        if (!parsed || forecast.getDays().count == 0) {
+            return false;
+        }
+        ForecastBatch forecastBatch = forecast.getDays();
 
-                // Check if a day has passed since previous notification
-                if(timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS){
-                    oneDayPassedSinceLastNotification = true;
-                }
+        /* Get a handle on the ContentResolver to delete and insert data */
+        ContentResolver sunshineContentResolver = context.getContentResolver();
 
-                // Only notify user if user wants them and haven't shown in past day
-                if(notificationsEnabled && oneDayPassedSinceLastNotification){
-                    NotificationUtils.notifyUserOfNewWeather(context);
-                }
-            }
+        /*
+         * If results aren't null, delete the days that are no longer part of the
+         * forecast. Days that are part of it are replaced by the batch insert, which leaves
+         * the days that didn't change untouched so that their observers aren't woken.
+         */
+        stageStart = System.nanoTime();
+        long firstDate = forecastBatch.getFirstDate();
+        long lastDate = forecastBatch.getLastDate();
 
-            /* Sync is successful when reaching this point */
+        sunshineContentResolver.delete(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " < ? OR "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " > ?",
+                new String[]{Long.toString(firstDate), Long.toString(lastDate)});
+        SyncMetrics.recordStage(SyncMetrics.STAGE_DELETE, System.nanoTime() - stageStart);
 
-        }catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+        /*
+         * Insert new weather data into Sunshine Content Provider. The batch goes over as a
+         * single packed byte array per slice, and the provider binds its columns straight into
+         * a compiled insert statement.
+         */
+        stageStart = System.nanoTime();
+        int rowsWritten = ForecastBatchCodec.put(sunshineContentResolver, forecastBatch);
+
+        /*
+         * Save a preformatted copy of the forecast so that MainActivity can display it
+         * on its next cold start without waiting for the database. This is counted as
+         * part of the insert stage, as it is part of storing the new forecast.
+         */
+        ForecastSnapshot.write(context, forecastBatch);
+
+        /*
+         * Now that the weather is stored, save the location's coordinates. They rarely change,
+         * so this usually writes nothing, and when it does, the file is written in the
+         * background.
+         */
+        preferenceWriter.apply();
+        SyncMetrics.recordStage(SyncMetrics.STAGE_INSERT, System.nanoTime() - stageStart);
+        SyncMetrics.recordRowsWritten(rowsWritten);
+
+        /* Weather replayed from the cache isn't news to the user */
+        if (!isNewWeather) {
+            return true;
+        }
+
+        /*
+         * Lastly, after inserting data into ContentProvider, determine if the user should be
+         * told about it. Most syncs shouldn't; see NotificationPolicy.
+         */
+        stageStart = System.nanoTime();
+        long now = SunshineClock.currentTimeMillis();
+        NotificationPolicy notificationPolicy = getNotificationPolicy(context);
+        int decision = notificationPolicy.decide(now,
+                SunshinePreferences.areNotificationsEnabled(context), forecastBatch);
+        SyncMetrics.recordNotificationDecision(decision);
+
+        if (decision == NotificationPolicy.NOTIFY) {
+            NotificationUtils.notifyUserOfNewWeather(context, forecastBatch);
+            notificationPolicy.recordNotified(now, forecastBatch);
         }
+        SyncMetrics.recordStage(SyncMetrics.STAGE_NOTIFY, System.nanoTime() - stageStart);
+
+        return true;
+    }
+
+    private static NotificationPolicy getNotificationPolicy(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(
+                NOTIFICATION_POLICY_PREFERENCES, Context.MODE_PRIVATE);
+        return new NotificationPolicy(preferences,
+                NotificationPolicy.DEFAULT_QUIET_START_MINUTE,
+                NotificationPolicy.DEFAULT_QUIET_END_MINUTE);
+    }
+
+    private static CircuitBreaker getCircuitBreaker(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(
+                CIRCUIT_BREAKER_PREFERENCES, Context.MODE_PRIVATE);
+        return new CircuitBreaker(preferences,
+                CIRCUIT_BREAKER_FAILURE_THRESHOLD,
+                CIRCUIT_BREAKER_OPEN_MILLIS,
+                CIRCUIT_BREAKER_MAX_OPEN_MILLIS);
     }
 }
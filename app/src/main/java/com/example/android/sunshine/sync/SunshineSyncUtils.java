@@ -2,22 +2,17 @@ package com.example.android.sunshine.sync;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 
-import com.firebase.jobdispatcher.Constraint;
-import com.firebase.jobdispatcher.Driver;
-import com.firebase.jobdispatcher.FirebaseJobDispatcher;
-import com.firebase.jobdispatcher.GooglePlayDriver;
-import com.firebase.jobdispatcher.Job;
-import com.firebase.jobdispatcher.Lifetime;
-import com.firebase.jobdispatcher.Trigger;
-
 import java.util.concurrent.TimeUnit;
 
+import com.example.android.sunshine.BuildConfig;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.SunshineClock;
 
 public class SunshineSyncUtils {
 
@@ -30,62 +25,203 @@ public class SunshineSyncUtils {
     private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
     private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
 
+    /*
+     * When a sync fails in a way that is likely to go away, the job is rescheduled with an
+     * exponential backoff starting here. The sync has already retried a few times by then, so
+     * this is measured in minutes rather than seconds.
+     */
+    private static final int SYNC_RETRY_INITIAL_BACKOFF_SECONDS =
+            (int) TimeUnit.MINUTES.toSeconds(1);
+    private static final int SYNC_RETRY_MAX_BACKOFF_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
 
     private static boolean sInitialized;
 
     // Used for identifying sync jobs
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
 
+    /*
+     * Bump this whenever the way SyncSchedulers build their jobs changes in a way the fingerprint
+     * below doesn't capture, such as a new service, so that the job is scheduled again.
+     */
+    private static final int SYNC_SCHEDULE_VERSION = 1;
+
+    /* The file the fingerprint of the last job we scheduled is kept in, and when it was */
+    private static final String SYNC_SCHEDULE_PREFERENCES = "sync_schedule";
+    private static final String KEY_SCHEDULE_FINGERPRINT = "fingerprint";
+    private static final String KEY_SCHEDULED_AT = "scheduled_at";
+
+    /*
+     * How long an unchanged schedule is trusted for. The backend can drop our job without telling
+     * us, such as when Play services' data is cleared or the app is force stopped, and neither of
+     * them can be asked cheaply whether it still has it. So once a day, the job is scheduled
+     * again anyway, which replaces it if it is still there.
+     */
+    static final long MAX_SCHEDULE_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static SyncScheduler sScheduler;
+
     /**
-     * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
-     * @param context Context used to create the GooglePlayDriver that powers the
-     *                FirebaseJobDispatcher
+     * Replaces the SyncScheduler Sunshine's sync is scheduled with, so that tests and benchmarks
+     * can use an InProcessSyncScheduler. Also forgets the last schedule, so that the next call to
+     * scheduleSyncIfChanged schedules the job with the new scheduler.
+     *
+     * @param context   Used to forget the last schedule
+     * @param scheduler The scheduler to use, or null to go back to choosing one for the device
      */
+    public static synchronized void setScheduler(@NonNull Context context,
+                                                 SyncScheduler scheduler) {
+        sScheduler = scheduler;
+        clearScheduleFingerprint(context);
+    }
 
-    static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context){
+    /**
+     * Returns the SyncScheduler the sync is scheduled with. Unless one was set with setScheduler,
+     * that is FirebaseJobDispatcher where Google Play services is available, and otherwise the
+     * platform's JobScheduler, so that devices without Play services still sync periodically.
+     *
+     * @param context Used to create the scheduler
+     * @return The scheduler to schedule the sync with
+     */
+    static synchronized SyncScheduler getScheduler(@NonNull Context context) {
+        if (sScheduler == null) {
+            Context appContext = context.getApplicationContext();
+            if (!FirebaseSyncScheduler.isAvailable(appContext)
+                    && JobSchedulerSyncScheduler.isAvailable()) {
+                sScheduler = new JobSchedulerSyncScheduler(appContext);
+            } else {
+                sScheduler = new FirebaseSyncScheduler(appContext);
+            }
+        }
+        return sScheduler;
+    }
 
-        Driver driver = new GooglePlayDriver(context);
+    /**
+     * @return The job that syncs Sunshine's weather data periodically. We want the data to sync
+     * every 3-4 hours, on any network. Metered networks are fine, though some users may prefer a
+     * preference for that. ($$$)
+     */
+    public static SyncJob getSyncJob() {
+        return new SyncJob(SUNSHINE_SYNC_TAG,
+                SYNC_INTERVAL_SECONDS,
+                SYNC_FLEXTIME_SECONDS,
+                true,
+                SYNC_RETRY_INITIAL_BACKOFF_SECONDS,
+                SYNC_RETRY_MAX_BACKOFF_SECONDS);
+    }
 
-        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
+    /**
+     * Describes everything about scheduling the sync job that scheduling it again would change:
+     * the job itself, the scheduler it goes to, our version of it, and the app's version. Two
+     * schedules with the same fingerprint are the same.
+     *
+     * @param scheduler The scheduler the job would be scheduled with
+     * @param job       The job to schedule
+     * @return The fingerprint of scheduling job with scheduler
+     */
+    private static String getScheduleFingerprint(SyncScheduler scheduler, SyncJob job) {
+        return SYNC_SCHEDULE_VERSION
+                + "|" + BuildConfig.VERSION_CODE
+                + "|" + scheduler.getName()
+                + "|" + job.getFingerprint();
+    }
 
-        // Create job to periodically sync weather data
-        Job syncSunshineJob = dispatcher.newJobBuilder()
-        // Service that will be used for syncing data
-        .setService(SunshineFirebaseJobService.class)
-                // Set the UNIQUE tag used to identify this Job
-                .setTag(SUNSHINE_SYNC_TAG)
-                /*
-                 * Network constraints on which this Job should run. We choose to run on any
-                 * network, but you can also choose to run only on un-metered networks or when the
-                 * device is charging. It might be a good idea to include a preference for this,
-                 * as some users may not want to download any data on their mobile plan. ($$$)
-                 */
-                .setConstraints(Constraint.ON_ANY_NETWORK)
-                // Sets how long job should persist. Options: keep "forever" or die on next boot
-                .setLifetime(Lifetime.FOREVER)
-                // Set to recur to ensure data stays up to date
-                .setRecurring(true)
-                /*
-                * We want the data to sync every 3-4 hours. First argument for Trigger's
-                * static executionWindow method is the start of the time frame when
-                * the sync should be done. The second argument is the latest point when
-                * the data should be synced. Note: this end time isn't guaranteed, but is more
-                * of a guideline for the the dispatcher to go off of
-                * */
-                .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
-                // If Job with given tag already exists, this new job will replace it
-                .setReplaceCurrent(true)
-                .build();
-
-        // Schedule Job with the dispatcher
-        dispatcher.schedule(syncSunshineJob);
+    /**
+     * Schedules the repeating sync, unless the job already scheduled is the same one and was
+     * scheduled less than {@link #MAX_SCHEDULE_AGE_MILLIS} ago. The job scheduler keeps our job
+     * across app restarts, and scheduling it again only replaces it with an identical job, so
+     * most app starts have nothing to do here.
+     * <p>
+     * This may talk to Google Play services and must not be called on the main thread.
+     *
+     * @param context Used to schedule the job and to remember what was scheduled
+     * @return true if the job was scheduled, false if it already was or scheduling failed
+     */
+    public static boolean scheduleSyncIfChanged(@NonNull Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(
+                SYNC_SCHEDULE_PREFERENCES, Context.MODE_PRIVATE);
+        SyncScheduler scheduler = getScheduler(context);
+        SyncJob job = getSyncJob();
+        String fingerprint = getScheduleFingerprint(scheduler, job);
+        String lastFingerprint = preferences.getString(KEY_SCHEDULE_FINGERPRINT, null);
+        long now = SunshineClock.currentTimeMillis();
+
+        /* A schedule from the future means the clock was turned back; don't trust it either */
+        long age = now - preferences.getLong(KEY_SCHEDULED_AT, 0);
+        if (fingerprint.equals(lastFingerprint) && age >= 0 && age < MAX_SCHEDULE_AGE_MILLIS) {
+            return false;
+        }
+
+        /*
+         * If Google Play services came or went since the job was scheduled, it was scheduled on
+         * the other backend, where it would keep running alongside the one we schedule now.
+         */
+        cancelOnPreviousBackend(context, scheduler, lastFingerprint);
+
+        /* Only remember schedules that worked, so that a failed one is tried again next time */
+        if (!scheduler.schedule(job)) {
+            return false;
+        }
+
+        preferences.edit()
+                .putString(KEY_SCHEDULE_FINGERPRINT, fingerprint)
+                .putLong(KEY_SCHEDULED_AT, now)
+                .apply();
+        return true;
+    }
+
+    /**
+     * Cancels the sync job on the backend it was last scheduled with, if that isn't the one
+     * about to schedule it. The backend is found by the name recorded in the fingerprint.
+     *
+     * @param context         Used to create the previous backend
+     * @param scheduler       The backend the job is about to be scheduled with
+     * @param lastFingerprint The fingerprint of the last schedule, or null if there was none
+     */
+    private static void cancelOnPreviousBackend(@NonNull Context context, SyncScheduler scheduler,
+                                                String lastFingerprint) {
+        if (lastFingerprint == null) return;
+
+        /* The fingerprint is version|app version|backend|job; see getScheduleFingerprint */
+        String[] parts = lastFingerprint.split("\\|", 4);
+        if (parts.length < 4 || parts[2].equals(scheduler.getName())) return;
+        String previousName = parts[2];
+
+        Context appContext = context.getApplicationContext();
+        SyncScheduler previous = null;
+        if (FirebaseSyncScheduler.NAME.equals(previousName)) {
+            previous = new FirebaseSyncScheduler(appContext);
+        } else if (JobSchedulerSyncScheduler.NAME.equals(previousName)
+                && JobSchedulerSyncScheduler.isAvailable()) {
+            previous = new JobSchedulerSyncScheduler(appContext);
+        }
+
+        /* Other backends, like InProcessSyncScheduler, don't outlive the process */
+        if (previous != null) {
+            previous.cancel(SUNSHINE_SYNC_TAG);
+        }
+    }
+
+    /**
+     * Forgets which job was last scheduled, so that the next call to scheduleSyncIfChanged
+     * schedules it again.
+     *
+     * @param context Used to access the preferences the fingerprint is kept in
+     */
+    public static void clearScheduleFingerprint(@NonNull Context context) {
+        context.getSharedPreferences(SYNC_SCHEDULE_PREFERENCES, Context.MODE_PRIVATE)
+                .edit()
+                .remove(KEY_SCHEDULE_FINGERPRINT)
+                .remove(KEY_SCHEDULED_AT)
+                .apply();
     }
 
     /**
      * Creates periodic sync tasks and checks if an immediate sync is needed. If so, this method
      * will ensure that the sync occurs.
+     * <p>
+     * All of the work happens on a background thread. Nothing here is needed to draw the first
+     * frame, so MainActivity calls this once that frame has been drawn.
      *
      * @param context Context that will be passed to other methods and used to access the
      * ContentResolver
@@ -100,12 +236,6 @@ public class SunshineSyncUtils {
 
         sInitialized = true;
 
-        /*
-         * This method call triggers Sunshine to create its task to synchronize weather data
-         * periodically.
-         */
-        scheduleFirebaseJobDispatcherSync(context);
-
         /*
         * Need to check if ContentProvider has data to display to forecast list.
         * However, performing a query on the main thread should be avoided.
@@ -116,6 +246,12 @@ public class SunshineSyncUtils {
             @Override
             protected Void doInBackground(Void... voids) {
 
+                /*
+                 * This method call triggers Sunshine to create its task to synchronize weather
+                 * data periodically, if it hasn't already.
+                 */
+                scheduleSyncIfChanged(context);
+
                 // URI for all rows of weather data in weather table
                 Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
 
@@ -153,7 +289,11 @@ public class SunshineSyncUtils {
                  * be able to display data to the user.
                  */
 
-                // If cursor is null or empty, immediately sync
+                /*
+                 * If cursor is null or empty, immediately sync. After a wipe or a migration, the
+                 * sync rebuilds the database from the ForecastResponseCache, and only goes to the
+                 * network if the cached forecast is too old.
+                 */
                 if(cursor == null || cursor.getCount() == 0){
                     startImmediateSync(context);
                 }
@@ -0,0 +1,83 @@
+package com.example.android.sunshine.sync;
+
+/**
+ * Describes a recurring job to a SyncScheduler: how often it should run, how much leeway the
+ * scheduler has in choosing when, whether it needs a network, and how failed runs back off.
+ * <p>
+ * Every SyncScheduler backend turns this into its own kind of job, so nothing here refers to
+ * Android or to a particular scheduler, which also lets it be used from JVM tests.
+ */
+public final class SyncJob {
+
+    private final String mTag;
+    private final int mIntervalSeconds;
+    private final int mFlexSeconds;
+    private final boolean mRequiresNetwork;
+    private final int mInitialBackoffSeconds;
+    private final int mMaxBackoffSeconds;
+
+    /**
+     * @param tag                   Identifies the job. Scheduling a job with the same tag as one
+     *                              already scheduled replaces it.
+     * @param intervalSeconds       The earliest a run may happen after the previous one
+     * @param flexSeconds           How much later than that the run may be put off, so that it
+     *                              can share a wake-up with other work
+     * @param requiresNetwork       Whether the job may only run while a network is available
+     * @param initialBackoffSeconds How long to wait before retrying a run that asked for a retry
+     * @param maxBackoffSeconds     The longest the exponential backoff may grow to
+     */
+    public SyncJob(String tag, int intervalSeconds, int flexSeconds, boolean requiresNetwork,
+                   int initialBackoffSeconds, int maxBackoffSeconds) {
+        if (intervalSeconds <= 0 || flexSeconds < 0) {
+            throw new IllegalArgumentException("Invalid interval " + intervalSeconds
+                    + "s with flex " + flexSeconds + "s");
+        }
+        if (initialBackoffSeconds <= 0 || maxBackoffSeconds < initialBackoffSeconds) {
+            throw new IllegalArgumentException("Invalid backoff from " + initialBackoffSeconds
+                    + "s to " + maxBackoffSeconds + "s");
+        }
+        mTag = tag;
+        mIntervalSeconds = intervalSeconds;
+        mFlexSeconds = flexSeconds;
+        mRequiresNetwork = requiresNetwork;
+        mInitialBackoffSeconds = initialBackoffSeconds;
+        mMaxBackoffSeconds = maxBackoffSeconds;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    public int getIntervalSeconds() {
+        return mIntervalSeconds;
+    }
+
+    public int getFlexSeconds() {
+        return mFlexSeconds;
+    }
+
+    public boolean requiresNetwork() {
+        return mRequiresNetwork;
+    }
+
+    public int getInitialBackoffSeconds() {
+        return mInitialBackoffSeconds;
+    }
+
+    public int getMaxBackoffSeconds() {
+        return mMaxBackoffSeconds;
+    }
+
+    /**
+     * @return A string that is the same for two jobs exactly when scheduling one of them in place
+     * of the other would change nothing
+     */
+    public String getFingerprint() {
+        return mTag
+                + "|" + mIntervalSeconds
+                + "|" + mFlexSeconds
+                + "|" + mRequiresNetwork
+                + "|" + mInitialBackoffSeconds
+                + "|" + mMaxBackoffSeconds;
+    }
+}
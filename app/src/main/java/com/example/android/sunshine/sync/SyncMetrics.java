@@ -0,0 +1,370 @@
+package com.example.android.sunshine.sync;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects timings, sizes, connection reuse and failures from the weather sync so that we can see
+ * where sync time goes and how it fails. Everything is kept in memory for the life of the
+ * process, in fixed size histograms, so recording is cheap and memory use doesn't grow with the
+ * number of syncs.
+ * <p>
+ * Each histogram has {@link #BUCKET_COUNT} power-of-two buckets. Bucket 0 counts values of 0,
+ * bucket i counts values from 2^(i - 1) up to 2^i - 1, and the last bucket counts everything
+ * larger. Durations are recorded in milliseconds, so the last bucket starts at about 16 seconds.
+ * <p>
+ * Call {@link #dump(PrintWriter)} to print everything recorded so far. In debug builds, the
+ * "Sync metrics" item in MainActivity's menu shows the same output on screen.
+ */
+public final class SyncMetrics {
+
+    /* The stages of a sync, in the order they happen */
+    public static final int STAGE_BUILD_URL = 0;
+    public static final int STAGE_CONNECT = 1;
+    public static final int STAGE_DOWNLOAD = 2;
+    public static final int STAGE_PARSE = 3;
+    public static final int STAGE_DELETE = 4;
+    public static final int STAGE_INSERT = 5;
+    public static final int STAGE_NOTIFY = 6;
+    /* The whole sync, from building the URL to notifying the user */
+    public static final int STAGE_TOTAL = 7;
+
+    private static final int STAGE_COUNT = 8;
+
+    private static final String[] STAGE_NAMES = {
+            "build url",
+            "connect",
+            "download",
+            "parse",
+            "delete",
+            "insert",
+            "notify",
+            "total"
+    };
+
+    public static final int BUCKET_COUNT = 16;
+
+    /*
+     * Error classes are keyed by exception class name. A misbehaving network can produce many
+     * distinct exceptions, so past this many classes, new ones are counted together.
+     */
+    static final int MAX_ERROR_CLASSES = 16;
+    static final String OTHER_ERRORS = "(other)";
+
+    private static final Histogram[] sStageMillis = new Histogram[STAGE_COUNT];
+    private static final Histogram sBytesDownloaded = new Histogram();
+    private static final Histogram sRowsWritten = new Histogram();
+
+    private static final Map<String, Integer> sErrorCounts = new LinkedHashMap<>();
+
+    private static int sSucceeded;
+    private static int sFailed;
+    private static int sRetries;
+
+    /* Cache lookups, indexed by the freshness ForecastResponseCache reported */
+    private static final int[] sCacheLookups = new int[ForecastResponseCache.FRESHNESS_COUNT];
+    private static int sCacheFallbacks;
+
+    /* Notification decisions, indexed by NotificationPolicy's NOTIFY and SKIP_* constants */
+    private static final int[] sNotificationDecisions =
+            new int[NotificationPolicy.DECISION_COUNT];
+
+    /* Connection reuse, as seen by SunshineHttpClient */
+    private static int sHttpsRequests;
+    private static int sNewConnections;
+    private static int sTlsHandshakes;
+    private static int sResumedTlsHandshakes;
+
+    static {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sStageMillis[i] = new Histogram();
+        }
+    }
+
+    private SyncMetrics() {
+    }
+
+    /**
+     * Records how long one stage of a sync took.
+     *
+     * @param stage        One of the STAGE_* constants
+     * @param elapsedNanos The duration of the stage, as measured with System.nanoTime
+     */
+    public static synchronized void recordStage(int stage, long elapsedNanos) {
+        sStageMillis[stage].record(elapsedNanos / 1000000);
+    }
+
+    /**
+     * Records the size of a downloaded response body.
+     *
+     * @param bytes The number of bytes read from the network
+     */
+    public static synchronized void recordBytesDownloaded(long bytes) {
+        sBytesDownloaded.record(bytes);
+    }
+
+    /**
+     * Records how many rows a sync handed to the ContentProvider.
+     *
+     * @param rows The number of rows written
+     */
+    public static synchronized void recordRowsWritten(int rows) {
+        sRowsWritten.record(rows);
+    }
+
+    /* Records that a sync ran to completion */
+    public static synchronized void recordSuccess() {
+        sSucceeded++;
+    }
+
+    /* Records that a failed fetch is about to be retried within the same sync */
+    public static synchronized void recordRetry() {
+        sRetries++;
+    }
+
+    /**
+     * Records the result of looking up the last response in the ForecastResponseCache.
+     *
+     * @param freshness One of ForecastResponseCache's FRESH, STALE_REVALIDATE, STALE_IF_ERROR or
+     *                  EXPIRED. A missing response counts as EXPIRED.
+     */
+    public static synchronized void recordCacheLookup(int freshness) {
+        sCacheLookups[freshness]++;
+    }
+
+    /* Records that a fetch failed and a stale cached response was used instead */
+    public static synchronized void recordCacheFallback() {
+        sCacheFallbacks++;
+    }
+
+    /**
+     * Records whether a sync notified the user, and if not, why not.
+     *
+     * @param decision What NotificationPolicy decided
+     */
+    public static synchronized void recordNotificationDecision(int decision) {
+        sNotificationDecisions[decision]++;
+    }
+
+    /* Records that an HTTPS request was made, whether or not it needed a new connection */
+    public static synchronized void recordHttpsRequest() {
+        sHttpsRequests++;
+    }
+
+    /* Records that an HTTPS request couldn't reuse a pooled connection and opened a new one */
+    public static synchronized void recordNewConnection() {
+        sNewConnections++;
+    }
+
+    /**
+     * Records a completed TLS handshake on a new connection.
+     *
+     * @param resumed true if the handshake resumed an earlier TLS session
+     */
+    public static synchronized void recordTlsHandshake(boolean resumed) {
+        sTlsHandshakes++;
+        if (resumed) sResumedTlsHandshakes++;
+    }
+
+    /**
+     * Records that a sync failed, and why.
+     *
+     * @param error What made the sync fail
+     */
+    public static synchronized void recordFailure(Throwable error) {
+        sFailed++;
+
+        String errorClass = error.getClass().getName();
+        if (!sErrorCounts.containsKey(errorClass) && sErrorCounts.size() >= MAX_ERROR_CLASSES) {
+            errorClass = OTHER_ERRORS;
+        }
+
+        Integer count = sErrorCounts.get(errorClass);
+        sErrorCounts.put(errorClass, count == null ? 1 : count + 1);
+    }
+
+    /* The number of syncs that ran to completion */
+    public static synchronized int getSucceededCount() {
+        return sSucceeded;
+    }
+
+    /* The number of syncs that failed */
+    public static synchronized int getFailedCount() {
+        return sFailed;
+    }
+
+    /* The total number of rows handed to the ContentProvider, across all syncs */
+    public static synchronized long getRowsWrittenTotal() {
+        return sRowsWritten.mSum;
+    }
+
+    /**
+     * @param decision One of NotificationPolicy's NOTIFY and SKIP_* constants
+     * @return How many syncs NotificationPolicy made that decision for
+     */
+    public static synchronized int getNotificationDecisionCount(int decision) {
+        return sNotificationDecisions[decision];
+    }
+
+    /* Forgets everything recorded so far */
+    public static synchronized void reset() {
+        for (Histogram histogram : sStageMillis) {
+            histogram.reset();
+        }
+        sBytesDownloaded.reset();
+        sRowsWritten.reset();
+        sErrorCounts.clear();
+        sSucceeded = 0;
+        sFailed = 0;
+        sRetries = 0;
+        for (int i = 0; i < sCacheLookups.length; i++) {
+            sCacheLookups[i] = 0;
+        }
+        sCacheFallbacks = 0;
+        for (int i = 0; i < sNotificationDecisions.length; i++) {
+            sNotificationDecisions[i] = 0;
+        }
+        sHttpsRequests = 0;
+        sNewConnections = 0;
+        sTlsHandshakes = 0;
+        sResumedTlsHandshakes = 0;
+    }
+
+    /**
+     * Prints everything recorded so far in a human readable form.
+     *
+     * @param writer Where to print the metrics
+     */
+    public static synchronized void dump(PrintWriter writer) {
+        writer.println("Syncs: " + sSucceeded + " succeeded, " + sFailed + " failed");
+        writer.println("Fetch retries: " + sRetries);
+
+        writer.println();
+        writer.println("Response cache:");
+        writer.println("  fresh, fetch skipped: " + sCacheLookups[ForecastResponseCache.FRESH]);
+        writer.println("  stale, revalidated: "
+                + sCacheLookups[ForecastResponseCache.STALE_REVALIDATE]);
+        writer.println("  stale, used only on error: "
+                + sCacheLookups[ForecastResponseCache.STALE_IF_ERROR]
+                + ", used: " + sCacheFallbacks);
+        writer.println("  expired or missing: " + sCacheLookups[ForecastResponseCache.EXPIRED]);
+
+        writer.println();
+        writer.println("Notifications:");
+        writer.println("  shown: " + sNotificationDecisions[NotificationPolicy.NOTIFY]);
+        writer.println("  skipped, disabled: "
+                + sNotificationDecisions[NotificationPolicy.SKIP_DISABLED]);
+        writer.println("  skipped, no weather for today: "
+                + sNotificationDecisions[NotificationPolicy.SKIP_NO_TODAY]);
+        writer.println("  skipped, quiet hours: "
+                + sNotificationDecisions[NotificationPolicy.SKIP_QUIET_HOURS]);
+        writer.println("  skipped, throttled: "
+                + sNotificationDecisions[NotificationPolicy.SKIP_THROTTLED]);
+        writer.println("  skipped, forecast unchanged: "
+                + sNotificationDecisions[NotificationPolicy.SKIP_UNCHANGED]);
+
+        writer.println();
+        writer.println("Connections:");
+        writer.println("  https requests: " + sHttpsRequests + ", on pooled connections: "
+                + Math.max(sHttpsRequests - sNewConnections, 0)
+                + percentOf(sHttpsRequests - sNewConnections, sHttpsRequests));
+        writer.println("  tls handshakes: " + sTlsHandshakes + ", resumed: "
+                + sResumedTlsHandshakes + percentOf(sResumedTlsHandshakes, sTlsHandshakes));
+
+        writer.println();
+        writer.println("Stage timings (ms):");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            sStageMillis[stage].dump(writer, STAGE_NAMES[stage]);
+        }
+
+        writer.println();
+        writer.println("Sizes:");
+        sBytesDownloaded.dump(writer, "bytes downloaded");
+        sRowsWritten.dump(writer, "rows written");
+
+        writer.println();
+        writer.println("Errors:");
+        if (sErrorCounts.isEmpty()) {
+            writer.println("  none");
+        }
+        for (Map.Entry<String, Integer> entry : sErrorCounts.entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+
+        writer.flush();
+    }
+
+    private static String percentOf(int part, int whole) {
+        if (whole <= 0) return "";
+        return " (" + (Math.max(part, 0) * 100 / whole) + "%)";
+    }
+
+    /**
+     * Returns the index of the bucket a value falls into. See the class documentation for the
+     * bucket boundaries.
+     *
+     * @param value A non-negative value
+     * @return The bucket index, from 0 to BUCKET_COUNT - 1
+     */
+    static int bucketFor(long value) {
+        if (value <= 0) return 0;
+        int bucket = 64 - Long.numberOfLeadingZeros(value);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /* A fixed size histogram that also tracks the count, sum and largest value */
+    private static final class Histogram {
+        private final int[] mBuckets = new int[BUCKET_COUNT];
+        private int mCount;
+        private long mSum;
+        private long mMax;
+
+        void record(long value) {
+            if (value < 0) value = 0;
+            mBuckets[bucketFor(value)]++;
+            mCount++;
+            mSum += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets[i] = 0;
+            }
+            mCount = 0;
+            mSum = 0;
+            mMax = 0;
+        }
+
+        /*
+         * Returns an upper bound for the given percentile: the top of the bucket it falls in.
+         * For the last bucket, which has no top, we use the largest value recorded.
+         */
+        long percentile(int percent) {
+            int target = (int) Math.ceil(mCount * percent / 100.0);
+            int seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= target) {
+                    return i == BUCKET_COUNT - 1 ? mMax : Math.min(mMax, (1L << i) - 1);
+                }
+            }
+            return mMax;
+        }
+
+        void dump(PrintWriter writer, String name) {
+            if (mCount == 0) {
+                writer.println("  " + name + ": no samples");
+                return;
+            }
+            writer.println("  " + name
+                    + ": n=" + mCount
+                    + " mean=" + (mSum / mCount)
+                    + " p50<=" + percentile(50)
+                    + " p90<=" + percentile(90)
+                    + " p99<=" + percentile(99)
+                    + " max=" + mMax);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.utilities.HttpStatusException;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utilities.SunshineClock;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+/**
+ * Decides whether, and how soon, a failed weather fetch should be retried.
+ * <p>
+ * Failures are sorted into error classes by {@link #classify(Throwable)}, and each class has its
+ * own rule: how many attempts to make within one sync, and the base and cap of the exponential
+ * backoff between them. The delay before retry n is picked uniformly at random between 0 and
+ * min(cap, base * 2^n), which is known as "full jitter". Spreading retries out like this keeps a
+ * fleet of devices that all failed at the same moment from all retrying at the same moment.
+ * <p>
+ * A fetch that is still failing once its attempts run out is either retryable, in which case the
+ * sync asks the job scheduler to run it again later, or not, in which case we wait for the next
+ * periodic sync. Every attempt also goes through a {@link CircuitBreaker}, which stops us
+ * contacting a server that keeps failing at all.
+ */
+public final class SyncRetryPolicy {
+
+    /* The server didn't answer in time */
+    public static final int ERROR_TIMEOUT = 0;
+    /* The server answered with a 5xx status, or 408 Request Timeout */
+    public static final int ERROR_SERVER = 1;
+    /* The server asked us to slow down with 429 Too Many Requests */
+    public static final int ERROR_THROTTLED = 2;
+    /* The server's name couldn't be resolved, usually because the device is offline */
+    public static final int ERROR_DNS = 3;
+    /* Any other network failure, such as a refused or reset connection */
+    public static final int ERROR_CONNECTION = 4;
+    /* The server answered with any other 4xx status. Retrying won't change its answer. */
+    public static final int ERROR_CLIENT = 5;
+    /*
+     * The circuit breaker is open, so we didn't contact the server at all. Not retryable: asking
+     * the job scheduler to run the sync again would only have it refused again, every few
+     * minutes, for as long as the breaker stays open. The next periodic sync tries again.
+     */
+    public static final int ERROR_CIRCUIT_OPEN = 6;
+    /* Anything else, such as a response we couldn't parse */
+    public static final int ERROR_OTHER = 7;
+
+    /*
+     * The default rule for each error class, indexed by error class. Attempts are counted within
+     * a single sync; retryable classes are also rescheduled by the job scheduler afterwards.
+     */
+    private static final int[] DEFAULT_MAX_ATTEMPTS = {3, 3, 1, 2, 3, 1, 1, 1};
+    private static final long[] DEFAULT_BASE_DELAY_MILLIS = {1000, 2000, 0, 3000, 1000, 0, 0, 0};
+    private static final long[] DEFAULT_MAX_DELAY_MILLIS = {8000, 16000, 0, 10000, 8000, 0, 0, 0};
+    private static final boolean[] DEFAULT_RETRYABLE =
+            {true, true, true, true, true, false, false, false};
+
+    private final int[] mMaxAttempts = DEFAULT_MAX_ATTEMPTS.clone();
+    private final long[] mBaseDelayMillis = DEFAULT_BASE_DELAY_MILLIS.clone();
+    private final long[] mMaxDelayMillis = DEFAULT_MAX_DELAY_MILLIS.clone();
+    private final boolean[] mRetryable = DEFAULT_RETRYABLE.clone();
+
+    private final Random mRandom;
+
+    /**
+     * @param random The source of jitter. Pass a seeded Random for repeatable delays.
+     */
+    public SyncRetryPolicy(Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Replaces the rule for one error class.
+     *
+     * @param errorClass      One of the ERROR_* constants
+     * @param maxAttempts     How many attempts to make within one sync, including the first
+     * @param baseDelayMillis The longest delay before the first retry
+     * @param maxDelayMillis  The longest delay before any retry
+     * @return This policy, so that calls can be chained
+     */
+    public SyncRetryPolicy setRule(int errorClass, int maxAttempts,
+                                   long baseDelayMillis, long maxDelayMillis) {
+        mMaxAttempts[errorClass] = maxAttempts;
+        mBaseDelayMillis[errorClass] = baseDelayMillis;
+        mMaxDelayMillis[errorClass] = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * Sorts a failure into one of the ERROR_* classes.
+     *
+     * @param error What made the fetch fail
+     * @return The error class
+     */
+    public static int classify(Throwable error) {
+        if (error instanceof CircuitOpenException) return ERROR_CIRCUIT_OPEN;
+        if (error instanceof SocketTimeoutException) return ERROR_TIMEOUT;
+        if (error instanceof UnknownHostException) return ERROR_DNS;
+
+        if (error instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) error).getStatusCode();
+            if (statusCode == 429) return ERROR_THROTTLED;
+            if (statusCode == 408 || statusCode >= 500) return ERROR_SERVER;
+            return ERROR_CLIENT;
+        }
+
+        if (error instanceof IOException) return ERROR_CONNECTION;
+        return ERROR_OTHER;
+    }
+
+    /**
+     * @param errorClass One of the ERROR_* constants
+     * @return true if a sync that failed this way should be run again later
+     */
+    public boolean isRetryable(int errorClass) {
+        return mRetryable[errorClass];
+    }
+
+    /**
+     * @param errorClass    One of the ERROR_* constants
+     * @param attemptsSoFar How many attempts have been made in this sync, including the one that
+     *                      just failed
+     * @return true if another attempt should be made within this sync
+     */
+    public boolean shouldRetry(int errorClass, int attemptsSoFar) {
+        return mRetryable[errorClass] && attemptsSoFar < mMaxAttempts[errorClass];
+    }
+
+    /**
+     * Picks how long to wait before the next attempt.
+     *
+     * @param errorClass    One of the ERROR_* constants
+     * @param attemptsSoFar How many attempts have been made in this sync, at least 1
+     * @return A delay between 0 and min(cap, base * 2^(attemptsSoFar - 1)) milliseconds
+     */
+    public long getBackoffMillis(int errorClass, int attemptsSoFar) {
+        long base = mBaseDelayMillis[errorClass];
+        long cap = mMaxDelayMillis[errorClass];
+
+        /* Stop doubling before it could overflow; by then we're at the cap anyway */
+        int doublings = Math.min(Math.max(attemptsSoFar - 1, 0), 30);
+        long ceiling = Math.min(cap, base << doublings);
+        if (ceiling <= 0) return 0;
+
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * (ceiling + 1));
+        }
+    }
+
+    /**
+     * Fetches a URL, retrying transient failures according to this policy. Each attempt must be
+     * allowed by the circuit breaker, and its outcome is recorded there.
+     *
+     * @param url     The URL to fetch
+     * @param breaker The circuit breaker guarding the server
+     * @return The body of the response, or null if it was empty
+     * @throws IOException          The failure of the last attempt, or a
+     *                              {@link CircuitOpenException} if the breaker refused an attempt
+     * @throws InterruptedException If the thread was interrupted while waiting to retry
+     */
+    public String fetchWithRetries(URL url, CircuitBreaker breaker)
+            throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            long now = SunshineClock.currentTimeMillis();
+            if (!breaker.allowRequest(now)) {
+                throw new CircuitOpenException(breaker.getRetryAfterMillis(now));
+            }
+
+            try {
+                String response = NetworkUtils.getResponseFromHttpUrl(url);
+                breaker.recordSuccess();
+                return response;
+            } catch (IOException e) {
+                int errorClass = classify(e);
+
+                /* A 4xx means the request was wrong, not that the server is in trouble */
+                if (errorClass != ERROR_CLIENT) {
+                    breaker.recordFailure(SunshineClock.currentTimeMillis());
+                }
+
+                if (!shouldRetry(errorClass, attempt)) throw e;
+
+                SyncMetrics.recordRetry();
+                Thread.sleep(getBackoffMillis(errorClass, attempt));
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.android.sunshine.sync;
+
+/**
+ * Something that can run a SyncJob periodically. SunshineSyncUtils schedules Sunshine's sync
+ * through one of these rather than through a particular job scheduler:
+ * <ul>
+ *     <li>FirebaseSyncScheduler uses FirebaseJobDispatcher, backed by Google Play services</li>
+ *     <li>JobSchedulerSyncScheduler uses the platform's JobScheduler on API 21 and up</li>
+ *     <li>InProcessSyncScheduler runs jobs itself on a clock the caller controls, for tests and
+ *     benchmarks</li>
+ * </ul>
+ */
+public interface SyncScheduler {
+
+    /**
+     * Schedules a job, replacing any job already scheduled with the same tag.
+     *
+     * @param job The job to schedule
+     * @return true if the job was scheduled
+     */
+    boolean schedule(SyncJob job);
+
+    /**
+     * Cancels the job with the given tag, if there is one.
+     *
+     * @param tag The tag of the job to cancel
+     */
+    void cancel(String tag);
+
+    /**
+     * @return A name for this backend, which is part of the schedule fingerprint so that switching
+     * backends schedules the job again
+     */
+    String getName();
+}
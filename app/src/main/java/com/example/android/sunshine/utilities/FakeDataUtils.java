@@ -3,6 +3,8 @@ package com.example.android.sunshine.utilities;
 import android.content.ContentValues;
 import android.content.Context;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCodec;
 import com.example.android.sunshine.data.WeatherContract;
 
 import java.util.ArrayList;
@@ -40,7 +42,7 @@ public class FakeDataUtils {
      */
     public static void insertFakeData(Context context) {
         //Get today's normalized date
-        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        long today = SunshineDateUtils.normalizeDate(SunshineClock.currentTimeMillis());
         List<ContentValues> fakeValues = new ArrayList<ContentValues>();
         //loop over 7 days starting today onwards
         for(int i=0; i<7; i++) {
@@ -51,4 +53,31 @@ public class FakeDataUtils {
                 WeatherContract.WeatherEntry.CONTENT_URI,
                 fakeValues.toArray(new ContentValues[7]));
     }
+
+    /**
+     * Fills the weather table with a long, realistic history ending today, generated by a
+     * {@link SyntheticWeatherGenerator}. The days are streamed through the same batched write
+     * path the sync uses, a slice at a time, so memory use doesn't grow with the number of days.
+     * <p>
+     * This performs disk I/O and must not be called on the main thread.
+     *
+     * @param context Used to reach the ContentProvider
+     * @param seed    Chooses the series; the same seed always inserts the same weather
+     * @param days    The number of days to insert, ending with today
+     * @return The number of rows written
+     */
+    public static int insertSyntheticHistory(Context context, long seed, int days) {
+        long today = SunshineDateUtils.normalizeDate(SunshineClock.currentTimeMillis());
+        long firstDate = today - (days - 1) * SunshineDateUtils.DAY_IN_MILLIS;
+        SyntheticWeatherGenerator generator = new SyntheticWeatherGenerator(seed, 0, firstDate);
+
+        ForecastBatch batch = new ForecastBatch(ForecastBatchCodec.MAX_ROWS_PER_BATCH);
+        int rowsWritten = 0;
+        for (int remaining = days; remaining > 0; remaining -= batch.count) {
+            batch.clear();
+            generator.fill(batch, remaining);
+            rowsWritten += ForecastBatchCodec.put(context.getContentResolver(), batch);
+        }
+        return rowsWritten;
+    }
 }
@@ -0,0 +1,33 @@
+package com.example.android.sunshine.utilities;
+
+/**
+ * Receives a forecast as {@link OpenWeatherJsonUtils#parseForecast(String, ForecastSink...)}
+ * walks the response. Several sinks can be passed to the same parse, so that storing the weather,
+ * formatting it for display and saving the location all share one download and one pass over it.
+ * <p>
+ * Values are handed over as primitives, in the order they appear in the response: first
+ * {@link #onForecastStart(int)}, then {@link #onLocation(double, double)}, then
+ * {@link #onDay} once per day. A response that contains an error code calls none of them.
+ */
+public interface ForecastSink {
+
+    /**
+     * Called once, before anything else.
+     *
+     * @param dayCount The number of days onDay will be called for
+     */
+    void onForecastStart(int dayCount);
+
+    /**
+     * Called once, with the coordinates of the location the forecast is for.
+     */
+    void onLocation(double latitude, double longitude);
+
+    /**
+     * Called once per day of the forecast, in order.
+     *
+     * @param date Normalized UTC midnight of the day, in milliseconds since the epoch
+     */
+    void onDay(long date, int weatherId, double minTemp, double maxTemp,
+               double humidity, double pressure, double windSpeed, double degrees);
+}
@@ -0,0 +1,76 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+
+import com.example.android.sunshine.data.PreferenceWriter;
+import com.example.android.sunshine.data.SunshinePreferences;
+
+import java.util.List;
+
+/**
+ * The {@link ForecastSink}s that aren't a forecast model of their own. Attach only the ones a
+ * caller needs; a parse that nobody formats strings for never touches resources.
+ */
+public final class ForecastSinks {
+
+    private ForecastSinks() {
+    }
+
+    /**
+     * Returns a sink that stages the forecast's location coordinates in a PreferenceWriter. Nothing
+     * is written while parsing; the caller applies the writer once the forecast is stored, and
+     * the coordinates are only written if they changed.
+     *
+     * @param writer Receives the coordinates
+     * @return A sink that ignores everything but the location
+     */
+    public static ForecastSink stageLocation(final PreferenceWriter writer) {
+        return new ForecastSink() {
+            @Override
+            public void onForecastStart(int dayCount) {
+            }
+
+            @Override
+            public void onLocation(double latitude, double longitude) {
+                SunshinePreferences.putLocationDetails(writer, latitude, longitude);
+            }
+
+            @Override
+            public void onDay(long date, int weatherId, double minTemp, double maxTemp,
+                              double humidity, double pressure, double windSpeed,
+                              double degrees) {
+            }
+        };
+    }
+
+    /**
+     * Returns a sink that describes each day of the forecast in a human readable String, such as
+     * "Today - Clear - 20°/10°".
+     *
+     * @param context Used to access the strings and the user's unit preference
+     * @param out     Receives one String per day, in order
+     * @return A sink that ignores everything but the days
+     */
+    public static ForecastSink displayStrings(final Context context, final List<String> out) {
+        return new ForecastSink() {
+            @Override
+            public void onForecastStart(int dayCount) {
+            }
+
+            @Override
+            public void onLocation(double latitude, double longitude) {
+            }
+
+            @Override
+            public void onDay(long date, int weatherId, double minTemp, double maxTemp,
+                              double humidity, double pressure, double windSpeed,
+                              double degrees) {
+                String description =
+                        SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+                out.add(SunshineDateUtils.getFriendlyDateString(context, date, false)
+                        + " - " + description
+                        + " - " + SunshineWeatherUtils.formatHighLows(context, maxTemp, minTemp));
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.android.sunshine.utilities;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link NetworkUtils} when the weather server answers with an HTTP error status.
+ * Callers can tell client errors (4xx), which retrying won't fix, from server errors (5xx),
+ * which it often will.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int mStatusCode;
+
+    public HttpStatusException(int statusCode, String message) {
+        super("HTTP " + statusCode + " " + message);
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * @return The HTTP status code the server responded with
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+}
@@ -5,140 +5,142 @@ import android.app.PendingIntent;
 import android.app.TaskStackBuilder;
 import android.content.Context;
 import android.content.Intent;
-import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.content.ContextCompat;
+import android.util.LruCache;
 
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
-import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.WeatherContract;
 
 public class NotificationUtils {
+
     /*
-     * The columns of data that we are interested in displaying within our notification to let
-     * the user know there is new weather data available.
+     * This notification ID can be used to access our notification after we've displayed it. This
+     * can be handy when we need to cancel the notification, or perhaps update it. This number is
+     * arbitrary and can be set to whatever you like. 3004 is in no way significant.
      */
-    public static final String[] WEATHER_NOTIFICATION_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-    };
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
 
     /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
+     * Decoded large icons, keyed by their drawable resource ID. There are about ten of them, one
+     * per kind of weather, and the same few come up day after day, so decoding each one once
+     * saves a BitmapFactory call on nearly every notification. The budget holds a handful of them
+     * at xxhdpi sizes.
      */
-    public static final int INDEX_WEATHER_ID = 0;
-    public static final int INDEX_MAX_TEMP = 1;
-    public static final int INDEX_MIN_TEMP = 2;
+    private static final int LARGE_ICON_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<Integer, Bitmap> sLargeIconCache =
+            new LruCache<Integer, Bitmap>(LARGE_ICON_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(Integer resourceId, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
 
     /*
-     * This notification ID can be used to access our notification after we've displayed it. This
-     * can be handy when we need to cancel the notification, or perhaps update it. This number is
-     * arbitrary and can be set to whatever you like. 3004 is in no way significant.
+     * The parts of the notification that never change are set up once, the first time we notify,
+     * and only today's weather is set on later notifications. Guarded by the class lock, as syncs
+     * can run on more than one thread.
      */
-    private static final int WEATHER_NOTIFICATION_ID = 3004;
+    private static NotificationCompat.Builder sNotificationBuilder;
 
     /**
-     * Constructs and displays a notification for the newly updated weather for today.
+     * Constructs and displays a notification for the newly updated weather for today. Today's
+     * weather is taken from the forecast that was just stored, rather than queried back from the
+     * ContentProvider. If the forecast doesn't include today, nothing is shown.
+     * <p>
+     * This decodes bitmaps and must not be called on the main thread. The sync, which is the only
+     * caller, always runs in the background.
      *
-     * @param context Context used to query our ContentProvider and use various Utility methods
+     * @param context  Context used to build the notification and use various Utility methods
+     * @param forecast The forecast that was just stored
      */
-    public static void notifyUserOfNewWeather(Context context) {
+    public static synchronized void notifyUserOfNewWeather(Context context,
+                                                           ForecastBatch forecast) {
 
-        /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        int todayIndex = forecast.indexOf(today);
+        if (todayIndex < 0) {
+            return;
+        }
 
-        /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
-         */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        /* Weather ID as returned by API, used to identify the icon to be used */
+        int weatherId = forecast.weatherIds[todayIndex];
+        double high = forecast.maxTemps[todayIndex];
+        double low = forecast.minTemps[todayIndex];
 
-        /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
-         */
-        if (todayWeatherCursor.moveToFirst()) {
+        Context appContext = context.getApplicationContext();
 
-            /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
+        if (sNotificationBuilder == null) {
+            /*
+             * NotificationCompat Builder is a very convenient way to build backward-compatible
+             * notifications. The color, title and auto-cancel behavior are the same for every
+             * notification we show, so they are only set here.
+             */
+            sNotificationBuilder = new NotificationCompat.Builder(appContext)
+                    .setColor(ContextCompat.getColor(appContext, R.color.colorPrimary))
+                    .setContentTitle(appContext.getString(R.string.app_name))
+                    .setAutoCancel(true);
+        }
 
-            Resources resources = context.getResources();
-            int largeArtResourceId = SunshineWeatherUtils
-                    .getLargeArtResourceIdForWeatherCondition(weatherId);
+        /* getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID */
+        int smallArtResourceId = SunshineWeatherUtils
+                .getSmallArtResourceIdForWeatherCondition(weatherId);
 
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
+        sNotificationBuilder
+                .setSmallIcon(smallArtResourceId)
+                .setLargeIcon(getLargeIcon(appContext, weatherId))
+                .setContentText(getNotificationText(appContext, weatherId, high, low));
 
-            String notificationTitle = context.getString(R.string.app_name);
+        /*
+         * This intent triggers when user clicks notification. In this case, we want the app
+         * to open to the DetailActivity and display the newly updated weather info
+         */
+        Uri todaysWeatherUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(today);
+        Intent detailIntentForToday = new Intent(appContext, DetailActivity.class);
+        detailIntentForToday.setData(todaysWeatherUri);
 
-            String notificationText = getNotificationText(context, weatherId, high, low);
+        // TaskBuilder will create the PendingIntent
+        TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(appContext);
+        taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
+        PendingIntent resultPendingIntent = taskStackBuilder
+                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
 
-            /* getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID */
-            int smallArtResourceId = SunshineWeatherUtils
-                    .getSmallArtResourceIdForWeatherCondition(weatherId);
+        // Set content Intent of NotificationBuilder
+        sNotificationBuilder.setContentIntent(resultPendingIntent);
 
-            /*
-             * NotificationCompat Builder is a very convenient way to build backward-compatible
-             * notifications. In order to use it, we provide a context and specify a color for the
-             * notification, a couple of different icons, the title for the notification, and
-             * finally the text of the notification, which in our case in a summary of today's
-             * forecast.
-             */
-            NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context)
-                    .setColor(ContextCompat.getColor(context,R.color.colorPrimary))
-                    .setSmallIcon(smallArtResourceId)
-                    .setLargeIcon(largeIcon)
-                    .setContentTitle(notificationTitle)
-                    .setContentText(notificationText)
-                    .setAutoCancel(true);
+        // Get a reference to the NotificationManager
+        NotificationManager notificationManager = (NotificationManager)
+                appContext.getSystemService(Context.NOTIFICATION_SERVICE);
 
-            /*
-            * This intent triggers when user clicks notification. In this case, we want the app
-            * to open to the DetailActivity and display the newly updated weather info
-            */
-            Intent detailIntentForToday = new Intent(context, DetailActivity.class);
-            detailIntentForToday.setData(todaysWeatherUri);
-
-            // TaskBuilder will create the PendingIntent
-            TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
-            taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
-            PendingIntent resultPendingIntent = taskStackBuilder
-                    .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
-
-            // Set content Intent of NotificationBuilder
-            notificationBuilder.setContentIntent(resultPendingIntent);
-
-            // Get a reference to the NotificationManager
-            NotificationManager notificationManager = (NotificationManager)
-                    context.getSystemService(Context.NOTIFICATION_SERVICE);
-
-            // Notify user with ID WEATHER_NOTIFICATION_ID which allows updates/cancels to notifications
-            notificationManager.notify(WEATHER_NOTIFICATION_ID, notificationBuilder.build());
-
-            // Save current time after displaying notification, so we can check the next time
-            // the weather is refreshed if we need to show another notification.
-            SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
-        }
+        // Notify user with ID WEATHER_NOTIFICATION_ID which allows updates/cancels to notifications
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, sNotificationBuilder.build());
+    }
 
-        /* Always close your cursor when you're done with it to avoid wasting resources. */
-        todayWeatherCursor.close();
+    /**
+     * Returns the large icon for a kind of weather, decoding it only if it isn't cached.
+     *
+     * @param context   Used to access resources
+     * @param weatherId ID as determined by Open Weather Map
+     * @return The decoded large art for the weather
+     */
+    private static Bitmap getLargeIcon(Context context, int weatherId) {
+        int largeArtResourceId = SunshineWeatherUtils
+                .getLargeArtResourceIdForWeatherCondition(weatherId);
+
+        Bitmap largeIcon = sLargeIconCache.get(largeArtResourceId);
+        if (largeIcon == null) {
+            largeIcon = BitmapFactory.decodeResource(context.getResources(), largeArtResourceId);
+            if (largeIcon != null) {
+                sLargeIconCache.put(largeArtResourceId, largeIcon);
+            }
+        }
+        return largeIcon;
     }
 
     /**
@@ -18,8 +18,9 @@ package com.example.android.sunshine.utilities;
 import android.content.ContentValues;
 import android.content.Context;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.PreferenceWriter;
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -61,24 +62,27 @@ public final class OpenWeatherJsonUtils {
     private static final String OWM_MESSAGE_CODE = "cod";
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * Parses a forecast response in a single pass, handing its values to every sink as it goes.
+     * This is the only place the response is walked; storing the weather, saving the location
+     * and formatting display strings are all sinks attached to the same parse, so a response is
+     * parsed once however many of them want it.
+     * <p>
+     * OWM returns daily forecasts based upon the local time of the city that is being asked for.
+     * Since this data is sent in-order and the first day is always the current day, we ignore the
+     * datetime values embedded in the JSON and give each day a normalized UTC date counted from
+     * today.
      *
      * @param forecastJsonStr JSON response from server
+     * @param sinks           Receive the forecast, in the order they are given
      *
-     * @return Array of Strings describing weather data
+     * @return true if the forecast was parsed, false if the response contained an error code, in
+     * which case no sink was called
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
-    public static String[] getSimpleWeatherStringsFromJson(Context context, String forecastJsonStr)
+    public static boolean parseForecast(String forecastJsonStr, ForecastSink... sinks)
             throws JSONException {
 
-        String[] parsedWeatherData;
-
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
         /* Is there an error? */
@@ -90,40 +94,40 @@ public final class OpenWeatherJsonUtils {
                     break;
                 case HttpURLConnection.HTTP_NOT_FOUND:
                     /* Location invalid */
-                    return null;
+                    return false;
                 default:
                     /* Server probably down */
-                    return null;
+                    return false;
             }
         }
 
-        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
 
-        parsedWeatherData = new String[weatherArray.length()];
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
 
-        long startDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-        for (int i = 0; i < weatherArray.length(); i++) {
-            String date;
-            String highAndLow;
+        int dayCount = jsonWeatherArray.length();
+        for (ForecastSink sink : sinks) {
+            sink.onForecastStart(dayCount);
+            sink.onLocation(cityLatitude, cityLongitude);
+        }
 
-            /* These are the values that will be collected */
-            long dateTimeMillis;
-            double high;
-            double low;
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
 
-            int weatherId;
-            String description;
+        for (int i = 0; i < dayCount; i++) {
 
             /* Get the JSON object representing the day */
-            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
 
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = startDay + SunshineDateUtils.DAY_IN_MILLIS * i;
-            date = SunshineDateUtils.getFriendlyDateString(context, dateTimeMillis, false);
+            long dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
+
+            double pressure = dayForecast.getDouble(OWM_PRESSURE);
+            int humidity = dayForecast.getInt(OWM_HUMIDITY);
+            double windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            double windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
 
             /*
              * Description is in a child array called "weather", which is 1 element long.
@@ -132,146 +136,64 @@ public final class OpenWeatherJsonUtils {
             JSONObject weatherObject =
                     dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
 
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-            description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+            int weatherId = weatherObject.getInt(OWM_WEATHER_ID);
 
             /*
              * Temperatures are sent by Open Weather Map in a child object called "temp".
              *
              * Editor's Note: Try not to name variables "temp" when working with temperature.
              * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary and is just a bad variable name.
+             * temperature, temporary variable, temporary folder, temporary employee, or many
+             * others, and is just a bad variable name.
              */
             JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
-            highAndLow = SunshineWeatherUtils.formatHighLows(context, high, low);
+            double high = temperatureObject.getDouble(OWM_MAX);
+            double low = temperatureObject.getDouble(OWM_MIN);
 
-            parsedWeatherData[i] = date + " - " + description + " - " + highAndLow;
+            for (ForecastSink sink : sinks) {
+                sink.onDay(dateTimeMillis, weatherId, low, high,
+                        humidity, pressure, windSpeed, windDirection);
+            }
         }
 
-        return parsedWeatherData;
+        return true;
     }
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * Parses a forecast response into a {@link ForecastBatch}, saving the location's coordinates
+     * to the preferences, if they changed, once the response has been parsed.
      *
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return The weather for each day, or null if the response contained an error code
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
-    public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
+    public static ForecastBatch getForecastBatchFromJson(Context context, String forecastJsonStr)
             throws JSONException {
-
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-        /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    /* Location invalid */
-                    return null;
-                default:
-                    /* Server probably down */
-                    return null;
-            }
-        }
-
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-
-        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
-
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
-
-        /*
-         * OWM returns daily forecasts based upon the local time of the city that is being asked
-         * for, which means that we need to know the GMT offset to translate this data properly.
-         * Since this data is also sent in-order and the first day is always the current day, we're
-         * going to take advantage of that to get a nice normalized UTC date for all of our weather.
-         */
-//        long now = System.currentTimeMillis();
-//        long normalizedUtcStartDay = SunshineDateUtils.normalizeDate(now);
-
-        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
-
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
-
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double high;
-            double low;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
-
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-            /*
-             * Description is in a child array called "weather", which is 1 element long.
-             * That element also contains a weather code.
-             */
-            JSONObject weatherObject =
-                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
-
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
+        ParsedForecast forecast = new ParsedForecast();
+        PreferenceWriter preferenceWriter = SunshinePreferences.newWriter(context);
+        if (!parseForecast(forecastJsonStr, forecast,
+                ForecastSinks.stageLocation(preferenceWriter))) {
+            return null;
         }
+        preferenceWriter.apply();
+        return forecast.getDays();
+    }
 
-        return weatherContentValues;
+    /**
+     * Like {@link #getForecastBatchFromJson(Context, String)}, but returns one ContentValues per
+     * day, for callers that need them. Prefer the batch, which allocates far less.
+     *
+     * @param forecastJsonStr JSON response from server
+     *
+     * @return The weather for each day, or null if the response contained an error code
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
+            throws JSONException {
+        ForecastBatch forecastBatch = getForecastBatchFromJson(context, forecastJsonStr);
+        return forecastBatch == null ? null : forecastBatch.toContentValues();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+/**
+ * A whole forecast response as typed values: the location it is for, and one row of weather
+ * per day in a {@link ForecastBatch}, ready to be handed to the ContentProvider.
+ * <p>
+ * Pass one to {@link OpenWeatherJsonUtils#parseForecast(String, ForecastSink...)} to fill it.
+ */
+public final class ParsedForecast implements ForecastSink {
+
+    private ForecastBatch mDays;
+
+    private boolean mHasLocation;
+    private double mLatitude;
+    private double mLongitude;
+
+    @Override
+    public void onForecastStart(int dayCount) {
+        mDays = new ForecastBatch(dayCount);
+        mHasLocation = false;
+    }
+
+    @Override
+    public void onLocation(double latitude, double longitude) {
+        mHasLocation = true;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    @Override
+    public void onDay(long date, int weatherId, double minTemp, double maxTemp,
+                      double humidity, double pressure, double windSpeed, double degrees) {
+        mDays.add(date, weatherId, minTemp, maxTemp, humidity, pressure, windSpeed, degrees);
+    }
+
+    /**
+     * @return The weather for each day, or null if nothing has been parsed into this forecast
+     */
+    public ForecastBatch getDays() {
+        return mDays;
+    }
+
+    /**
+     * @return true if the response included the coordinates of its location
+     */
+    public boolean hasLocation() {
+        return mHasLocation;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+}
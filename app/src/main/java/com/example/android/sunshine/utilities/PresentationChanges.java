@@ -0,0 +1,115 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.ArrayList;
+
+/**
+ * Tells the screens that display weather when the way it is formatted has changed, while the
+ * weather itself hasn't: the user switched units, the locale changed, or the time, time zone or
+ * time format changed.
+ * <p>
+ * None of those change a single row of the weather table, which always stores Celsius and
+ * normalized UTC dates. So rather than notifying the weather table's URIs, which would wake
+ * every Loader into querying the database again, listeners are told directly and format the
+ * rows they already hold again.
+ * <p>
+ * Units are changed through our own settings, which call {@link #notifyChanged(int)}. Locale and
+ * time changes come from system broadcasts, which are listened for while anything is
+ * registered.
+ * <p>
+ * Everything here must be called on the main thread, and listeners are called on it.
+ */
+public final class PresentationChanges {
+
+    /* What changed, as flags that can be combined */
+    public static final int CHANGE_UNITS = 1;
+    public static final int CHANGE_LOCALE = 1 << 1;
+    public static final int CHANGE_TIME_FORMAT = 1 << 2;
+
+    /**
+     * Told when the formatting of weather has changed.
+     */
+    public interface Listener {
+
+        /**
+         * @param changes The CHANGE_* flags of what changed
+         */
+        void onPresentationChanged(int changes);
+    }
+
+    private static final ArrayList<Listener> sListeners = new ArrayList<>();
+
+    /* Listens for the system's locale and time broadcasts while there are listeners */
+    private static BroadcastReceiver sReceiver;
+
+    private PresentationChanges() {
+    }
+
+    /**
+     * Starts telling a listener about changes. Listeners must be unregistered when they go away,
+     * typically in the onDestroy matching the onCreate they were registered in.
+     *
+     * @param context  Used to listen for system broadcasts
+     * @param listener The listener to add. Adding a listener twice has no effect.
+     */
+    public static void register(Context context, Listener listener) {
+        if (sListeners.contains(listener)) return;
+        sListeners.add(listener);
+
+        if (sReceiver == null) {
+            sReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    String action = intent.getAction();
+                    if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
+                        notifyChanged(CHANGE_LOCALE);
+                    } else {
+                        notifyChanged(CHANGE_TIME_FORMAT);
+                    }
+                }
+            };
+
+            /*
+             * ACTION_TIME_CHANGED is also sent when the user switches between 12 and 24 hour
+             * time, and ACTION_TIMEZONE_CHANGED moves the local dates our UTC dates are shown as.
+             */
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            context.getApplicationContext().registerReceiver(sReceiver, filter);
+        }
+    }
+
+    /**
+     * Stops telling a listener about changes.
+     *
+     * @param context  Used to stop listening for system broadcasts once no listeners are left
+     * @param listener The listener to remove
+     */
+    public static void unregister(Context context, Listener listener) {
+        sListeners.remove(listener);
+
+        if (sListeners.isEmpty() && sReceiver != null) {
+            context.getApplicationContext().unregisterReceiver(sReceiver);
+            sReceiver = null;
+        }
+    }
+
+    /**
+     * Tells every registered listener that the formatting of weather has changed.
+     *
+     * @param changes The CHANGE_* flags of what changed
+     */
+    public static void notifyChanged(int changes) {
+        /* Copied, so that listeners can unregister while they are being told */
+        Listener[] listeners = sListeners.toArray(new Listener[sListeners.size()]);
+        for (Listener listener : listeners) {
+            listener.onPresentationChanged(changes);
+        }
+    }
+}
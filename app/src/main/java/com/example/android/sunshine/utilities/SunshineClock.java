@@ -0,0 +1,72 @@
+package com.example.android.sunshine.utilities;
+
+import java.util.TimeZone;
+
+/**
+ * Where Sunshine gets the current time and time zone from. Everything that would otherwise call
+ * System.currentTimeMillis or TimeZone.getDefault goes through here instead, so that tests and
+ * soak simulations can substitute a virtual clock and run through midnights, daylight saving
+ * changes and months of syncs in seconds.
+ * <p>
+ * Durations should still be measured with System.nanoTime or SystemClock, which this doesn't
+ * replace.
+ */
+public final class SunshineClock {
+
+    /**
+     * A source of wall clock time.
+     */
+    public interface TimeSource {
+
+        /**
+         * @return The current time, in milliseconds since the epoch
+         */
+        long currentTimeMillis();
+
+        /**
+         * @return The time zone the user is in
+         */
+        TimeZone getTimeZone();
+    }
+
+    /* The real clock, which is used unless another TimeSource is set */
+    public static final TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public TimeZone getTimeZone() {
+            return TimeZone.getDefault();
+        }
+    };
+
+    private static volatile TimeSource sTimeSource = SYSTEM;
+
+    private SunshineClock() {
+    }
+
+    /**
+     * @return The current time, in milliseconds since the epoch
+     */
+    public static long currentTimeMillis() {
+        return sTimeSource.currentTimeMillis();
+    }
+
+    /**
+     * @return The time zone the user is in
+     */
+    public static TimeZone getTimeZone() {
+        return sTimeSource.getTimeZone();
+    }
+
+    /**
+     * Replaces the clock Sunshine reads. Only tests and simulations should call this.
+     *
+     * @param timeSource The clock to use, or null to go back to the system clock
+     */
+    public static void setTimeSource(TimeSource timeSource) {
+        sTimeSource = timeSource == null ? SYSTEM : timeSource;
+    }
+}
@@ -61,13 +61,13 @@ public final class SunshineDateUtils {
          * This number represents the number of milliseconds that have elapsed since January
          * 1st, 1970 at midnight in the GMT time zone.
          */
-        long utcNowMillis = System.currentTimeMillis();
+        long utcNowMillis = SunshineClock.currentTimeMillis();
 
         /*
          * This TimeZone represents the device's current time zone. It provides us with a means
          * of acquiring the offset for local time from a UTC time stamp.
          */
-        TimeZone currentTimeZone = TimeZone.getDefault();
+        TimeZone currentTimeZone = SunshineClock.getTimeZone();
 
         /*
          * The getOffset method returns the number of milliseconds to add to UTC time to get the
@@ -169,7 +169,7 @@ public final class SunshineDateUtils {
      */
     private static long getLocalMidnightFromNormalizedUtcDate(long normalizedUtcDate) {
         /* The timeZone object will provide us the current user's time zone offset */
-        TimeZone timeZone = TimeZone.getDefault();
+        TimeZone timeZone = SunshineClock.getTimeZone();
         /*
          * This offset, in milliseconds, when added to a UTC date time, will produce the local
          * time.
@@ -221,7 +221,7 @@ public final class SunshineDateUtils {
          * As a basis for comparison, we use the number of days that have passed from the epoch
          * until today.
          */
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        long daysFromEpochToToday = elapsedDaysSinceEpoch(SunshineClock.currentTimeMillis());
 
         if (daysFromEpochToProvidedDate == daysFromEpochToToday || showFullDate) {
             /*
@@ -291,7 +291,7 @@ public final class SunshineDateUtils {
          * day name.
          */
         long daysFromEpochToProvidedDate = elapsedDaysSinceEpoch(dateInMillis);
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        long daysFromEpochToToday = elapsedDaysSinceEpoch(SunshineClock.currentTimeMillis());
 
         int daysAfterToday = (int) (daysFromEpochToProvidedDate - daysFromEpochToToday);
 
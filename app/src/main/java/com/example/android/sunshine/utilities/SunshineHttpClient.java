@@ -0,0 +1,297 @@
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.sync.SyncMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The one place Sunshine makes HTTP requests from. Every request shares the same timeouts and the
+ * same connection pool, so fetching several pages or locations in a row doesn't pay for a new
+ * TCP connection and TLS handshake each time.
+ * <p>
+ * HttpURLConnection pools connections by itself, but only under two conditions. The response
+ * body, even an error body, must be read to the end and closed, and disconnect() must not be
+ * called, since it closes the socket. Every request that gets a response follows both rules. A
+ * request whose connection fails before then is disconnected instead, since its socket can't be
+ * reused and would otherwise stay open until it was collected.
+ * <p>
+ * Every HTTPS connection is also made through one shared SSLSocketFactory. That keeps pooled
+ * connections interchangeable, lets new connections resume earlier TLS sessions, and lets us
+ * count how often each of those happens in {@link SyncMetrics}.
+ * <p>
+ * The platform's HttpURLConnection only speaks HTTP/1.1, so requests made here are never
+ * multiplexed over HTTP/2. Keep-alive and session resumption are what we get instead.
+ */
+public final class SunshineHttpClient {
+
+    /*
+     * HttpURLConnection waits forever by default. Without a timeout, a server that stops
+     * responding would hang the sync until the job scheduler gave up on it.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 15000;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static volatile int sConnectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private static volatile int sReadTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+    private static SSLSocketFactory sSslSocketFactory;
+
+    private SunshineHttpClient() {
+    }
+
+    /**
+     * Changes the timeouts used by every request made from now on.
+     *
+     * @param connectTimeoutMillis How long to wait for a connection to be established
+     * @param readTimeoutMillis    How long to wait for each read from the connection
+     */
+    public static void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        sConnectTimeoutMillis = connectTimeoutMillis;
+        sReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Fetches a URL and returns the whole response body. The time spent connecting and the time
+     * spent downloading the response, along with its size, are recorded in {@link SyncMetrics}.
+     *
+     * @param url The URL to fetch
+     * @return The body of the response, null if it was empty
+     * @throws IOException Related to network and stream reading. If the server responded with an
+     *                     error status, this is an {@link HttpStatusException}.
+     */
+    public static String get(URL url) throws IOException {
+        long connectStart = System.nanoTime();
+        HttpURLConnection urlConnection = open(url);
+        InputStream in = null;
+        byte[] body;
+
+        try {
+            /*
+             * Gets a pooled connection if there is one, or opens the socket and completes the TLS
+             * handshake if there isn't. Either way, the request hasn't been sent yet.
+             */
+            urlConnection.connect();
+            SyncMetrics.recordStage(SyncMetrics.STAGE_CONNECT,
+                    System.nanoTime() - connectStart);
+
+            long downloadStart = System.nanoTime();
+            int statusCode = urlConnection.getResponseCode();
+            if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                /* Reading the error body to the end lets the connection go back to the pool */
+                drainAndClose(urlConnection.getErrorStream());
+                throw new HttpStatusException(statusCode, urlConnection.getResponseMessage());
+            }
+
+            in = urlConnection.getInputStream();
+            body = readFullyAndClose(in);
+
+            SyncMetrics.recordStage(SyncMetrics.STAGE_DOWNLOAD,
+                    System.nanoTime() - downloadStart);
+            SyncMetrics.recordBytesDownloaded(body.length);
+        } catch (HttpStatusException e) {
+            /* The server answered, and the connection can still be reused */
+            throw e;
+        } catch (IOException e) {
+            /*
+             * The connection broke somewhere between connecting and reading the body, so there is
+             * nothing left to reuse. Let go of the socket now rather than when it is collected,
+             * since a sync may retry several times before then.
+             */
+            closeQuietly(in);
+            urlConnection.disconnect();
+            throw e;
+        }
+
+        if (body.length == 0) {
+            return null;
+        }
+        return new String(body, "UTF-8");
+    }
+
+    /**
+     * Opens a connection configured with the shared timeouts and, for HTTPS, the shared
+     * SSLSocketFactory. Callers must read the response to the end and close it, and must not
+     * call disconnect(), or the connection can't be reused. If the connection fails before the
+     * response is read, callers should disconnect it instead.
+     *
+     * @param url The URL to connect to
+     * @return An unconnected HttpURLConnection
+     * @throws IOException If the connection couldn't be created
+     */
+    public static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(sConnectTimeoutMillis);
+        urlConnection.setReadTimeout(sReadTimeoutMillis);
+
+        if (urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(getSslSocketFactory());
+            SyncMetrics.recordHttpsRequest();
+        }
+
+        return urlConnection;
+    }
+
+    private static synchronized SSLSocketFactory getSslSocketFactory() {
+        if (sSslSocketFactory == null) {
+            sSslSocketFactory =
+                    new CountingSslSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+        }
+        return sSslSocketFactory;
+    }
+
+    private static byte[] readFullyAndClose(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            /* The connection is being dropped anyway */
+        }
+    }
+
+    private static void drainAndClose(InputStream in) {
+        if (in == null) return;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                /* Discard the error body */
+            }
+        } catch (IOException ignored) {
+            /* The connection won't be reused, which is all this costs us */
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                /* Nothing useful we can do here */
+            }
+        }
+    }
+
+    /*
+     * Wraps the platform SSLSocketFactory to count new TLS connections, and to notice when a
+     * handshake resumed a session we have seen before instead of negotiating a new one.
+     */
+    private static final class CountingSslSocketFactory extends SSLSocketFactory {
+
+        /* How many recent session IDs to remember when looking for resumed sessions */
+        private static final int MAX_REMEMBERED_SESSIONS = 32;
+
+        private final SSLSocketFactory mDelegate;
+
+        private final Map<String, Boolean> mSeenSessionIds =
+                new LinkedHashMap<String, Boolean>(MAX_REMEMBERED_SESSIONS, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > MAX_REMEMBERED_SESSIONS;
+                    }
+                };
+
+        private final HandshakeCompletedListener mHandshakeListener =
+                new HandshakeCompletedListener() {
+                    @Override
+                    public void handshakeCompleted(HandshakeCompletedEvent event) {
+                        String sessionId = toHex(event.getSession().getId());
+                        boolean resumed;
+                        synchronized (mSeenSessionIds) {
+                            resumed = sessionId.length() > 0
+                                    && mSeenSessionIds.containsKey(sessionId);
+                            mSeenSessionIds.put(sessionId, Boolean.TRUE);
+                        }
+                        SyncMetrics.recordTlsHandshake(resumed);
+                    }
+                };
+
+        CountingSslSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException {
+            return track(mDelegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return track(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return track(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return track(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return track(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                   int localPort) throws IOException {
+            return track(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private Socket track(Socket socket) {
+            SyncMetrics.recordNewConnection();
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).addHandshakeCompletedListener(mHandshakeListener);
+            }
+            return socket;
+        }
+
+        private static String toHex(byte[] bytes) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+}
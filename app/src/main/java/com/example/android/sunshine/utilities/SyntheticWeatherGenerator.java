@@ -0,0 +1,204 @@
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates realistic, deterministic weather for testing the data layer at scale. Unlike
+ * FakeDataUtils' random days, consecutive days are correlated the way real weather is:
+ * <ul>
+ *     <li>Temperatures follow the seasons of the location's hemisphere, plus an anomaly that
+ *     persists for days</li>
+ *     <li>Pressure wanders around 1013 hPa, and humidity rises as it falls</li>
+ *     <li>Humid days have a smaller range between high and low</li>
+ *     <li>Wind picks up when pressure changes quickly, and its direction veers gradually</li>
+ *     <li>The condition follows from all of the above: storms and rain in humid low pressure,
+ *     snow when it is also cold, clear skies when it is dry</li>
+ * </ul>
+ * The same seed and location always produce the same series, so a failure found with one can be
+ * reproduced exactly. Each location gets its own climate and coordinates, which matters to the
+ * JSON responses this produces for the fake weather server; the weather table itself holds a
+ * single location.
+ * <p>
+ * Days are generated one at a time into a ForecastBatch, so any number of them can be streamed
+ * into WeatherProvider with constant memory. See FakeDataUtils.insertSyntheticHistory.
+ */
+public class SyntheticWeatherGenerator {
+
+    private static final double DAYS_PER_YEAR = 365.25;
+    private static final double STANDARD_PRESSURE = 1013.25;
+
+    private final Random mRandom;
+
+    /* The location's climate, fixed for the life of the generator */
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mMeanTemp;
+    private final double mSeasonalAmplitude;
+    private final double mWarmestDayOfYear;
+    private final double mDailyRange;
+    private final double mMeanHumidity;
+
+    /* The state carried from one day to the next */
+    private long mNextDate;
+    private double mTempAnomaly;
+    private double mPressure = STANDARD_PRESSURE;
+    private double mHumidityAnomaly;
+    private double mWindDirection;
+
+    /**
+     * @param seed      Chooses the series. Generators with the same seed and location produce the
+     *                  same days.
+     * @param location  Chooses the location, and with it the climate and coordinates
+     * @param firstDate The normalized UTC date of the first day to generate
+     */
+    public SyntheticWeatherGenerator(long seed, int location, long firstDate) {
+        if (!SunshineDateUtils.isDateNormalized(firstDate)) {
+            throw new IllegalArgumentException("First date must be normalized: " + firstDate);
+        }
+
+        /* Spread locations across the seed space, so that neighbouring ones aren't related */
+        mRandom = new Random(seed ^ (location * 0x9E3779B97F4A7C15L));
+
+        mLatitude = mRandom.nextDouble() * 140 - 70;
+        mLongitude = mRandom.nextDouble() * 360 - 180;
+
+        /* Colder and more seasonal away from the equator */
+        double distanceFromEquator = Math.abs(mLatitude) / 90;
+        mMeanTemp = 28 - 35 * distanceFromEquator + mRandom.nextGaussian() * 2;
+        mSeasonalAmplitude = 2 + 18 * distanceFromEquator;
+        mWarmestDayOfYear = mLatitude >= 0 ? 200 : 17;
+        mDailyRange = 6 + mRandom.nextDouble() * 8;
+        mMeanHumidity = 45 + mRandom.nextDouble() * 35;
+
+        mWindDirection = mRandom.nextDouble() * 360;
+        mNextDate = firstDate;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return The normalized UTC date of the next day this will generate
+     */
+    public long getNextDate() {
+        return mNextDate;
+    }
+
+    /**
+     * Generates days into a batch, continuing from the last day generated.
+     *
+     * @param batch   The batch to append days to
+     * @param maxDays The most days to generate. Fewer are generated if the batch fills up.
+     * @return The number of days generated
+     */
+    public int fill(ForecastBatch batch, int maxDays) {
+        int days = Math.min(maxDays, batch.capacity - batch.count);
+        for (int i = 0; i < days; i++) {
+            nextDay(batch);
+        }
+        return days;
+    }
+
+    /**
+     * Generates days as a response from the weather server, continuing from the last day
+     * generated. Sunshine dates a response's days itself, starting today, so only the weather
+     * carries over.
+     *
+     * @param days The number of days the response should hold
+     * @return The response's JSON
+     */
+    public String nextForecastJson(int days) {
+        ForecastBatch batch = new ForecastBatch(days);
+        fill(batch, days);
+
+        StringBuilder json = new StringBuilder(64 + days * 160);
+        json.append("{\"cod\":\"200\",\"city\":{\"name\":\"Synthetic\",\"coord\":{\"lat\":")
+                .append(format(mLatitude)).append(",\"lon\":").append(format(mLongitude))
+                .append("}},\"cnt\":").append(days).append(",\"list\":[");
+        for (int i = 0; i < batch.count; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"pressure\":").append(format(batch.pressure[i]))
+                    .append(",\"humidity\":").append(Math.round(batch.humidity[i]))
+                    .append(",\"speed\":").append(format(batch.windSpeed[i]))
+                    .append(",\"deg\":").append(Math.round(batch.degrees[i]))
+                    .append(",\"temp\":{\"min\":").append(format(batch.minTemps[i]))
+                    .append(",\"max\":").append(format(batch.maxTemps[i]))
+                    .append("},\"weather\":[{\"id\":").append(batch.weatherIds[i])
+                    .append("}]}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    private void nextDay(ForecastBatch batch) {
+        double dayOfYear = (mNextDate / SunshineDateUtils.DAY_IN_MILLIS) % DAYS_PER_YEAR;
+        double seasonal = mSeasonalAmplitude
+                * Math.cos(2 * Math.PI * (dayOfYear - mWarmestDayOfYear) / DAYS_PER_YEAR);
+
+        /* Warm and cold spells last several days */
+        mTempAnomaly = 0.8 * mTempAnomaly + mRandom.nextGaussian() * 2.5;
+
+        /* Pressure drifts, but is pulled back towards standard pressure */
+        double previousPressure = mPressure;
+        mPressure += 0.3 * (STANDARD_PRESSURE - mPressure) + mRandom.nextGaussian() * 4;
+        double pressureChange = mPressure - previousPressure;
+
+        mHumidityAnomaly = 0.6 * mHumidityAnomaly + mRandom.nextGaussian() * 8;
+        double humidity = clamp(mMeanHumidity
+                - (mPressure - STANDARD_PRESSURE) * 1.5
+                + mHumidityAnomaly, 5, 100);
+
+        double meanTemp = mMeanTemp + seasonal + mTempAnomaly;
+        double range = mDailyRange * (1.3 - 0.6 * humidity / 100)
+                + Math.abs(mRandom.nextGaussian());
+        double maxTemp = meanTemp + range / 2;
+        double minTemp = meanTemp - range / 2;
+
+        double windSpeed = 1 + Math.abs(pressureChange) * 0.8
+                + Math.abs(mRandom.nextGaussian()) * 1.5;
+        mWindDirection = (mWindDirection + mRandom.nextGaussian() * 30 + 360) % 360;
+
+        batch.add(mNextDate,
+                getWeatherId(maxTemp, humidity, mPressure, windSpeed),
+                minTemp,
+                maxTemp,
+                humidity,
+                mPressure,
+                windSpeed,
+                mWindDirection);
+
+        mNextDate += SunshineDateUtils.DAY_IN_MILLIS;
+    }
+
+    /* Picks the OpenWeatherMap condition that goes with the day's weather */
+    private static int getWeatherId(double maxTemp, double humidity, double pressure,
+                                    double windSpeed) {
+        boolean freezing = maxTemp < 1;
+        if (pressure < 1000 && humidity > 80) {
+            if (maxTemp > 25) return 211;
+            return freezing ? 601 : 501;
+        }
+        if (humidity > 85) return freezing ? 600 : 500;
+        if (humidity > 75 && windSpeed < 2) return 741;
+        if (humidity > 65) return 803;
+        if (humidity > 50) return 801;
+        return 800;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /* Two decimals are plenty, and keep the responses close to the real server's in size */
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.sunshine;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.data.TestUtilities;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Builds the weather used by the performance tests, in the same shape as
+ * TestUtilities.createBulkInsertTestWeatherValues but for any number of days, along with the
+ * JSON response and list Cursor that the same days would arrive in.
+ */
+public final class PerformanceFixtures {
+
+    private PerformanceFixtures() {
+    }
+
+    /**
+     * @param days The number of consecutive days to build
+     * @return One ContentValues per day, starting on TestUtilities.DATE_NORMALIZED, each
+     * different from the last
+     */
+    public static ContentValues[] createWeatherValues(int days) {
+        return createWeatherValues(days, 0);
+    }
+
+    /**
+     * @param days   The number of consecutive days to build
+     * @param sample Shifts the pressure, humidity and wind along by this many days, so that
+     *               consecutive samples of the same days differ, as consecutive syncs would. The
+     *               kind of weather and the temperatures don't change, so no sample is worth a
+     *               notification just for being different from the last.
+     * @return One ContentValues per day, starting on TestUtilities.DATE_NORMALIZED, each
+     * different from the last
+     */
+    public static ContentValues[] createWeatherValues(int days, int sample) {
+        ContentValues[] weatherValues = new ContentValues[days];
+        long date = TestUtilities.DATE_NORMALIZED;
+
+        for (int i = 0; i < days; i++) {
+            int day = i + sample;
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_DATE, date);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 4);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 5.0 + i % 10);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 15.0 + i % 10);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 40.0 + day % 50);
+            values.put(WeatherEntry.COLUMN_PRESSURE, 1000.0 + day % 30);
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, 1.0 + day % 8);
+            values.put(WeatherEntry.COLUMN_DEGREES, (day * 15) % 360.0);
+            weatherValues[i] = values;
+
+            date += SunshineDateUtils.DAY_IN_MILLIS;
+        }
+
+        return weatherValues;
+    }
+
+    /**
+     * @param weatherValues The days to put in the response
+     * @return A response in the same shape as the weather server's, holding the given days
+     */
+    public static String createForecastJson(ContentValues[] weatherValues) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"cod\":\"200\",\"city\":{\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lat\":37.4192,\"lon\":-122.0574}},\"list\":[");
+        for (int i = 0; i < weatherValues.length; i++) {
+            ContentValues values = weatherValues[i];
+            if (i > 0) json.append(',');
+            json.append("{\"pressure\":").append(values.getAsDouble(WeatherEntry.COLUMN_PRESSURE))
+                    .append(",\"humidity\":")
+                    .append(values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY))
+                    .append(",\"speed\":")
+                    .append(values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED))
+                    .append(",\"deg\":").append(values.getAsDouble(WeatherEntry.COLUMN_DEGREES))
+                    .append(",\"temp\":{\"min\":")
+                    .append(values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP))
+                    .append(",\"max\":")
+                    .append(values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP)).append('}')
+                    .append(",\"weather\":[{\"id\":")
+                    .append(values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID)).append("}]}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * @param weatherValues The days to put in the Cursor
+     * @return A Cursor over the given days with MainActivity's projection, as its Loader returns
+     */
+    public static MatrixCursor createMainForecastCursor(ContentValues[] weatherValues) {
+        String[] projection = MainActivity.MAIN_FORECAST_PROJECTION;
+        MatrixCursor cursor = new MatrixCursor(projection, weatherValues.length);
+        for (ContentValues values : weatherValues) {
+            Object[] row = new Object[projection.length];
+            for (int column = 0; column < projection.length; column++) {
+                row[column] = values.get(projection[column]);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+}
@@ -21,6 +21,7 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utils.PollingCheck;
@@ -52,10 +53,10 @@ import static junit.framework.Assert.assertTrue;
  * NOTE: If your WeatherContract class doesn't exactly match ours, THIS WILL NOT WORK as we've
  * provided and you will need to make changes to this code to use it to pass your tests.
  */
-class TestUtilities {
+public class TestUtilities {
 
     /* October 1st, 2016 at midnight, GMT time */
-    static final long DATE_NORMALIZED = 1475280000000L;
+    public static final long DATE_NORMALIZED = 1475280000000L;
 
     static final int BULK_INSERT_RECORDS_TO_INSERT = 10;
 
@@ -241,6 +242,19 @@ class TestUtilities {
             }.run();
             mHT.quit();
         }
+
+        /**
+         * Waits a while for a notification that shouldn't come, and fails if it does. Call this
+         * after waiting for a notification that was sent after the one that shouldn't come.
+         *
+         * @param message   The message to fail with
+         * @param waitMillis How long to give the notification to arrive
+         */
+        void assertNoNotification(String message, long waitMillis) {
+            SystemClock.sleep(waitMillis);
+            mHT.quit();
+            assertFalse(message, mContentChanged);
+        }
     }
 
     static String getConstantNameByStringValue(Class klass, String value)  {
@@ -0,0 +1,142 @@
+package com.example.android.sunshine.sync;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tiny HTTP server on the loopback interface that stands in for the weather server in tests.
+ * It answers requests with a scripted sequence of faults and responses, one per request, and
+ * repeats the last one once the script runs out.
+ */
+public class FaultyWeatherServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ServerSocket mServerSocket;
+    private final List<Response> mScript = new ArrayList<>();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    private static class Response {
+        /*
+         * 0 means drop the connection without answering, and -1 means never answer, leaving the
+         * connection open until the client gives up
+         */
+        final int statusCode;
+        final String body;
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+
+    public FaultyWeatherServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptRequests();
+            }
+        }, "FaultyWeatherServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /* Empties the script, so that the next response added answers every request after it */
+    public synchronized FaultyWeatherServer clearScript() {
+        mScript.clear();
+        return this;
+    }
+
+    /* Adds a response with the given status and body to the script */
+    public synchronized FaultyWeatherServer respond(int statusCode, String body) {
+        mScript.add(new Response(statusCode, body));
+        return this;
+    }
+
+    /* Adds a request that is answered by closing the connection to the script */
+    public synchronized FaultyWeatherServer dropConnection() {
+        mScript.add(new Response(0, null));
+        return this;
+    }
+
+    /* Adds a request that is never answered, so the client times out, to the script */
+    public synchronized FaultyWeatherServer stall() {
+        mScript.add(new Response(-1, null));
+        return this;
+    }
+
+    public URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + mServerSocket.getLocalPort() + "/weather");
+    }
+
+    /* The number of requests received so far */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+    }
+
+    private synchronized Response nextResponse(int request) {
+        return mScript.get(Math.min(request, mScript.size() - 1));
+    }
+
+    private void acceptRequests() {
+        while (!mServerSocket.isClosed()) {
+            Socket socket = null;
+            try {
+                socket = mServerSocket.accept();
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), UTF_8));
+
+                /* Skip the request line and headers; every request gets the next response */
+                String line;
+                do {
+                    line = reader.readLine();
+                } while (line != null && !line.isEmpty());
+
+                Response response = nextResponse(mRequestCount.getAndIncrement());
+                if (response.statusCode == -1) {
+                    /* Blocks until the client closes the connection after timing out */
+                    while (socket.getInputStream().read() != -1) {
+                        /* Ignore anything else the client sends */
+                    }
+                } else if (response.statusCode != 0) {
+                    byte[] body = response.body.getBytes(UTF_8);
+                    String headers = "HTTP/1.1 " + response.statusCode + " Scripted\r\n"
+                            + "Content-Type: application/json\r\n"
+                            + "Content-Length: " + body.length + "\r\n"
+                            + "Connection: close\r\n"
+                            + "\r\n";
+                    OutputStream out = socket.getOutputStream();
+                    out.write(headers.getBytes(UTF_8));
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                /* Either the test shut us down, or the client went away. Carry on either way. */
+            } finally {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                        /* Nothing useful we can do here */
+                    }
+                }
+            }
+        }
+    }
+}
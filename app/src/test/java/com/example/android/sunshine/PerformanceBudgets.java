@@ -0,0 +1,143 @@
+package com.example.android.sunshine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static junit.framework.Assert.fail;
+
+/**
+ * The performance budgets the JVM regression tests hold the hot paths to, and a report of how
+ * each measurement did against its budget.
+ * <p>
+ * Every budget can be overridden with a system property named "sunshine.budget." followed by the
+ * budget's name, for example:
+ * <pre>
+ * ./gradlew testDebugUnitTest -Dsunshine.budget.parseMicrosPerKb=500
+ * </pre>
+ * The defaults are set well above what a healthy build takes on a typical build machine, so
+ * that they catch regressions rather than slow machines. Tighten them on a known machine.
+ */
+public final class PerformanceBudgets {
+
+    private static final String PROPERTY_PREFIX = "sunshine.budget.";
+
+    /* Time to parse a forecast response, per KB of JSON. Lower is better. */
+    public static final String PARSE_MICROS_PER_KB = "parseMicrosPerKb";
+    private static final double DEFAULT_PARSE_MICROS_PER_KB = 2000;
+
+    /* Rows WeatherProvider.bulkInsert writes per second. Higher is better. */
+    public static final String INSERT_ROWS_PER_SECOND = "insertRowsPerSecond";
+    private static final double DEFAULT_INSERT_ROWS_PER_SECOND = 1000;
+
+    /* Time to query the weather table and read every column, per row. Lower is better. */
+    public static final String QUERY_MICROS_PER_ROW = "queryMicrosPerRow";
+    private static final double DEFAULT_QUERY_MICROS_PER_ROW = 2000;
+
+    /* Time WeatherProvider.delete takes per row deleted. Lower is better. */
+    public static final String DELETE_MICROS_PER_ROW = "deleteMicrosPerRow";
+    private static final double DEFAULT_DELETE_MICROS_PER_ROW = 2000;
+
+    /* Time ForecastAdapter.onBindViewHolder takes per row. Lower is better. */
+    public static final String BIND_MICROS_PER_ROW = "bindMicrosPerRow";
+    private static final double DEFAULT_BIND_MICROS_PER_ROW = 2000;
+
+    /* Bytes ForecastAdapter.onBindViewHolder allocates per row. Lower is better. */
+    public static final String BIND_BYTES_PER_ROW = "bindBytesPerRow";
+    private static final double DEFAULT_BIND_BYTES_PER_ROW = 64 * 1024;
+
+    /*
+     * Days FakeDataUtils.insertSyntheticHistory generates and streams into WeatherProvider per
+     * minute, through ForecastBatchCodec.put. Higher is better.
+     */
+    public static final String STREAM_ROWS_PER_MINUTE = "streamRowsPerMinute";
+    private static final double DEFAULT_STREAM_ROWS_PER_MINUTE = 1000000;
+
+    private final List<String> mLines = new ArrayList<>();
+    private boolean mExceeded;
+
+    /**
+     * @param name One of the budget names above
+     * @return The budget, from its system property if set, otherwise the default
+     */
+    public static double get(String name) {
+        String override = System.getProperty(PROPERTY_PREFIX + name);
+        if (override != null) {
+            return Double.parseDouble(override);
+        }
+
+        switch (name) {
+            case PARSE_MICROS_PER_KB:
+                return DEFAULT_PARSE_MICROS_PER_KB;
+            case INSERT_ROWS_PER_SECOND:
+                return DEFAULT_INSERT_ROWS_PER_SECOND;
+            case QUERY_MICROS_PER_ROW:
+                return DEFAULT_QUERY_MICROS_PER_ROW;
+            case DELETE_MICROS_PER_ROW:
+                return DEFAULT_DELETE_MICROS_PER_ROW;
+            case BIND_MICROS_PER_ROW:
+                return DEFAULT_BIND_MICROS_PER_ROW;
+            case BIND_BYTES_PER_ROW:
+                return DEFAULT_BIND_BYTES_PER_ROW;
+            case STREAM_ROWS_PER_MINUTE:
+                return DEFAULT_STREAM_ROWS_PER_MINUTE;
+            default:
+                throw new IllegalArgumentException("Unknown budget: " + name);
+        }
+    }
+
+    /**
+     * Records a measurement that must not be more than its budget.
+     *
+     * @param name     One of the budget names above
+     * @param measured What was measured, in the budget's unit
+     */
+    public void atMost(String name, double measured) {
+        double budget = get(name);
+        record(name, measured, "<=", budget, measured <= budget);
+    }
+
+    /**
+     * Records a measurement that must not be less than its budget.
+     *
+     * @param name     One of the budget names above
+     * @param measured What was measured, in the budget's unit
+     */
+    public void atLeast(String name, double measured) {
+        double budget = get(name);
+        record(name, measured, ">=", budget, measured >= budget);
+    }
+
+    /**
+     * Records that a budget couldn't be measured on this JVM, so that the report says so rather
+     * than leaving it out.
+     *
+     * @param name   One of the budget names above
+     * @param reason Why it couldn't be measured
+     */
+    public void notMeasured(String name, String reason) {
+        mLines.add(String.format(Locale.US, "  %-22s not measured: %s", name, reason));
+    }
+
+    /**
+     * Fails with the report if any measurement exceeded its budget.
+     */
+    public void assertWithinBudgets() {
+        if (!mExceeded) return;
+
+        StringBuilder report = new StringBuilder("Performance budgets:\n");
+        for (String line : mLines) {
+            report.append(line).append('\n');
+        }
+        report.append("Override a budget with -D").append(PROPERTY_PREFIX)
+                .append("<name>=<value> if the change is intended.\n");
+        fail(report.toString());
+    }
+
+    private void record(String name, double measured, String comparison, double budget,
+                        boolean withinBudget) {
+        if (!withinBudget) mExceeded = true;
+        mLines.add(String.format(Locale.US, "  %-22s %12.1f  budget %s %-12.1f %s",
+                name, measured, comparison, budget, withinBudget ? "ok" : "EXCEEDED"));
+    }
+}
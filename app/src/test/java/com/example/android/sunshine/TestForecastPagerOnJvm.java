@@ -0,0 +1,179 @@
+package com.example.android.sunshine;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCursorReader;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs ForecastPager against WeatherProvider on the JVM under Robolectric. Background reads are
+ * held until a test lets them finish, so each test decides what is in flight at any moment.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestForecastPagerOnJvm {
+
+    /* Two more pages than the pager keeps, and a last page that isn't full */
+    private static final int PAGE_COUNT = ForecastPager.MAX_PAGES + 2;
+    private static final int DAYS = (PAGE_COUNT - 1) * ForecastPager.PAGE_SIZE + 5;
+
+    private ContentValues[] mWeatherValues;
+
+    private ContentResolver mResolver;
+
+    /* Every onPageLoaded call, as "firstPosition+rowCount" */
+    private final List<String> mLoadedPages = new ArrayList<>();
+
+    private ForecastPager mPager;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        mWeatherValues = PerformanceFixtures.createWeatherValues(DAYS);
+        mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, mWeatherValues);
+
+        mPager = new ForecastPager(mResolver, ForecastBatchCursorReader.PROJECTION,
+                new ForecastPager.OnPageLoadedListener() {
+                    @Override
+                    public void onPageLoaded(int firstPosition, int rowCount, int oldCount) {
+                        mLoadedPages.add(firstPosition + "+" + rowCount);
+                    }
+                });
+
+        Robolectric.getBackgroundThreadScheduler().pause();
+    }
+
+    @Test
+    public void testScrollingPastMaxPagesAndBack() {
+        resetFromFirstPage();
+        assertEquals(ForecastPager.PAGE_SIZE, mPager.getCount());
+
+        /* Binding the top of the list is far enough from its end not to read ahead */
+        assertPageHolds(mPager.getPageFor(0), 0);
+        finishReads();
+        assertTrue(mLoadedPages.isEmpty());
+
+        /*
+         * Scrolling down one row at a time, each page should have been read ahead of time by the
+         * time the list gets to it, and the count should grow one page at a time.
+         */
+        for (int position = 0; position < mPager.getCount(); position++) {
+            ForecastBatch page = mPager.getPageFor(position);
+            assertNotNull("Position " + position + " should have been read ahead", page);
+            assertPageHolds(page, position);
+            finishReads();
+        }
+        assertEquals(DAYS, mPager.getCount());
+        assertEquals(PAGE_COUNT - 1, mLoadedPages.size());
+        assertEquals(ForecastPager.PAGE_SIZE + "+" + ForecastPager.PAGE_SIZE, mLoadedPages.get(0));
+        assertEquals((PAGE_COUNT - 1) * ForecastPager.PAGE_SIZE + "+5",
+                mLoadedPages.get(PAGE_COUNT - 2));
+
+        /* The last page was short, so reaching it doesn't read past the end */
+        mPager.getPageFor(DAYS - 1);
+        finishReads();
+        assertEquals(PAGE_COUNT - 1, mLoadedPages.size());
+
+        /* Only the last MAX_PAGES pages are still in memory */
+        for (int pageIndex = PAGE_COUNT - 1; pageIndex >= 0; pageIndex--) {
+            ForecastBatch page = mPager.getPageFor(pageIndex * ForecastPager.PAGE_SIZE);
+            if (pageIndex >= PAGE_COUNT - ForecastPager.MAX_PAGES) {
+                assertNotNull("Page " + pageIndex + " should still be in memory", page);
+            } else {
+                assertNull("Page " + pageIndex + " should have been dropped", page);
+            }
+        }
+
+        /*
+         * Scrolling back up reads the dropped pages again from the keys remembered for them,
+         * and finds the same days there.
+         */
+        finishReads();
+        int droppedRows = (PAGE_COUNT - ForecastPager.MAX_PAGES) * ForecastPager.PAGE_SIZE;
+        for (int position = 0; position < droppedRows; position += ForecastPager.PAGE_SIZE) {
+            ForecastBatch page = mPager.getPageFor(position);
+            assertNotNull("Position " + position + " should have been read again", page);
+            assertPageHolds(page, position);
+        }
+        assertEquals("Reading pages again shouldn't change the count", DAYS, mPager.getCount());
+    }
+
+    @Test
+    public void testClearDropsReadsInFlight() {
+        resetFromFirstPage();
+
+        /* The last row of the first page asks for the second page */
+        mPager.getPageFor(ForecastPager.PAGE_SIZE - 1);
+        mPager.clear();
+        finishReads();
+
+        assertTrue("A read started before clear should be thrown away", mLoadedPages.isEmpty());
+        assertEquals(0, mPager.getCount());
+
+        /* A read in flight across a reset is thrown away too, and doesn't block a new one */
+        resetFromFirstPage();
+        mPager.getPageFor(ForecastPager.PAGE_SIZE - 1);
+        resetFromFirstPage();
+        finishReads();
+        assertTrue(mLoadedPages.isEmpty());
+        assertEquals(ForecastPager.PAGE_SIZE, mPager.getCount());
+
+        mPager.getPageFor(ForecastPager.PAGE_SIZE - 1);
+        finishReads();
+        assertEquals(1, mLoadedPages.size());
+        assertEquals(2 * ForecastPager.PAGE_SIZE, mPager.getCount());
+        assertPageHolds(mPager.getPageFor(ForecastPager.PAGE_SIZE), ForecastPager.PAGE_SIZE);
+    }
+
+    /* Starts the pager over from the first page, as MainActivity's Loader would */
+    private void resetFromFirstPage() {
+        Cursor firstPage = mResolver.query(
+                WeatherContract.WeatherEntry.buildPageUri(Long.MIN_VALUE, ForecastPager.PAGE_SIZE),
+                ForecastBatchCursorReader.PROJECTION,
+                null,
+                null,
+                null);
+        try {
+            mPager.reset(firstPage, null);
+        } finally {
+            firstPage.close();
+        }
+    }
+
+    /* Lets every read in flight finish, and delivers it on the main thread */
+    private static void finishReads() {
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.idleMainLooper();
+    }
+
+    private void assertPageHolds(ForecastBatch page, int position) {
+        int row = ForecastPager.getIndexInPage(position);
+        assertTrue("Position " + position + " is past the end of its page", row < page.count);
+        long expectedDate =
+                mWeatherValues[position].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        assertEquals("Position " + position + " holds the wrong day", expectedDate,
+                page.dates[row]);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.android.sunshine;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Holds the data and UI hot paths to the budgets in {@link PerformanceBudgets}: parsing a
+ * forecast, inserting it, and binding it to the forecast list. Each test runs on the JVM under
+ * Robolectric, warms up, and then takes the median of several rounds, so that one slow round
+ * doesn't fail the build. A test that goes over budget fails with a report of every measurement.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestPerformanceBudgets {
+
+    /* A year of days, so that per-day costs dominate fixed ones */
+    private static final int DAYS = 365;
+
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 9;
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    private final ContentValues[] mWeatherValues = PerformanceFixtures.createWeatherValues(DAYS);
+
+    @Test
+    public void parseStaysWithinBudget() throws Exception {
+        String json = PerformanceFixtures.createForecastJson(mWeatherValues);
+        double kilobytes = json.length() / 1024.0;
+
+        long[] rounds = new long[MEASURED_ROUNDS];
+        for (int i = -WARM_UP_ROUNDS; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            ForecastBatch batch = OpenWeatherJsonUtils.getForecastBatchFromJson(mContext, json);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(DAYS, batch.count);
+            if (i >= 0) rounds[i] = elapsed;
+        }
+
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atMost(PerformanceBudgets.PARSE_MICROS_PER_KB, median(rounds) / 1000.0 / kilobytes);
+        budgets.assertWithinBudgets();
+    }
+
+    @Test
+    public void bulkInsertStaysWithinBudget() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        ContentResolver resolver = mContext.getContentResolver();
+
+        long[] rounds = new long[MEASURED_ROUNDS];
+        for (int i = -WARM_UP_ROUNDS; i < MEASURED_ROUNDS; i++) {
+            /* Start from an empty table, so that every row is really written */
+            resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+
+            long start = System.nanoTime();
+            int inserted = resolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                    mWeatherValues);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(DAYS, inserted);
+            if (i >= 0) rounds[i] = elapsed;
+        }
+
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atLeast(PerformanceBudgets.INSERT_ROWS_PER_SECOND,
+                DAYS / (median(rounds) / 1e9));
+        budgets.assertWithinBudgets();
+    }
+
+    @Test
+    public void bindStaysWithinBudget() {
+        Context themedContext = new ContextThemeWrapper(mContext, R.style.AppTheme_Forecast);
+        ForecastAdapter adapter = new ForecastAdapter(themedContext, null);
+
+        /*
+         * A first page one row short of full is the whole forecast as far as the adapter can
+         * tell, so binding it never reads another page in the middle of a measurement.
+         */
+        ContentValues[] firstPage = Arrays.copyOf(mWeatherValues, ForecastPager.PAGE_SIZE - 1);
+        adapter.swapFirstPage(PerformanceFixtures.createMainForecastCursor(firstPage), null);
+        int rowCount = adapter.getItemCount();
+
+        /* Every day after the first uses the same view type, so one holder can bind them all */
+        ForecastAdapter.ForecastAdapterViewHolder holder = adapter.createViewHolder(
+                new FrameLayout(themedContext), adapter.getItemViewType(1));
+
+        long[] rounds = new long[MEASURED_ROUNDS];
+        long[] roundBytes = new long[MEASURED_ROUNDS];
+        for (int i = -WARM_UP_ROUNDS; i < MEASURED_ROUNDS; i++) {
+            long startBytes = getAllocatedBytes();
+            long start = System.nanoTime();
+            for (int position = 1; position < rowCount; position++) {
+                adapter.onBindViewHolder(holder, position);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = getAllocatedBytes() - startBytes;
+
+            if (i >= 0) {
+                rounds[i] = elapsed;
+                roundBytes[i] = allocated;
+            }
+        }
+
+        int rowsPerRound = rowCount - 1;
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atMost(PerformanceBudgets.BIND_MICROS_PER_ROW,
+                median(rounds) / 1000.0 / rowsPerRound);
+        if (getAllocatedBytes() >= 0) {
+            budgets.atMost(PerformanceBudgets.BIND_BYTES_PER_ROW,
+                    (double) median(roundBytes) / rowsPerRound);
+        } else {
+            budgets.notMeasured(PerformanceBudgets.BIND_BYTES_PER_ROW,
+                    "this JVM doesn't count allocations per thread");
+        }
+        budgets.assertWithinBudgets();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /*
+     * The bytes this thread has allocated so far, or -1 if the JVM can't tell. HotSpot's
+     * ThreadMXBean can, but isn't part of the API tests compile against, so it is called
+     * reflectively.
+     */
+    private static long getAllocatedBytes() {
+        try {
+            Object threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean")
+                    .invoke(null);
+            Method getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) getThreadAllocatedBytes.invoke(threadBean,
+                    Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
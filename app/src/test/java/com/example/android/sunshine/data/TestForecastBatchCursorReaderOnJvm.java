@@ -0,0 +1,91 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.PerformanceFixtures;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks the reader generated for ForecastBatch: that its projection and indices line up with
+ * the batch's arrays, and that it never writes past a batch's capacity.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestForecastBatchCursorReaderOnJvm {
+
+    private static final int DAYS = 20;
+
+    private final ContentValues[] mWeatherValues = PerformanceFixtures.createWeatherValues(DAYS);
+
+    @Test
+    public void testProjectionMatchesIndices() {
+        String[] projection = ForecastBatchCursorReader.PROJECTION;
+        assertEquals(8, projection.length);
+        assertEquals(WeatherContract.WeatherEntry.COLUMN_DATE,
+                projection[ForecastBatchCursorReader.INDEX_DATES]);
+        assertEquals(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                projection[ForecastBatchCursorReader.INDEX_WEATHER_IDS]);
+        assertEquals(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                projection[ForecastBatchCursorReader.INDEX_WIND_SPEED]);
+        assertEquals(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                projection[ForecastBatchCursorReader.INDEX_DEGREES]);
+    }
+
+    @Test
+    public void testReadCopiesEveryColumn() {
+        Cursor cursor = PerformanceFixtures.createMainForecastCursor(mWeatherValues);
+        ForecastBatch batch = new ForecastBatch(DAYS);
+        try {
+            assertEquals(DAYS, ForecastBatchCursorReader.read(cursor, batch));
+        } finally {
+            cursor.close();
+        }
+
+        /* The same rows, copied without a Cursor */
+        ForecastBatch expected = ForecastBatch.fromContentValues(mWeatherValues);
+        assertEquals(expected.count, batch.count);
+        assertTrue(Arrays.equals(expected.dates, batch.dates));
+        assertTrue(Arrays.equals(expected.weatherIds, batch.weatherIds));
+        assertTrue(Arrays.equals(expected.minTemps, batch.minTemps));
+        assertTrue(Arrays.equals(expected.maxTemps, batch.maxTemps));
+        assertTrue(Arrays.equals(expected.humidity, batch.humidity));
+        assertTrue(Arrays.equals(expected.pressure, batch.pressure));
+        assertTrue(Arrays.equals(expected.windSpeed, batch.windSpeed));
+        assertTrue(Arrays.equals(expected.degrees, batch.degrees));
+    }
+
+    @Test
+    public void testReadStopsWhenTheBatchIsFull() {
+        Cursor cursor = PerformanceFixtures.createMainForecastCursor(mWeatherValues);
+        try {
+            ForecastBatch batch = new ForecastBatch(DAYS / 2);
+            assertEquals(DAYS / 2, ForecastBatchCursorReader.read(cursor, batch));
+
+            /* The Cursor is left on the last row read, so the next batch carries on after it */
+            assertEquals(DAYS / 2 - 1, cursor.getPosition());
+            ForecastBatch rest = new ForecastBatch(DAYS);
+            assertEquals(DAYS - DAYS / 2, ForecastBatchCursorReader.read(cursor, rest));
+            long secondHalfDate = mWeatherValues[DAYS / 2]
+                    .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            assertEquals(secondHalfDate, rest.dates[0]);
+
+            try {
+                ForecastBatchCursorReader.readRow(cursor, batch);
+                fail("readRow should refuse to write past the batch's capacity");
+            } catch (IllegalStateException expected) {
+                /* Expected */
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.PerformanceBudgets;
+import com.example.android.sunshine.PerformanceFixtures;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+
+import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
+import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs WeatherProvider and WeatherDbHelper on the JVM under Robolectric, against a real SQLite
+ * database on the host, so that changes to the data layer can be checked on any build machine.
+ * <p>
+ * Besides checking that bulkInsert, query and delete work, the timing tests measure each of them
+ * on a year of weather and hold the median to its budget in {@link PerformanceBudgets}. Host
+ * timings don't predict device timings, but they do show a change that makes one of them several
+ * times slower.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestWeatherProviderOnJvm {
+
+    /* A year of days, enough for the cost of each row to dominate */
+    private static final int TIMING_DAYS = 365;
+
+    /* Each operation is timed this many times, and the median is held to its budget */
+    private static final int TIMING_RUNS = 9;
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        mResolver = mContext.getContentResolver();
+    }
+
+    @Test
+    public void testBulkInsertThenQuery() {
+        ContentValues[] weatherValues = createBulkInsertTestWeatherValues();
+
+        int inserted = mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                weatherValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, inserted);
+
+        Cursor cursor = mResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+            for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+                assertTrue(cursor.moveToNext());
+                TestUtilities.validateCurrentRecord("Row " + i + " doesn't match what was inserted",
+                        cursor, weatherValues[i]);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testDeleteRemovesEveryRow() {
+        mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                createBulkInsertTestWeatherValues());
+
+        int deleted = mResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, deleted);
+        assertEquals(0, countRows());
+    }
+
+    @Test
+    public void testPagesCoverEveryRowOnce() {
+        ContentValues[] weatherValues = PerformanceFixtures.createWeatherValues(TIMING_DAYS);
+        mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+        /* A page size that doesn't divide the table, so that the last page is a short one */
+        int pageSize = 50;
+        long afterDate = Long.MIN_VALUE;
+        int rows = 0;
+        int pages = 0;
+        while (true) {
+            Cursor cursor = mResolver.query(
+                    WeatherContract.WeatherEntry.buildPageUri(afterDate, pageSize),
+                    new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                    null,
+                    null,
+                    null);
+            try {
+                assertTrue("A page held more rows than its limit", cursor.getCount() <= pageSize);
+                while (cursor.moveToNext()) {
+                    long date = cursor.getLong(0);
+                    assertEquals("Pages skipped or repeated a row",
+                            (long) weatherValues[rows]
+                                    .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                            date);
+                    afterDate = date;
+                    rows++;
+                }
+                pages++;
+                if (cursor.getCount() < pageSize) break;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        assertEquals(TIMING_DAYS, rows);
+        assertEquals(TIMING_DAYS / pageSize + 1, pages);
+    }
+
+    @Test
+    public void testPageAppliesSelection() {
+        ContentValues[] weatherValues = PerformanceFixtures.createWeatherValues(TIMING_DAYS);
+        mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+        long afterDate = weatherValues[9].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        long untilDate = weatherValues[19].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+        /* The page's own date argument mustn't shift the caller's selection arguments */
+        Cursor cursor = mResolver.query(
+                WeatherContract.WeatherEntry.buildPageUri(afterDate, TIMING_DAYS),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(untilDate)},
+                null);
+        try {
+            assertEquals(10, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals((long) weatherValues[10]
+                    .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE), cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testBulkInsertTiming() {
+        ContentValues[] weatherValues = PerformanceFixtures.createWeatherValues(TIMING_DAYS);
+
+        long[] runs = new long[TIMING_RUNS];
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            mResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+
+            long start = System.nanoTime();
+            int inserted = mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                    weatherValues);
+            runs[i] = System.nanoTime() - start;
+
+            assertEquals(TIMING_DAYS, inserted);
+        }
+
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atLeast(PerformanceBudgets.INSERT_ROWS_PER_SECOND,
+                TIMING_DAYS / (median(runs) / 1e9));
+        budgets.assertWithinBudgets();
+    }
+
+    @Test
+    public void testQueryTiming() {
+        mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                PerformanceFixtures.createWeatherValues(TIMING_DAYS));
+
+        long[] runs = new long[TIMING_RUNS];
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = mResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                    null,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            int rows = 0;
+            try {
+                /* Read every column, as the list and detail screens between them do */
+                int columnCount = cursor.getColumnCount();
+                while (cursor.moveToNext()) {
+                    for (int column = 0; column < columnCount; column++) {
+                        cursor.getDouble(column);
+                    }
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+            runs[i] = System.nanoTime() - start;
+
+            assertEquals(TIMING_DAYS, rows);
+        }
+
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atMost(PerformanceBudgets.QUERY_MICROS_PER_ROW,
+                median(runs) / 1000.0 / TIMING_DAYS);
+        budgets.assertWithinBudgets();
+    }
+
+    @Test
+    public void testDeleteTiming() {
+        ContentValues[] weatherValues = PerformanceFixtures.createWeatherValues(TIMING_DAYS);
+
+        long[] runs = new long[TIMING_RUNS];
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            mResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+            /* Deletes the older half, the way a sync removes days that have passed */
+            long middleDate = weatherValues[TIMING_DAYS / 2]
+                    .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+            long start = System.nanoTime();
+            int deleted = mResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[]{Long.toString(middleDate)});
+            runs[i] = System.nanoTime() - start;
+
+            assertEquals(TIMING_DAYS / 2, deleted);
+            assertEquals(TIMING_DAYS - TIMING_DAYS / 2, countRows());
+        }
+
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atMost(PerformanceBudgets.DELETE_MICROS_PER_ROW,
+                median(runs) / 1000.0 / (TIMING_DAYS / 2));
+        budgets.assertWithinBudgets();
+    }
+
+    private int countRows() {
+        Cursor cursor = mResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long median(long[] runNanos) {
+        long[] sorted = runNanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
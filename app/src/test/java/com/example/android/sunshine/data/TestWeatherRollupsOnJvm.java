@@ -0,0 +1,244 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.sunshine.PerformanceFixtures;
+import com.example.android.sunshine.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that WeatherProvider keeps the rollup table in step with the weather table through
+ * every kind of write, and that the rebuild and check methods do what WeatherContract says.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestWeatherRollupsOnJvm {
+
+    /*
+     * PerformanceFixtures starts on Saturday 1 October 2016, so a year of days covers exactly 12
+     * months, and 53 weeks counting the partial ones at either end.
+     */
+    private static final int DAYS = 365;
+    private static final int MONTHS = 12;
+    private static final int WEEKS = 53;
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    private ContentResolver mResolver;
+    private ContentValues[] mWeatherValues;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        mResolver = mContext.getContentResolver();
+        mWeatherValues = PerformanceFixtures.createWeatherValues(DAYS);
+    }
+
+    @Test
+    public void testPeriodBoundaries() {
+        /* Wednesday 15 March 2017 */
+        long date = utcDate(2017, Calendar.MARCH, 15);
+
+        long weekStart = WeatherRollups.getPeriodStart(RollupEntry.PERIOD_WEEK, date);
+        assertEquals(utcDate(2017, Calendar.MARCH, 13), weekStart);
+        assertEquals(utcDate(2017, Calendar.MARCH, 20),
+                WeatherRollups.getPeriodEnd(RollupEntry.PERIOD_WEEK, weekStart));
+
+        /* A Monday starts its own week */
+        assertEquals(weekStart, WeatherRollups.getPeriodStart(RollupEntry.PERIOD_WEEK, weekStart));
+
+        long monthStart = WeatherRollups.getPeriodStart(RollupEntry.PERIOD_MONTH, date);
+        assertEquals(utcDate(2017, Calendar.MARCH, 1), monthStart);
+        assertEquals(utcDate(2017, Calendar.APRIL, 1),
+                WeatherRollups.getPeriodEnd(RollupEntry.PERIOD_MONTH, monthStart));
+    }
+
+    @Test
+    public void testBulkInsertMaintainsRollups() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+
+        assertEquals(WEEKS, countRows(RollupEntry.WEEK_URI));
+        assertEquals(MONTHS, countRows(RollupEntry.MONTH_URI));
+        assertEquals(0, checkRollups());
+        assertMonthMatchesWeather(utcDate(2017, Calendar.FEBRUARY, 1),
+                utcDate(2017, Calendar.MARCH, 1));
+    }
+
+    @Test
+    public void testReplacingADayUpdatesItsPeriods() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+
+        /* Make one day in February far colder than any other */
+        ContentValues coldDay = new ContentValues(mWeatherValues[130]);
+        coldDay.put(WeatherEntry.COLUMN_MIN_TEMP, -40.0);
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, new ContentValues[]{coldDay});
+
+        long date = coldDay.getAsLong(WeatherEntry.COLUMN_DATE);
+        long monthStart = WeatherRollups.getPeriodStart(RollupEntry.PERIOD_MONTH, date);
+        assertEquals(-40.0, readRollupMinTemp(RollupEntry.MONTH_URI, monthStart));
+        assertEquals(-40.0, readRollupMinTemp(RollupEntry.WEEK_URI,
+                WeatherRollups.getPeriodStart(RollupEntry.PERIOD_WEEK, date)));
+        assertEquals(0, checkRollups());
+    }
+
+    @Test
+    public void testPutForecastBatchMaintainsRollups() {
+        ForecastBatchCodec.put(mResolver, ForecastBatch.fromContentValues(mWeatherValues));
+
+        assertEquals(WEEKS, countRows(RollupEntry.WEEK_URI));
+        assertEquals(MONTHS, countRows(RollupEntry.MONTH_URI));
+        assertEquals(0, checkRollups());
+    }
+
+    @Test
+    public void testDeleteMaintainsRollups() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+
+        /* Delete the first three months, and a single day in the middle of the fifth */
+        long januaryFirst = utcDate(2017, Calendar.JANUARY, 1);
+        mResolver.delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(januaryFirst)});
+        long februaryTenth = utcDate(2017, Calendar.FEBRUARY, 10);
+        mResolver.delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(februaryTenth)});
+
+        assertEquals(MONTHS - 3, countRows(RollupEntry.MONTH_URI));
+        assertEquals(0, checkRollups());
+        assertMonthMatchesWeather(utcDate(2017, Calendar.FEBRUARY, 1),
+                utcDate(2017, Calendar.MARCH, 1));
+
+        /* Deleting everything leaves no rollups behind */
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        assertEquals(0, countRows(RollupEntry.WEEK_URI));
+        assertEquals(0, countRows(RollupEntry.MONTH_URI));
+    }
+
+    @Test
+    public void testCheckFindsAndRebuildRepairsDamage() {
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, mWeatherValues);
+
+        /* Damage the rollups behind the provider's back: one wrong, one missing, one extra */
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues wrong = new ContentValues();
+        wrong.put(RollupEntry.COLUMN_MAX_TEMP, 99.0);
+        db.update(RollupEntry.TABLE_NAME, wrong,
+                RollupEntry.COLUMN_PERIOD + " = " + RollupEntry.PERIOD_MONTH
+                        + " AND " + RollupEntry.COLUMN_PERIOD_START + " = "
+                        + utcDate(2017, Calendar.MARCH, 1),
+                null);
+        db.delete(RollupEntry.TABLE_NAME,
+                RollupEntry.COLUMN_PERIOD + " = " + RollupEntry.PERIOD_MONTH
+                        + " AND " + RollupEntry.COLUMN_PERIOD_START + " = "
+                        + utcDate(2017, Calendar.APRIL, 1),
+                null);
+        ContentValues extra = new ContentValues();
+        extra.put(RollupEntry.COLUMN_PERIOD, RollupEntry.PERIOD_MONTH);
+        extra.put(RollupEntry.COLUMN_PERIOD_START, utcDate(2020, Calendar.JANUARY, 1));
+        extra.put(RollupEntry.COLUMN_PERIOD_END, utcDate(2020, Calendar.FEBRUARY, 1));
+        extra.put(RollupEntry.COLUMN_DAY_COUNT, 1);
+        for (String column : new String[]{RollupEntry.COLUMN_MIN_TEMP,
+                RollupEntry.COLUMN_MAX_TEMP, RollupEntry.COLUMN_MEAN_MIN_TEMP,
+                RollupEntry.COLUMN_MEAN_MAX_TEMP, RollupEntry.COLUMN_MEAN_HUMIDITY,
+                RollupEntry.COLUMN_MEAN_PRESSURE, RollupEntry.COLUMN_MEAN_WIND_SPEED}) {
+            extra.put(column, 0.0);
+        }
+        db.insert(RollupEntry.TABLE_NAME, null, extra);
+        dbHelper.close();
+
+        assertEquals(3, checkRollups());
+
+        Bundle result = mResolver.call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_REBUILD_ROLLUPS, null, null);
+        assertEquals(WEEKS + MONTHS, result.getInt(WeatherContract.EXTRA_ROW_COUNT));
+        assertEquals(0, checkRollups());
+    }
+
+    private int checkRollups() {
+        Bundle result = mResolver.call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_CHECK_ROLLUPS, null, null);
+        return result.getInt(WeatherContract.EXTRA_MISMATCH_COUNT, -1);
+    }
+
+    /* Compares a month's rollup with a GROUP BY over the weather table */
+    private void assertMonthMatchesWeather(long monthStart, long monthEnd) {
+        Cursor expected = mResolver.query(WeatherEntry.CONTENT_URI,
+                new String[]{"COUNT(*)", "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + ")",
+                        "MAX(" + WeatherEntry.COLUMN_MAX_TEMP + ")",
+                        "AVG(" + WeatherEntry.COLUMN_HUMIDITY + ")"},
+                WeatherEntry.COLUMN_DATE + " >= ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(monthStart), Long.toString(monthEnd)},
+                null);
+        Cursor actual = mResolver.query(RollupEntry.MONTH_URI,
+                new String[]{RollupEntry.COLUMN_DAY_COUNT, RollupEntry.COLUMN_MIN_TEMP,
+                        RollupEntry.COLUMN_MAX_TEMP, RollupEntry.COLUMN_MEAN_HUMIDITY},
+                RollupEntry.COLUMN_PERIOD_START + " = ?",
+                new String[]{Long.toString(monthStart)},
+                null);
+        try {
+            assertTrue(expected.moveToFirst());
+            assertTrue("The month has no rollup", actual.moveToFirst());
+            assertEquals(expected.getInt(0), actual.getInt(0));
+            assertEquals(expected.getDouble(1), actual.getDouble(1));
+            assertEquals(expected.getDouble(2), actual.getDouble(2));
+            assertEquals(expected.getDouble(3), actual.getDouble(3), 1e-9);
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    private double readRollupMinTemp(Uri uri, long periodStart) {
+        Cursor cursor = mResolver.query(uri,
+                new String[]{RollupEntry.COLUMN_MIN_TEMP},
+                RollupEntry.COLUMN_PERIOD_START + " = ?",
+                new String[]{Long.toString(periodStart)},
+                null);
+        try {
+            assertTrue("The period has no rollup", cursor.moveToFirst());
+            return cursor.getDouble(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countRows(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long utcDate(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day);
+        long date = calendar.getTimeInMillis();
+        assertTrue(SunshineDateUtils.isDateNormalized(date));
+        return date;
+    }
+}
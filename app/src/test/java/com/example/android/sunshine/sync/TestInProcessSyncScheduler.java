@@ -0,0 +1,118 @@
+package com.example.android.sunshine.sync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests when the InProcessSyncScheduler runs jobs, and that it batches jobs with overlapping
+ * windows into one wake-up. These run on the JVM.
+ */
+public class TestInProcessSyncScheduler {
+
+    private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int HOUR_IN_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    /* Every run, as "tag@hours since the start" */
+    private final List<String> mRuns = new ArrayList<>();
+
+    /* Tags of jobs whose runs should fail and be retried */
+    private final List<String> mFailing = new ArrayList<>();
+
+    private InProcessSyncScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mScheduler = new InProcessSyncScheduler(new InProcessSyncScheduler.JobRunner() {
+            @Override
+            public boolean run(SyncJob job, long nowMillis) {
+                mRuns.add(job.getTag() + "@" + ((double) nowMillis / HOUR_IN_MILLIS));
+                return mFailing.contains(job.getTag());
+            }
+        }, 0);
+    }
+
+    @Test
+    public void testJobRunsAtTheEndOfItsWindow() {
+        mScheduler.schedule(createJob("sync", 3, 1));
+
+        assertEquals(0, mScheduler.advanceTo(3 * HOUR_IN_MILLIS));
+        assertEquals(1, mScheduler.advanceTo(4 * HOUR_IN_MILLIS));
+        assertEquals(1, mScheduler.advanceTo(8 * HOUR_IN_MILLIS));
+
+        assertEquals("[sync@4.0, sync@8.0]", mRuns.toString());
+    }
+
+    @Test
+    public void testOverlappingWindowsShareAWakeUp() {
+        mScheduler.schedule(createJob("sync", 3, 1));
+        mScheduler.schedule(createJob("cleanup", 3, 2));
+        mScheduler.schedule(createJob("report", 6, 1));
+
+        mScheduler.advanceTo(4 * HOUR_IN_MILLIS);
+
+        assertEquals("Jobs whose windows had opened should run together",
+                "[sync@4.0, cleanup@4.0]", mRuns.toString());
+        assertEquals(1, mScheduler.getWakeUpCount());
+        assertEquals(2, mScheduler.getRunCount());
+
+        mScheduler.advanceTo(24 * HOUR_IN_MILLIS);
+
+        assertTrue("Batching should take fewer wake-ups than runs",
+                mScheduler.getWakeUpCount() < mScheduler.getRunCount());
+    }
+
+    @Test
+    public void testFailedRunsBackOffExponentially() {
+        mScheduler.schedule(createJob("sync", 3, 0));
+        mFailing.add("sync");
+
+        mScheduler.advanceTo(4 * HOUR_IN_MILLIS + HOUR_IN_MILLIS / 4);
+
+        /* The job's backoff starts at a quarter of an hour, doubles, and is capped at half */
+        assertEquals("[sync@3.0, sync@3.25, sync@3.75, sync@4.25]", mRuns.toString());
+
+        mFailing.clear();
+        mScheduler.advanceTo(8 * HOUR_IN_MILLIS);
+
+        assertEquals("A run that succeeds should go back to the job's interval",
+                "[sync@3.0, sync@3.25, sync@3.75, sync@4.25, sync@4.75, sync@7.75]",
+                mRuns.toString());
+    }
+
+    @Test
+    public void testCancelledJobDoesNotRun() {
+        mScheduler.schedule(createJob("sync", 3, 1));
+        mScheduler.cancel("sync");
+
+        assertEquals(0, mScheduler.advanceTo(24 * HOUR_IN_MILLIS));
+        assertEquals(Long.MAX_VALUE, mScheduler.getNextWakeUpMillis());
+        assertEquals(0, mRuns.size());
+    }
+
+    @Test
+    public void testSchedulingAgainReplacesTheJob() {
+        mScheduler.schedule(createJob("sync", 3, 1));
+        mScheduler.advanceTo(2 * HOUR_IN_MILLIS);
+        mScheduler.schedule(createJob("sync", 3, 1));
+
+        mScheduler.advanceTo(6 * HOUR_IN_MILLIS);
+
+        assertEquals("[sync@6.0]", mRuns.toString());
+    }
+
+    private static SyncJob createJob(String tag, int intervalHours, int flexHours) {
+        return new SyncJob(tag,
+                intervalHours * HOUR_IN_SECONDS,
+                flexHours * HOUR_IN_SECONDS,
+                true,
+                HOUR_IN_SECONDS / 4,
+                HOUR_IN_SECONDS / 2);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.PerformanceFixtures;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+import com.example.android.sunshine.utilities.NetworkUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs SunshineSyncTask on the JVM under Robolectric, from a {@link FaultyWeatherServer} through
+ * the parser into WeatherProvider and a real SQLite database on the host.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestSunshineSyncTaskOnJvm {
+
+    private static final int FORECAST_DAYS = 14;
+
+    private static final int TIMING_RUNS = 9;
+
+    /* Far above what a healthy build takes; see TestWeatherProviderOnJvm */
+    private static final long MAX_SYNC_MILLIS = 2000;
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    private FaultyWeatherServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+
+        mServer = new FaultyWeatherServer();
+        NetworkUtils.setBaseUrl(mServer.getUrl().toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        NetworkUtils.setBaseUrl(null);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testSyncStoresForecast() {
+        mServer.respond(200, PerformanceFixtures.createForecastJson(
+                PerformanceFixtures.createWeatherValues(FORECAST_DAYS)));
+
+        assertEquals(SunshineSyncTask.SYNC_RESULT_SUCCESS, SunshineSyncTask.syncWeather(mContext));
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(FORECAST_DAYS, countWeatherRows());
+    }
+
+    @Test
+    public void testFreshResponseIsNotFetchedAgain() {
+        mServer.respond(200, PerformanceFixtures.createForecastJson(
+                PerformanceFixtures.createWeatherValues(FORECAST_DAYS)));
+
+        SunshineSyncTask.syncWeather(mContext);
+        assertEquals(SunshineSyncTask.SYNC_RESULT_SUCCESS, SunshineSyncTask.syncWeather(mContext));
+
+        assertEquals("A fresh cached response should be used instead of fetching",
+                1, mServer.getRequestCount());
+        assertEquals(FORECAST_DAYS, countWeatherRows());
+    }
+
+    @Test
+    public void testClientErrorFailsWithoutWriting() {
+        mServer.respond(404, "");
+
+        assertEquals(SunshineSyncTask.SYNC_RESULT_FAILED, SunshineSyncTask.syncWeather(mContext));
+        assertEquals("A client error shouldn't be retried", 1, mServer.getRequestCount());
+        assertEquals(0, countWeatherRows());
+    }
+
+    @Test
+    public void testSyncTiming() {
+        long[] runs = new long[TIMING_RUNS];
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            /* A new forecast each time, and no cached response, so that every run fetches */
+            mServer.clearScript().respond(200, PerformanceFixtures.createForecastJson(
+                    PerformanceFixtures.createWeatherValues(FORECAST_DAYS, i + 1)));
+            ForecastResponseCache.clear(mContext);
+
+            long start = System.nanoTime();
+            int result = SunshineSyncTask.syncWeather(mContext);
+            runs[i] = System.nanoTime() - start;
+
+            assertEquals(SunshineSyncTask.SYNC_RESULT_SUCCESS, result);
+        }
+
+        Arrays.sort(runs);
+        long medianMillis = runs[TIMING_RUNS / 2] / 1000000;
+        assertTrue("A sync took " + medianMillis + " ms, more than " + MAX_SYNC_MILLIS + " ms",
+                medianMillis <= MAX_SYNC_MILLIS);
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
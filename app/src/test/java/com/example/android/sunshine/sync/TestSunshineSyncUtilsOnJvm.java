@@ -0,0 +1,103 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+
+import com.example.android.sunshine.utilities.SunshineClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks when scheduleSyncIfChanged schedules the sync job again: only when the schedule has
+ * changed, or when the one it remembers is too old to be sure the job is still there.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestSunshineSyncUtilsOnJvm {
+
+    private static final long START_MILLIS = 1475280000000L;
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    /* What SunshineClock reads, moved by the tests */
+    private long mNowMillis = START_MILLIS;
+
+    private int mScheduleCount;
+
+    @Before
+    public void setUp() {
+        SunshineClock.setTimeSource(new SunshineClock.TimeSource() {
+            @Override
+            public long currentTimeMillis() {
+                return mNowMillis;
+            }
+
+            @Override
+            public TimeZone getTimeZone() {
+                return TimeZone.getTimeZone("UTC");
+            }
+        });
+
+        InProcessSyncScheduler scheduler = new InProcessSyncScheduler(
+                new InProcessSyncScheduler.JobRunner() {
+                    @Override
+                    public boolean run(SyncJob job, long nowMillis) {
+                        return false;
+                    }
+                }, START_MILLIS) {
+            @Override
+            public boolean schedule(SyncJob job) {
+                mScheduleCount++;
+                return super.schedule(job);
+            }
+        };
+        SunshineSyncUtils.setScheduler(mContext, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        SunshineSyncUtils.setScheduler(mContext, null);
+        SunshineClock.setTimeSource(null);
+    }
+
+    @Test
+    public void testUnchangedScheduleIsSkipped() {
+        assertTrue(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+
+        mNowMillis += SunshineSyncUtils.MAX_SCHEDULE_AGE_MILLIS - 1;
+        assertFalse(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+        assertEquals(1, mScheduleCount);
+    }
+
+    @Test
+    public void testOldScheduleIsScheduledAgain() {
+        assertTrue(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+
+        /* The backend may have dropped the job since, so it is asserted again */
+        mNowMillis += SunshineSyncUtils.MAX_SCHEDULE_AGE_MILLIS;
+        assertTrue(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+        assertEquals(2, mScheduleCount);
+
+        /* And then trusted for another day */
+        assertFalse(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+        assertEquals(2, mScheduleCount);
+    }
+
+    @Test
+    public void testScheduleFromTheFutureIsScheduledAgain() {
+        assertTrue(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+
+        mNowMillis -= 1;
+        assertTrue(SunshineSyncUtils.scheduleSyncIfChanged(mContext));
+        assertEquals(2, mScheduleCount);
+    }
+}
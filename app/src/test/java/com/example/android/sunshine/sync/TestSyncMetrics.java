@@ -0,0 +1,162 @@
+package com.example.android.sunshine.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UTFDataFormatException;
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.UnknownServiceException;
+import java.util.zip.ZipException;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the histograms, the bounded error classes and the output of SyncMetrics. These run on
+ * the JVM.
+ */
+public class TestSyncMetrics {
+
+    @Before
+    public void setUp() {
+        SyncMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        SyncMetrics.reset();
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        assertEquals(0, SyncMetrics.bucketFor(0));
+        assertEquals("Negative values should count as 0", 0, SyncMetrics.bucketFor(-1));
+        assertEquals(1, SyncMetrics.bucketFor(1));
+        assertEquals(2, SyncMetrics.bucketFor(2));
+        assertEquals(2, SyncMetrics.bucketFor(3));
+        assertEquals(3, SyncMetrics.bucketFor(4));
+
+        int last = SyncMetrics.BUCKET_COUNT - 1;
+        assertEquals(last - 1, SyncMetrics.bucketFor((1L << (last - 1)) - 1));
+        assertEquals(last, SyncMetrics.bucketFor(1L << (last - 1)));
+        assertEquals(last, SyncMetrics.bucketFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesAreBucketTops() {
+        for (int i = 0; i < 90; i++) {
+            SyncMetrics.recordBytesDownloaded(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            SyncMetrics.recordBytesDownloaded(5000);
+        }
+
+        /* 100 falls in the bucket topped by 127. 5000 is the largest value, so it caps p99. */
+        assertContains(dump(), "  bytes downloaded: n=100 mean=590 p50<=127 p90<=127 p99<=5000"
+                + " max=5000");
+    }
+
+    @Test
+    public void testErrorClassesAreBounded() {
+        Throwable[] errors = {
+                new IOException(),
+                new EOFException(),
+                new FileNotFoundException(),
+                new InterruptedIOException(),
+                new UTFDataFormatException(),
+                new UnsupportedEncodingException(),
+                new ConnectException(),
+                new MalformedURLException(),
+                new NoRouteToHostException(),
+                new PortUnreachableException(),
+                new ProtocolException(),
+                new SocketException(),
+                new SocketTimeoutException(),
+                new UnknownHostException(),
+                new UnknownServiceException(),
+                new ZipException(),
+                new SSLException("handshake"),
+                new SSLHandshakeException("handshake")
+        };
+        assertEquals("The test needs two more classes than are kept",
+                SyncMetrics.MAX_ERROR_CLASSES + 2, errors.length);
+
+        for (Throwable error : errors) {
+            SyncMetrics.recordFailure(error);
+        }
+        /* A class that is already counted keeps its own count */
+        SyncMetrics.recordFailure(new IOException());
+
+        String dump = dump();
+        assertEquals(errors.length + 1, SyncMetrics.getFailedCount());
+        assertContains(dump, "  java.io.IOException: 2");
+        assertContains(dump, "  " + SyncMetrics.OTHER_ERRORS + ": 2");
+        assertTrue("Classes past the limit should not be listed",
+                !dump.contains(SSLHandshakeException.class.getName()));
+    }
+
+    @Test
+    public void testCacheLookupsAreCounted() {
+        SyncMetrics.recordCacheLookup(ForecastResponseCache.FRESH);
+        SyncMetrics.recordCacheLookup(ForecastResponseCache.EXPIRED);
+        SyncMetrics.recordCacheLookup(ForecastResponseCache.EXPIRED);
+
+        String dump = dump();
+        assertContains(dump, "  fresh, fetch skipped: 1");
+        assertContains(dump, "  expired or missing: 2");
+    }
+
+    @Test
+    public void testResetForgetsEverything() {
+        SyncMetrics.recordStage(SyncMetrics.STAGE_TOTAL, 5000000);
+        SyncMetrics.recordBytesDownloaded(1000);
+        SyncMetrics.recordRowsWritten(14);
+        SyncMetrics.recordSuccess();
+        SyncMetrics.recordFailure(new IOException());
+        SyncMetrics.recordCacheLookup(ForecastResponseCache.STALE_IF_ERROR);
+        SyncMetrics.recordNotificationDecision(NotificationPolicy.NOTIFY);
+
+        SyncMetrics.reset();
+
+        assertEquals(0, SyncMetrics.getSucceededCount());
+        assertEquals(0, SyncMetrics.getFailedCount());
+        assertEquals(0, SyncMetrics.getRowsWrittenTotal());
+        assertEquals(0, SyncMetrics.getNotificationDecisionCount(NotificationPolicy.NOTIFY));
+
+        String dump = dump();
+        assertContains(dump, "Syncs: 0 succeeded, 0 failed");
+        assertContains(dump, "  total: no samples");
+        assertContains(dump, "  bytes downloaded: no samples");
+        assertContains(dump, "  stale, used only on error: 0, used: 0");
+        assertContains(dump, "Errors:\n  none");
+    }
+
+    private static String dump() {
+        StringWriter out = new StringWriter();
+        SyncMetrics.dump(new PrintWriter(out));
+        /* println uses the platform's line separator */
+        return out.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+
+    private static void assertContains(String dump, String expected) {
+        assertTrue("Expected \"" + expected + "\" in:\n" + dump, dump.contains(expected));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.content.Intent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks that units, locale and time changes reach the listeners registered for them, and only
+ * those.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestPresentationChanges {
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    /* The flags of every change our listener was told about */
+    private final List<Integer> mChanges = new ArrayList<>();
+
+    private final PresentationChanges.Listener mListener = new PresentationChanges.Listener() {
+        @Override
+        public void onPresentationChanged(int changes) {
+            mChanges.add(changes);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        PresentationChanges.register(mContext, mListener);
+    }
+
+    @After
+    public void tearDown() {
+        PresentationChanges.unregister(mContext, mListener);
+    }
+
+    @Test
+    public void testUnitsChangeReachesListeners() {
+        PresentationChanges.notifyChanged(PresentationChanges.CHANGE_UNITS);
+
+        assertEquals(1, mChanges.size());
+        assertEquals(PresentationChanges.CHANGE_UNITS, (int) mChanges.get(0));
+    }
+
+    @Test
+    public void testSystemBroadcastsReachListeners() {
+        mContext.sendBroadcast(new Intent(Intent.ACTION_LOCALE_CHANGED));
+        mContext.sendBroadcast(new Intent(Intent.ACTION_TIMEZONE_CHANGED));
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(2, mChanges.size());
+        assertEquals(PresentationChanges.CHANGE_LOCALE, (int) mChanges.get(0));
+        assertEquals(PresentationChanges.CHANGE_TIME_FORMAT, (int) mChanges.get(1));
+    }
+
+    @Test
+    public void testRegisteringTwiceNotifiesOnce() {
+        PresentationChanges.register(mContext, mListener);
+        PresentationChanges.notifyChanged(PresentationChanges.CHANGE_UNITS);
+
+        assertEquals(1, mChanges.size());
+    }
+
+    @Test
+    public void testUnregisteredListenersAreNotTold() {
+        PresentationChanges.unregister(mContext, mListener);
+        PresentationChanges.notifyChanged(PresentationChanges.CHANGE_UNITS);
+        mContext.sendBroadcast(new Intent(Intent.ACTION_LOCALE_CHANGED));
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(0, mChanges.size());
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.PerformanceBudgets;
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastBatchCodec;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests that SyntheticWeatherGenerator is deterministic, plausible, fast, and that what it
+ * generates makes it into WeatherProvider and through the JSON parser intact.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TestSyntheticWeatherGenerator {
+
+    private static final long SEED = 20161001L;
+
+    /* October 1st, 2016 at midnight, GMT time */
+    private static final long FIRST_DATE = 1475280000000L;
+
+    private static final int TEN_YEARS = 3653;
+
+    /* Enough slices of ForecastBatchCodec.MAX_ROWS_PER_BATCH days to time the streaming */
+    private static final int THROUGHPUT_ROWS = 4 * ForecastBatchCodec.MAX_ROWS_PER_BATCH;
+
+    private final Context mContext = RuntimeEnvironment.application;
+
+    @Test
+    public void testSameSeedGeneratesSameSeries() {
+        ForecastBatch first = generate(SEED, 0, TEN_YEARS);
+        ForecastBatch second = generate(SEED, 0, TEN_YEARS);
+
+        assertTrue(Arrays.equals(first.dates, second.dates));
+        assertTrue(Arrays.equals(first.weatherIds, second.weatherIds));
+        assertTrue(Arrays.equals(first.maxTemps, second.maxTemps));
+        assertTrue(Arrays.equals(first.pressure, second.pressure));
+        assertTrue(Arrays.equals(first.degrees, second.degrees));
+    }
+
+    @Test
+    public void testLocationsHaveDifferentWeather() {
+        ForecastBatch first = generate(SEED, 0, TEN_YEARS);
+        ForecastBatch second = generate(SEED, 1, TEN_YEARS);
+
+        assertTrue(Arrays.equals(first.dates, second.dates));
+        assertFalse(Arrays.equals(first.maxTemps, second.maxTemps));
+    }
+
+    @Test
+    public void testSeriesIsPlausible() {
+        for (int location = 0; location < 20; location++) {
+            SyntheticWeatherGenerator generator =
+                    new SyntheticWeatherGenerator(SEED, location, FIRST_DATE);
+            ForecastBatch days = new ForecastBatch(TEN_YEARS);
+            generator.fill(days, TEN_YEARS);
+
+            double totalChange = 0;
+            double julyHighs = 0;
+            double januaryHighs = 0;
+            for (int i = 0; i < days.count; i++) {
+                assertTrue(days.minTemps[i] <= days.maxTemps[i]);
+                assertTrue(days.humidity[i] >= 0 && days.humidity[i] <= 100);
+                assertTrue(days.degrees[i] >= 0 && days.degrees[i] < 360);
+                assertTrue(days.windSpeed[i] >= 0);
+
+                if (i > 0) totalChange += Math.abs(days.maxTemps[i] - days.maxTemps[i - 1]);
+
+                int dayOfYear = (int) ((days.dates[i] / SunshineDateUtils.DAY_IN_MILLIS) % 365);
+                if (dayOfYear >= 181 && dayOfYear < 212) julyHighs += days.maxTemps[i];
+                if (dayOfYear < 31) januaryHighs += days.maxTemps[i];
+            }
+
+            assertTrue("Day to day changes should be gradual",
+                    totalChange / (days.count - 1) < 5);
+            assertEquals("Summer should be in July in the north and January in the south",
+                    generator.getLatitude() >= 0, julyHighs > januaryHighs);
+        }
+    }
+
+    @Test
+    public void testJsonParsesToTheSameWeather() throws Exception {
+        String json = new SyntheticWeatherGenerator(SEED, 3, FIRST_DATE).nextForecastJson(14);
+        ForecastBatch expected = generate(SEED, 3, 14);
+
+        ForecastBatch parsed = OpenWeatherJsonUtils.getForecastBatchFromJson(mContext, json);
+
+        assertEquals(14, parsed.count);
+        for (int i = 0; i < parsed.count; i++) {
+            assertEquals(expected.weatherIds[i], parsed.weatherIds[i]);
+            assertEquals(expected.minTemps[i], parsed.minTemps[i], 0.01);
+            assertEquals(expected.maxTemps[i], parsed.maxTemps[i], 0.01);
+            assertEquals(expected.pressure[i], parsed.pressure[i], 0.01);
+            assertEquals(expected.humidity[i], parsed.humidity[i], 0.5);
+        }
+    }
+
+    @Test
+    public void testHistoryStreamsIntoProvider() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+
+        /* More than one slice, so that the streaming is exercised */
+        int days = ForecastBatchCodec.MAX_ROWS_PER_BATCH + 100;
+        assertEquals(days, FakeDataUtils.insertSyntheticHistory(mContext, SEED, days));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " DESC");
+        try {
+            assertEquals(days, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("The history should end today",
+                    SunshineDateUtils.getNormalizedUtcDateForToday(), cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void streamingStaysWithinBudget() {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        ContentResolver resolver = mContext.getContentResolver();
+
+        /* Warm up the generator, the codec and the provider's statements, then start empty */
+        FakeDataUtils.insertSyntheticHistory(mContext, SEED,
+                ForecastBatchCodec.MAX_ROWS_PER_BATCH);
+        resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+
+        long start = System.nanoTime();
+        int rowsWritten = FakeDataUtils.insertSyntheticHistory(mContext, SEED, THROUGHPUT_ROWS);
+        double minutes = (System.nanoTime() - start) / 60e9;
+        assertEquals(THROUGHPUT_ROWS, rowsWritten);
+
+        PerformanceBudgets budgets = new PerformanceBudgets();
+        budgets.atLeast(PerformanceBudgets.STREAM_ROWS_PER_MINUTE, rowsWritten / minutes);
+        budgets.assertWithinBudgets();
+    }
+
+    private static ForecastBatch generate(long seed, int location, int days) {
+        ForecastBatch batch = new ForecastBatch(days);
+        new SyntheticWeatherGenerator(seed, location, FIRST_DATE).fill(batch, days);
+        return batch;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.android.sunshine.cursor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an array field of a {@link CursorBatch} class as holding one column. The field must be
+ * public, and an array of long, int, short, double, float, String or byte[]; the matching
+ * Cursor getter is used to read it.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+    /* The name of the column, as it appears in the projection */
+    String value();
+}
@@ -0,0 +1,27 @@
+package com.example.android.sunshine.cursor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a struct-of-arrays class that rows of a Cursor are read into: one array per column, with
+ * row i of the batch at index i of every array. Each array to fill is marked with {@link Column}.
+ * <p>
+ * For a class named Foo, the processor generates FooCursorReader in the same package, holding:
+ * <ul>
+ * <li>PROJECTION, the columns in the order the arrays are declared, to query with;</li>
+ * <li>an INDEX_* constant for each array, its column's index in PROJECTION;</li>
+ * <li>readRow and read, which copy the current row, or as many rows as fit, into the arrays
+ * through typed getters at those fixed indices.</li>
+ * </ul>
+ * Nothing is looked up by name or by reflection at runtime.
+ * <p>
+ * The class must also have a public final int field named capacity, the length of its arrays,
+ * and a public int field named count, the number of rows filled so far.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface CursorBatch {
+}
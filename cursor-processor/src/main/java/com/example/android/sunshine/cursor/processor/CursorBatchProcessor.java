@@ -0,0 +1,318 @@
+package com.example.android.sunshine.cursor.processor;
+
+import com.example.android.sunshine.cursor.Column;
+import com.example.android.sunshine.cursor.CursorBatch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a FooCursorReader for every class Foo annotated with {@link CursorBatch}. See
+ * CursorBatch for what the reader holds.
+ * <p>
+ * The reader is written as plain source text, so the processor doesn't depend on anything but
+ * the annotations, and the generated code is exactly what one would write by hand: a projection,
+ * index constants, and one typed getter per column at a fixed index.
+ */
+public class CursorBatchProcessor extends AbstractProcessor {
+
+    private static final String READER_SUFFIX = "CursorReader";
+
+    private static final String FIELD_COUNT = "count";
+    private static final String FIELD_CAPACITY = "capacity";
+
+    /*
+     * The Cursor getter for each kind of array element. Element type names, as written in
+     * source, at the same positions as their getters.
+     */
+    private static final String[] ELEMENT_TYPES = {
+            "long", "int", "short", "double", "float", "java.lang.String", "byte[]"
+    };
+    private static final String[] CURSOR_GETTERS = {
+            "getLong", "getInt", "getShort", "getDouble", "getFloat", "getString", "getBlob"
+    };
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new HashSet<>();
+        types.add(CursorBatch.class.getCanonicalName());
+        types.add(Column.class.getCanonicalName());
+        return Collections.unmodifiableSet(types);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(CursorBatch.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@CursorBatch can only be applied to classes");
+                continue;
+            }
+            generateReader((TypeElement) element);
+        }
+
+        /* A @Column outside of a @CursorBatch would silently do nothing, so say so */
+        for (Element element : roundEnv.getElementsAnnotatedWith(Column.class)) {
+            if (element.getEnclosingElement().getAnnotation(CursorBatch.class) == null) {
+                error(element, "@Column fields must be in a class annotated with @CursorBatch");
+            }
+        }
+        return true;
+    }
+
+    /* One @Column field, as the reader needs it */
+    private static final class ColumnField {
+        final String fieldName;
+        final String columnName;
+        final String getter;
+
+        ColumnField(String fieldName, String columnName, String getter) {
+            this.fieldName = fieldName;
+            this.columnName = columnName;
+            this.getter = getter;
+        }
+    }
+
+    private void generateReader(TypeElement batchClass) {
+        if (!batchClass.getModifiers().contains(Modifier.PUBLIC)) {
+            error(batchClass, "@CursorBatch classes must be public");
+            return;
+        }
+
+        boolean valid = checkIntField(batchClass, FIELD_COUNT, false)
+                & checkIntField(batchClass, FIELD_CAPACITY, true);
+
+        List<ColumnField> columns = new ArrayList<>();
+        Set<String> columnNames = new HashSet<>();
+        for (Element member : batchClass.getEnclosedElements()) {
+            Column column = member.getAnnotation(Column.class);
+            if (column == null) continue;
+
+            VariableElement field = (VariableElement) member;
+            String getter = getCursorGetter(field);
+            if (getter == null) {
+                valid = false;
+                continue;
+            }
+            if (!columnNames.add(column.value())) {
+                error(field, "Column \"" + column.value() + "\" is read into more than one field");
+                valid = false;
+                continue;
+            }
+            columns.add(new ColumnField(field.getSimpleName().toString(), column.value(), getter));
+        }
+
+        if (columns.isEmpty()) {
+            error(batchClass, "@CursorBatch classes need at least one @Column field");
+            return;
+        }
+        if (!valid) return;
+
+        String packageName = getPackageName(batchClass);
+        String batchName = batchClass.getSimpleName().toString();
+        String readerName = batchName + READER_SUFFIX;
+        String qualifiedReaderName = packageName.isEmpty()
+                ? readerName
+                : packageName + "." + readerName;
+
+        try {
+            JavaFileObject file = processingEnv.getFiler()
+                    .createSourceFile(qualifiedReaderName, batchClass);
+            Writer out = file.openWriter();
+            try {
+                out.write(ReaderWriter.write(packageName, batchName, readerName, columns));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            error(batchClass, "Couldn't write " + qualifiedReaderName + ": " + e.getMessage());
+        }
+    }
+
+    /*
+     * Returns the Cursor getter that reads a @Column field's elements, or null after reporting
+     * why the field can't be read into.
+     */
+    private String getCursorGetter(VariableElement field) {
+        if (field.getKind() != ElementKind.FIELD
+                || !field.getModifiers().contains(Modifier.PUBLIC)
+                || field.getModifiers().contains(Modifier.STATIC)) {
+            error(field, "@Column fields must be public instance fields");
+            return null;
+        }
+
+        TypeMirror type = field.asType();
+        if (type.getKind() == TypeKind.ARRAY) {
+            String elementType = ((ArrayType) type).getComponentType().toString();
+            for (int i = 0; i < ELEMENT_TYPES.length; i++) {
+                if (ELEMENT_TYPES[i].equals(elementType)) return CURSOR_GETTERS[i];
+            }
+        }
+
+        error(field, "@Column fields must be arrays of long, int, short, double, float, String"
+                + " or byte[], not " + type);
+        return null;
+    }
+
+    /* Reports and returns false unless the class has a public int field with the given name */
+    private boolean checkIntField(TypeElement batchClass, String name, boolean mustBeFinal) {
+        for (Element member : batchClass.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.FIELD
+                    && member.getSimpleName().contentEquals(name)
+                    && member.asType().getKind() == TypeKind.INT
+                    && member.getModifiers().contains(Modifier.PUBLIC)
+                    && !member.getModifiers().contains(Modifier.STATIC)
+                    && (!mustBeFinal || member.getModifiers().contains(Modifier.FINAL))) {
+                return true;
+            }
+        }
+        error(batchClass, "@CursorBatch classes need a public " + (mustBeFinal ? "final " : "")
+                + "int field named " + name);
+        return false;
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Writes the source of a reader. Kept apart from the processor so that what is generated
+     * can be read top to bottom.
+     */
+    static final class ReaderWriter {
+
+        static String write(String packageName, String batchName, String readerName,
+                            List<ColumnField> columns) {
+            StringBuilder source = new StringBuilder();
+            line(source, 0, "// Generated by CursorBatchProcessor from " + batchName
+                    + ". Do not edit.");
+            if (!packageName.isEmpty()) {
+                line(source, 0, "package " + packageName + ";");
+                line(source, 0, "");
+            }
+            line(source, 0, "import android.database.Cursor;");
+            line(source, 0, "");
+            line(source, 0, "/**");
+            line(source, 0, " * Reads rows of a Cursor queried with {@link #PROJECTION} into a"
+                    + " {@link " + batchName + "}.");
+            line(source, 0, " */");
+            line(source, 0, "public final class " + readerName + " {");
+            line(source, 0, "");
+
+            line(source, 1, "/* The columns to query, in the order of the INDEX_* constants */");
+            line(source, 1, "public static final String[] PROJECTION = {");
+            for (ColumnField column : columns) {
+                line(source, 3, quote(column.columnName) + ",");
+            }
+            line(source, 1, "};");
+            line(source, 0, "");
+
+            for (int i = 0; i < columns.size(); i++) {
+                line(source, 1, "public static final int " + getIndexName(columns.get(i).fieldName)
+                        + " = " + i + ";");
+            }
+            line(source, 0, "");
+
+            line(source, 1, "private " + readerName + "() {");
+            line(source, 1, "}");
+            line(source, 0, "");
+
+            line(source, 1, "/**");
+            line(source, 1, " * Copies the row the Cursor is on into the next free row of the"
+                    + " batch.");
+            line(source, 1, " *");
+            line(source, 1, " * @throws IllegalStateException If the batch is already full");
+            line(source, 1, " */");
+            line(source, 1, "public static void readRow(Cursor cursor, " + batchName + " batch) {");
+            line(source, 2, "int row = batch." + FIELD_COUNT + ";");
+            line(source, 2, "if (row == batch." + FIELD_CAPACITY + ") {");
+            line(source, 3, "throw new IllegalStateException(\"" + batchName
+                    + " is full: \" + batch." + FIELD_CAPACITY + " + \" rows\");");
+            line(source, 2, "}");
+            for (ColumnField column : columns) {
+                line(source, 2, "batch." + column.fieldName + "[row] = cursor." + column.getter
+                        + "(" + getIndexName(column.fieldName) + ");");
+            }
+            line(source, 2, "batch." + FIELD_COUNT + " = row + 1;");
+            line(source, 1, "}");
+            line(source, 0, "");
+
+            line(source, 1, "/**");
+            line(source, 1, " * Copies rows into the batch, starting at the row after the");
+            line(source, 1, " * Cursor's current position, until the batch is full or the rows");
+            line(source, 1, " * run out.");
+            line(source, 1, " *");
+            line(source, 1, " * @return The number of rows copied");
+            line(source, 1, " */");
+            line(source, 1, "public static int read(Cursor cursor, " + batchName + " batch) {");
+            line(source, 2, "int first = batch." + FIELD_COUNT + ";");
+            line(source, 2, "while (batch." + FIELD_COUNT + " < batch." + FIELD_CAPACITY
+                    + " && cursor.moveToNext()) {");
+            line(source, 3, "readRow(cursor, batch);");
+            line(source, 2, "}");
+            line(source, 2, "return batch." + FIELD_COUNT + " - first;");
+            line(source, 1, "}");
+            line(source, 0, "}");
+            return source.toString();
+        }
+
+        /* windSpeed becomes INDEX_WIND_SPEED */
+        static String getIndexName(String fieldName) {
+            StringBuilder name = new StringBuilder("INDEX_");
+            for (int i = 0; i < fieldName.length(); i++) {
+                char c = fieldName.charAt(i);
+                if (Character.isUpperCase(c) && i > 0) name.append('_');
+                name.append(Character.toUpperCase(c));
+            }
+            return name.toString();
+        }
+
+        private static String quote(String value) {
+            StringBuilder quoted = new StringBuilder("\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') quoted.append('\\');
+                quoted.append(c);
+            }
+            return quoted.append('"').toString();
+        }
+
+        private static void line(StringBuilder source, int indent, String text) {
+            for (int i = 0; i < indent; i++) {
+                source.append("    ");
+            }
+            source.append(text).append('\n');
+        }
+    }
+}